@@ -0,0 +1,116 @@
+-- Upgrades an existing BankingSystem database to the current schema.sql.
+-- CREATE TABLE IF NOT EXISTS leaves existing tables alone, so run schema.sql first to
+-- create the tables added since the database was set up, then this script to bring the
+-- Account, Transaction and Transaction_Archive tables up to date. Every step checks
+-- information_schema first, so the script can be run again, and on a database at any
+-- earlier version. With several shards, run both scripts on every shard.
+
+USE BankingSystem;
+
+DROP PROCEDURE IF EXISTS migrate_add_column;
+DROP PROCEDURE IF EXISTS migrate_add_index;
+DROP PROCEDURE IF EXISTS migrate_add_type_foreign_key;
+DROP PROCEDURE IF EXISTS migrate_type_codes;
+DROP PROCEDURE IF EXISTS migrate_microseconds;
+
+DELIMITER //
+
+CREATE PROCEDURE migrate_add_column(IN table_in VARCHAR(64), IN column_in VARCHAR(64), IN definition TEXT)
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.COLUMNS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = table_in AND COLUMN_NAME = column_in) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', table_in, ' ADD COLUMN ', column_in, ' ', definition);
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+
+CREATE PROCEDURE migrate_add_index(IN table_in VARCHAR(64), IN index_in VARCHAR(64), IN definition TEXT)
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.STATISTICS
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = table_in AND INDEX_NAME = index_in) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', table_in, ' ADD ', definition);
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+
+CREATE PROCEDURE migrate_add_type_foreign_key()
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.KEY_COLUMN_USAGE
+                   WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'Transaction'
+                   AND COLUMN_NAME = 'transaction_type' AND REFERENCED_TABLE_NAME = 'Transaction_Type') THEN
+        ALTER TABLE Transaction
+            ADD FOREIGN KEY (transaction_type) REFERENCES Transaction_Type (type_code);
+    END IF;
+END //
+
+-- Replaces a VARCHAR transaction_type holding type names with the TINYINT code of
+-- each name in Transaction_Type. The swap is one ALTER TABLE, and it fails as a whole
+-- if a row holds a name Transaction_Type does not know, leaving the table unchanged
+CREATE PROCEDURE migrate_type_codes(IN table_in VARCHAR(64))
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = table_in
+               AND COLUMN_NAME = 'transaction_type' AND DATA_TYPE = 'varchar') THEN
+        CALL migrate_add_column(table_in, 'transaction_type_code', 'TINYINT NULL AFTER transaction_type');
+        SET @dml = CONCAT('UPDATE ', table_in, ' t JOIN Transaction_Type tt ON tt.type_name = t.transaction_type',
+                          ' SET t.transaction_type_code = tt.type_code');
+        PREPARE dml FROM @dml;
+        EXECUTE dml;
+        DEALLOCATE PREPARE dml;
+        SET @ddl = CONCAT('ALTER TABLE ', table_in, ' DROP COLUMN transaction_type,',
+                          ' CHANGE COLUMN transaction_type_code transaction_type TINYINT NOT NULL');
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+
+-- Widens a second-precision transaction_date to microseconds; existing values keep
+-- their seconds with a zero fraction
+CREATE PROCEDURE migrate_microseconds(IN table_in VARCHAR(64), IN definition TEXT)
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.COLUMNS
+               WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = table_in
+               AND COLUMN_NAME = 'transaction_date' AND DATETIME_PRECISION < 6) THEN
+        SET @ddl = CONCAT('ALTER TABLE ', table_in, ' MODIFY COLUMN transaction_date ', definition);
+        PREPARE ddl FROM @ddl;
+        EXECUTE ddl;
+        DEALLOCATE PREPARE ddl;
+    END IF;
+END //
+
+DELIMITER ;
+
+-- Running balances and sequences. Rows written before them keep NULLs, which
+-- LedgerReconciler skips; the sequences of existing accounts start at 1
+CALL migrate_add_column('Account', 'last_sequence', 'BIGINT NOT NULL DEFAULT 0');
+
+CALL migrate_add_column('Transaction', 'idempotency_key', 'VARCHAR(64) NULL');
+CALL migrate_add_column('Transaction', 'balance_after', 'DECIMAL(15, 2) NULL');
+CALL migrate_add_column('Transaction', 'sequence_no', 'BIGINT NULL');
+CALL migrate_add_column('Transaction', 'bucket_no', 'INT NULL');
+CALL migrate_type_codes('Transaction');
+CALL migrate_microseconds('Transaction', 'TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6)');
+CALL migrate_add_type_foreign_key();
+CALL migrate_add_index('Transaction', 'uq_transaction_idempotency_key',
+                       'UNIQUE INDEX uq_transaction_idempotency_key (idempotency_key)');
+CALL migrate_add_index('Transaction', 'idx_transaction_account_date',
+                       'INDEX idx_transaction_account_date (account_id, transaction_date, transaction_id)');
+CALL migrate_add_index('Transaction', 'uq_transaction_account_sequence',
+                       'UNIQUE INDEX uq_transaction_account_sequence (account_id, sequence_no)');
+
+CALL migrate_add_column('Transaction_Archive', 'balance_after', 'DECIMAL(15, 2) NULL');
+CALL migrate_add_column('Transaction_Archive', 'sequence_no', 'BIGINT NULL');
+CALL migrate_add_column('Transaction_Archive', 'bucket_no', 'INT NULL');
+CALL migrate_type_codes('Transaction_Archive');
+CALL migrate_microseconds('Transaction_Archive', 'TIMESTAMP(6) NOT NULL');
+
+DROP PROCEDURE migrate_add_column;
+DROP PROCEDURE migrate_add_index;
+DROP PROCEDURE migrate_add_type_foreign_key;
+DROP PROCEDURE migrate_type_codes;
+DROP PROCEDURE migrate_microseconds;
@@ -0,0 +1,153 @@
+-- Schema for the BankingSystem MySQL database used by the Banking System application.
+-- The application only relies on the columns listed here. A database created by an
+-- earlier version of this file is brought up to date by running it and then migrate.sql.
+
+CREATE DATABASE IF NOT EXISTS BankingSystem;
+USE BankingSystem;
+
+CREATE TABLE IF NOT EXISTS Customer (
+    customer_id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(100) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS Account (
+    account_id INT AUTO_INCREMENT PRIMARY KEY,
+    customer_id INT NOT NULL,
+    account_type VARCHAR(20) NOT NULL,
+    balance DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    -- Sequence number of the account's latest Transaction row; advanced with every balance change
+    last_sequence BIGINT NOT NULL DEFAULT 0,
+    FOREIGN KEY (customer_id) REFERENCES Customer (customer_id)
+);
+
+-- Dictionary of transaction types. Transaction rows store the one-byte code; the codes
+-- are those of the TransactionType enum and never change
+CREATE TABLE IF NOT EXISTS Transaction_Type (
+    type_code TINYINT PRIMARY KEY,
+    type_name VARCHAR(20) NOT NULL UNIQUE
+);
+
+INSERT IGNORE INTO Transaction_Type (type_code, type_name) VALUES
+    (1, 'Deposit'), (2, 'Withdrawal'), (3, 'Transfer Out'), (4, 'Transfer In'),
+    (5, 'Transfer Reversal'), (6, 'Interest'), (7, 'Adjustment');
+
+CREATE TABLE IF NOT EXISTS Transaction (
+    transaction_id INT AUTO_INCREMENT PRIMARY KEY,
+    account_id INT NOT NULL,
+    -- Code from Transaction_Type. migrate.sql converts a table with the type names in a
+    -- VARCHAR column by joining on type_name before changing the column type
+    transaction_type TINYINT NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    -- Microsecond precision, as kept in memory by Transaction and TransactionBlock
+    transaction_date TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),
+    -- Client-supplied key of the request that created the row; NULL when none was sent.
+    -- Transfers store it on the "Transfer Out" row only
+    idempotency_key VARCHAR(64) NULL,
+    -- The account's balance right after this posting, and the posting's position in the
+    -- account's history starting at 1. NULL on rows written before they were recorded
+    balance_after DECIMAL(15, 2) NULL,
+    sequence_no BIGINT NULL,
+    -- Set on deposits to a striped account (see Account_Bucket): the bucket credited.
+    -- Until the buckets are merged such a row has no balance_after or sequence_no yet
+    bucket_no INT NULL,
+    FOREIGN KEY (account_id) REFERENCES Account (account_id),
+    FOREIGN KEY (transaction_type) REFERENCES Transaction_Type (type_code),
+    -- Rejects a retried posting whose key has already left the in-memory index;
+    -- NULL keys never collide
+    UNIQUE INDEX uq_transaction_idempotency_key (idempotency_key),
+    -- Serves the keyset-paginated history query: equality on account_id, then a
+    -- range scan in (transaction_date, transaction_id) order without a filesort
+    INDEX idx_transaction_account_date (account_id, transaction_date, transaction_id),
+    -- One row per sequence number; serves LedgerReconciler's predecessor and audit lookups
+    UNIQUE INDEX uq_transaction_account_sequence (account_id, sequence_no)
+);
+
+-- Cold storage for the history of closed accounts. AccountCloser moves an account's
+-- Transaction rows here in bounded chunks before deleting the account, so rows keep
+-- their original IDs and there is no foreign key to the deleted account
+CREATE TABLE IF NOT EXISTS Transaction_Archive (
+    transaction_id INT PRIMARY KEY,
+    account_id INT NOT NULL,
+    transaction_type TINYINT NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    transaction_date TIMESTAMP(6) NOT NULL,
+    idempotency_key VARCHAR(64) NULL,
+    balance_after DECIMAL(15, 2) NULL,
+    sequence_no BIGINT NULL,
+    bucket_no INT NULL,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_transaction_archive_account_date (account_id, transaction_date, transaction_id)
+);
+
+-- Cross-shard transfers. When accounts are spread over several databases (see ShardMap)
+-- every shard runs this schema, with auto_increment_increment set to the shard count and
+-- auto_increment_offset to the shard index + 1 so that generated IDs map to their shard.
+-- A transfer between shards debits the source and writes this row in one transaction on
+-- the source shard; the row stays DEBITED until the credit has landed on the destination
+-- shard, and TransferEngine.recoverPendingTransfers() finishes the ones left behind
+CREATE TABLE IF NOT EXISTS Transfer_Saga (
+    saga_id CHAR(36) PRIMARY KEY,
+    from_account_id INT NOT NULL,
+    to_account_id INT NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL,
+    -- DEBITED, COMPLETED, COMPENSATED, or FAILED when neither account could take the funds back
+    state VARCHAR(12) NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_transfer_saga_state (state, created_at)
+);
+
+-- Credits applied on the destination shard, one row per saga, so that a retried
+-- credit is applied only once
+CREATE TABLE IF NOT EXISTS Transfer_Saga_Credit (
+    saga_id CHAR(36) PRIMARY KEY,
+    credited_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- End-of-day checkpoints. EndOfDayProcessor credits interest to one range of account
+-- IDs at a time and inserts the range's row here in the same transaction, so a
+-- restarted run skips the ranges already credited for the business date
+CREATE TABLE IF NOT EXISTS EOD_Checkpoint (
+    run_date DATE NOT NULL,
+    partition_start INT NOT NULL,
+    partition_end INT NOT NULL,
+    accounts_credited INT NOT NULL,
+    completed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (run_date, partition_start)
+);
+
+-- How far LedgerReconciler has checked the Transaction table
+CREATE TABLE IF NOT EXISTS Reconciliation_Checkpoint (
+    checkpoint_name VARCHAR(32) PRIMARY KEY,
+    last_transaction_id INT NOT NULL,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+);
+
+-- Ledger drift found by LedgerReconciler: a running balance that does not follow from
+-- the previous row, a gap in an account's sequence, or an account balance that differs
+-- from its latest row
+CREATE TABLE IF NOT EXISTS Reconciliation_Break (
+    break_id INT AUTO_INCREMENT PRIMARY KEY,
+    account_id INT NOT NULL,
+    transaction_id INT NULL,
+    sequence_no BIGINT NULL,
+    expected_balance DECIMAL(15, 2) NULL,
+    actual_balance DECIMAL(15, 2) NULL,
+    -- BALANCE_MISMATCH, SEQUENCE_GAP or ACCOUNT_MISMATCH
+    reason VARCHAR(20) NOT NULL,
+    detected_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_reconciliation_break_account (account_id)
+);
+
+-- Balance buckets of hot accounts listed in "banking.striped.accounts". Deposits to such
+-- an account add to one of its buckets instead of the Account row, so they do not all
+-- queue on one row lock; StripedBalances.compact() adds the buckets to Account.balance
+-- and empties them
+CREATE TABLE IF NOT EXISTS Account_Bucket (
+    account_id INT NOT NULL,
+    bucket_no INT NOT NULL,
+    amount DECIMAL(15, 2) NOT NULL DEFAULT 0,
+    -- Deposits added since the last merge; each has a pending Transaction row
+    postings INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (account_id, bucket_no),
+    FOREIGN KEY (account_id) REFERENCES Account (account_id)
+);
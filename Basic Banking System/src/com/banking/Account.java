@@ -15,7 +15,7 @@ public class Account {
     private String accountType;
     
     // Current balance in the account
-    private double balance;
+    private Money balance = Money.ZERO;
 
     /**
      * Gets the account ID.
@@ -76,7 +76,7 @@ public class Account {
      * 
      * @return the balance
      */
-    public double getBalance() {
+    public Money getBalance() {
         return balance;
     }
 
@@ -85,7 +85,7 @@ public class Account {
      * 
      * @param balance the balance to set
      */
-    public void setBalance(double balance) {
+    public void setBalance(Money balance) {
         this.balance = balance;
     }
 
@@ -0,0 +1,125 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * AccountCache holds the shared read-through caches for Account rows and for
+ * customer existence checks, so repeated lookups do not go to MySQL.
+ *
+ * Every code path that changes an account row must call {@link #invalidate(int)}
+ * once its change has committed. Sizes and time to live come from the
+ * "banking.cache.*" system properties.
+ */
+public class AccountCache {
+
+    private static final String ACCOUNT_QUERY =
+            "SELECT account_id, customer_id, account_type, balance FROM Account WHERE account_id = ?";
+    // A striped account's balance includes the deposits still waiting in its buckets
+    private static final String STRIPED_ACCOUNT_QUERY = "SELECT a.account_id, a.customer_id, a.account_type,"
+            + " a.balance + COALESCE((SELECT SUM(b.amount) FROM Account_Bucket b WHERE b.account_id = a.account_id), 0)"
+            + " AS balance FROM Account a WHERE a.account_id = ?";
+    private static final String CUSTOMER_QUERY = "SELECT 1 FROM Customer WHERE customer_id = ?";
+
+    private static final ReadThroughCache<Integer, Account> ACCOUNTS = new ReadThroughCache<>(
+            Integer.getInteger("banking.cache.maxAccounts", 10_000),
+            Long.getLong("banking.cache.ttlMillis", 30_000),
+            AccountCache::loadAccount);
+
+    // Only customers that exist are cached, so newly added customers are seen immediately
+    private static final ReadThroughCache<Integer, Boolean> CUSTOMERS = new ReadThroughCache<>(
+            Integer.getInteger("banking.cache.maxCustomers", 10_000),
+            Long.getLong("banking.cache.ttlMillis", 30_000),
+            AccountCache::loadCustomerExists);
+
+    private AccountCache() {
+    }
+
+    /**
+     * Gets an account, from the cache if possible. The returned object is a copy
+     * and may be modified freely.
+     *
+     * @param accountId the account ID
+     * @return the account, or null if it does not exist
+     * @throws SQLException if the account had to be loaded and loading failed
+     */
+    public static Account getAccount(int accountId) throws SQLException {
+        Account cached = ACCOUNTS.get(accountId);
+        if (cached == null) {
+            return null;
+        }
+        Account copy = new Account();
+        copy.setAccountId(cached.getAccountId());
+        copy.setCustomerId(cached.getCustomerId());
+        copy.setAccountType(cached.getAccountType());
+        copy.setBalance(cached.getBalance());
+        return copy;
+    }
+
+    /**
+     * Tells whether a customer exists, from the cache if possible.
+     *
+     * @param customerId the customer ID
+     * @return true if the customer exists
+     * @throws SQLException if the customer had to be looked up and the lookup failed
+     */
+    public static boolean customerExists(int customerId) throws SQLException {
+        return CUSTOMERS.get(customerId) != null;
+    }
+
+    /**
+     * Drops an account from the cache after its row has changed.
+     *
+     * @param accountId the account ID
+     */
+    public static void invalidate(int accountId) {
+        ACCOUNTS.invalidate(accountId);
+    }
+
+    /**
+     * Gets the account cache, e.g. to read its metrics.
+     *
+     * @return the account cache
+     */
+    public static ReadThroughCache<Integer, Account> getAccounts() {
+        return ACCOUNTS;
+    }
+
+    /**
+     * Gets the customer existence cache, e.g. to read its metrics.
+     *
+     * @return the customer cache
+     */
+    public static ReadThroughCache<Integer, Boolean> getCustomers() {
+        return CUSTOMERS;
+    }
+
+    private static Account loadAccount(Integer accountId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId);
+             PreparedStatement statement = connection.prepareStatement(
+                     StripedBalances.isStriped(accountId) ? STRIPED_ACCOUNT_QUERY : ACCOUNT_QUERY)) {
+            statement.setInt(1, accountId);
+            ResultSet rs = statement.executeQuery();
+            if (!rs.next()) {
+                return null;
+            }
+            Account account = new Account();
+            account.setAccountId(rs.getInt("account_id"));
+            account.setCustomerId(rs.getInt("customer_id"));
+            account.setAccountType(rs.getString("account_type"));
+            account.setBalance(Money.read(rs, "balance"));
+            return account;
+        }
+    }
+
+    private static Boolean loadCustomerExists(Integer customerId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForCustomer(customerId);
+             PreparedStatement statement = connection.prepareStatement(CUSTOMER_QUERY)) {
+            statement.setInt(1, customerId);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? Boolean.TRUE : null;
+        }
+    }
+}
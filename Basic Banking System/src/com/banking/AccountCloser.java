@@ -0,0 +1,242 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * AccountCloser closes accounts without stalling the postings of other accounts.
+ * Deleting a long history in one statement locks every one of its rows until the
+ * commit; instead the history is moved to the Transaction_Archive table in chunks
+ * of {@code chunkSize} rows, oldest first, each copied and deleted in its own short
+ * transaction. A final transaction then locks the account row, which makes any
+ * concurrent posting to the account wait, moves the rows posted in the meantime and
+ * deletes the account. The closure itself is atomic: the account and the last of its
+ * history disappear together, and every row is in exactly one of the two tables at
+ * any time.
+ *
+ * If a closure fails part way, the chunks already archived stay in the archive and
+ * the account stays open; closing it again picks up where it stopped.
+ */
+public class AccountCloser {
+
+    // The chunkSize-th oldest row of the account, in the order of idx_transaction_account_date
+    private static final String CHUNK_END_QUERY = "SELECT transaction_date, transaction_id FROM Transaction"
+            + " WHERE account_id = ? ORDER BY transaction_date, transaction_id LIMIT 1 OFFSET ?";
+
+    // Expanded form of (transaction_date, transaction_id) <= (?, ?) so MySQL can range-scan the index
+    private static final String UP_TO_CHUNK_END =
+            " AND (transaction_date < ? OR (transaction_date = ? AND transaction_id <= ?))";
+
+    private static final String ARCHIVE_QUERY = "INSERT INTO Transaction_Archive"
+            + " (transaction_id, account_id, transaction_type, amount, transaction_date, idempotency_key,"
+            + " balance_after, sequence_no, bucket_no)"
+            + " SELECT transaction_id, account_id, transaction_type, amount, transaction_date, idempotency_key,"
+            + " balance_after, sequence_no, bucket_no FROM Transaction WHERE account_id = ?";
+    private static final String DELETE_HISTORY_QUERY = "DELETE FROM Transaction WHERE account_id = ?";
+    private static final String LOCK_ACCOUNT_QUERY = "SELECT account_id FROM Account WHERE account_id = ? FOR UPDATE";
+    private static final String DELETE_BUCKETS_QUERY = "DELETE FROM Account_Bucket WHERE account_id = ?";
+    private static final String DELETE_ACCOUNT_QUERY = "DELETE FROM Account WHERE account_id = ?";
+
+    private final int chunkSize;
+    private final long progressIntervalNanos;
+
+    /**
+     * Creates a closer configured from the "banking.close.*" system properties:
+     * chunkSize (1000 rows) and progressIntervalMillis (1000).
+     */
+    public AccountCloser() {
+        this(Integer.getInteger("banking.close.chunkSize", 1_000),
+             Long.getLong("banking.close.progressIntervalMillis", 1_000));
+    }
+
+    /**
+     * Creates a closer.
+     *
+     * @param chunkSize the most Transaction rows archived in one database transaction
+     * @param progressIntervalMillis how often {@link #closeAll} reports progress
+     */
+    public AccountCloser(int chunkSize, long progressIntervalMillis) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+    }
+
+    /**
+     * Archives an account's history and deletes the account.
+     *
+     * @param accountId the ID of the account to close
+     * @return the outcome
+     */
+    public AccountResult close(int accountId) {
+        long start = System.nanoTime();
+        try {
+            long archived = closeAndCount(accountId);
+            if (archived < 0) {
+                return BankingMetrics.CLOSE_ACCOUNT.record(start, new AccountResult(
+                        AccountResult.Status.ACCOUNT_NOT_FOUND, accountId, "No account found with ID: " + accountId));
+            }
+            return BankingMetrics.CLOSE_ACCOUNT.record(start, new AccountResult(AccountResult.Status.SUCCESS,
+                    accountId, "Account closed, " + archived + " transactions archived"));
+        } catch (SQLException e) {
+            return BankingMetrics.CLOSE_ACCOUNT.record(start,
+                    new AccountResult(AccountResult.Status.FAILED, accountId, e.getMessage()));
+        }
+    }
+
+    /**
+     * Closes many accounts one after another, reporting progress as it goes.
+     *
+     * @param accountIds the IDs of the accounts to close
+     * @param progress receives a report every progressIntervalMillis, and once more at the end;
+     *        may be null
+     * @return the final report
+     */
+    public ClosureReport closeAll(Iterable<Integer> accountIds, Consumer<ClosureReport> progress) {
+        long start = System.nanoTime();
+        long lastReport = start;
+        long closed = 0;
+        long notFound = 0;
+        long failed = 0;
+        long rows = 0;
+        for (int accountId : accountIds) {
+            long operationStart = System.nanoTime();
+            try {
+                long archived = closeAndCount(accountId);
+                if (archived < 0) {
+                    notFound++;
+                    BankingMetrics.CLOSE_ACCOUNT.rejected(operationStart);
+                } else {
+                    closed++;
+                    rows += archived;
+                    BankingMetrics.CLOSE_ACCOUNT.success(operationStart);
+                }
+            } catch (SQLException e) {
+                failed++;
+                BankingMetrics.CLOSE_ACCOUNT.failure(operationStart);
+                System.err.println("Error closing account " + accountId + ": " + e.getMessage());
+            }
+            long now = System.nanoTime();
+            if (progress != null && now - lastReport >= progressIntervalNanos) {
+                progress.accept(new ClosureReport(closed, notFound, failed, rows, now - start));
+                lastReport = now;
+            }
+        }
+        ClosureReport report = new ClosureReport(closed, notFound, failed, rows, System.nanoTime() - start);
+        if (progress != null) {
+            progress.accept(report);
+        }
+        return report;
+    }
+
+    /**
+     * Closes one account.
+     *
+     * @return the number of Transaction rows archived, or -1 if the account does not exist
+     */
+    private long closeAndCount(int accountId) throws SQLException {
+        long archived = 0;
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId)) {
+            connection.setAutoCommit(false);
+            try {
+                long moved;
+                while ((moved = archiveChunk(connection, accountId)) > 0) {
+                    archived += moved;
+                }
+                try (PreparedStatement lock = connection.prepareStatement(LOCK_ACCOUNT_QUERY)) {
+                    lock.setInt(1, accountId);
+                    try (ResultSet rs = lock.executeQuery()) {
+                        if (!rs.next()) {
+                            connection.rollback();
+                            return -1;
+                        }
+                    }
+                }
+                // Fewer than chunkSize rows are left, plus whatever was posted while archiving
+                archived += moveHistory(connection, accountId, null);
+                try (PreparedStatement buckets = connection.prepareStatement(DELETE_BUCKETS_QUERY);
+                     PreparedStatement delete = connection.prepareStatement(DELETE_ACCOUNT_QUERY)) {
+                    // A striped account's unmerged deposits go with it, as its balance does
+                    buckets.setInt(1, accountId);
+                    buckets.executeUpdate();
+                    delete.setInt(1, accountId);
+                    delete.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                AccountCache.invalidate(accountId);
+            }
+        }
+        return archived;
+    }
+
+    /**
+     * Moves the account's oldest chunkSize Transaction rows to the archive and commits.
+     *
+     * @return the number of rows moved, or 0 if fewer than chunkSize rows are left
+     */
+    private long archiveChunk(Connection connection, int accountId) throws SQLException {
+        ChunkEnd end;
+        try (PreparedStatement chunkEnd = connection.prepareStatement(CHUNK_END_QUERY)) {
+            chunkEnd.setInt(1, accountId);
+            chunkEnd.setInt(2, chunkSize - 1);
+            try (ResultSet rs = chunkEnd.executeQuery()) {
+                if (!rs.next()) {
+                    connection.commit();
+                    return 0;
+                }
+                end = new ChunkEnd(rs.getTimestamp("transaction_date"), rs.getInt("transaction_id"));
+            }
+        }
+        long moved = moveHistory(connection, accountId, end);
+        connection.commit();
+        return moved;
+    }
+
+    /**
+     * Copies the account's rows up to the chunk end, or all of them if end is null,
+     * into the archive and deletes them from Transaction, without committing.
+     */
+    private static long moveHistory(Connection connection, int accountId, ChunkEnd end) throws SQLException {
+        String range = end == null ? "" : UP_TO_CHUNK_END;
+        try (PreparedStatement archive = connection.prepareStatement(ARCHIVE_QUERY + range);
+             PreparedStatement delete = connection.prepareStatement(DELETE_HISTORY_QUERY + range)) {
+            bind(archive, accountId, end);
+            archive.executeUpdate();
+            bind(delete, accountId, end);
+            return delete.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement statement, int accountId, ChunkEnd end) throws SQLException {
+        statement.setInt(1, accountId);
+        if (end != null) {
+            statement.setTimestamp(2, end.date);
+            statement.setTimestamp(3, end.date);
+            statement.setInt(4, end.transactionId);
+        }
+    }
+
+    /**
+     * The last row of a chunk, in (transaction_date, transaction_id) order.
+     */
+    private static final class ChunkEnd {
+
+        private final Timestamp date;
+        private final int transactionId;
+
+        private ChunkEnd(Timestamp date, int transactionId) {
+            this.date = date;
+            this.transactionId = transactionId;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.banking;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+/**
+ * AccountExporter writes the Account and Transaction tables to CSV files in constant
+ * memory, however large the tables are. Rows are streamed from the database as the
+ * file is written: with the default fetch size of Integer.MIN_VALUE, MySQL Connector/J
+ * sends one row at a time instead of buffering the whole result, and the file is
+ * written through a single fixed-size buffer.
+ *
+ * Drivers that reject negative fetch sizes need "banking.export.fetchSize" set to a
+ * row count. The account file can be loaded again with {@link AccountImporter}.
+ *
+ * With several shards the file holds every shard's rows, one shard after another;
+ * rows are ordered by ID within each shard only.
+ */
+public class AccountExporter {
+
+    private static final String ACCOUNT_QUERY =
+            "SELECT account_id, customer_id, account_type, balance FROM Account ORDER BY account_id";
+    private static final String TRANSACTION_QUERY =
+            "SELECT transaction_id, account_id, transaction_type, amount, transaction_date, idempotency_key,"
+            + " balance_after, sequence_no FROM Transaction ORDER BY transaction_id";
+
+    private final int fetchSize;
+
+    /**
+     * Creates an exporter whose fetch size comes from the "banking.export.fetchSize" system property.
+     */
+    public AccountExporter() {
+        this(Integer.getInteger("banking.export.fetchSize", Integer.MIN_VALUE));
+    }
+
+    /**
+     * Creates an exporter.
+     *
+     * @param fetchSize the JDBC fetch size; Integer.MIN_VALUE streams rows from MySQL one at a time
+     */
+    public AccountExporter(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Writes every account to a CSV file with a header row, replacing the file if it exists.
+     *
+     * @param file the CSV file
+     * @return the number of accounts written
+     * @throws IOException if the file cannot be written
+     * @throws SQLException if the accounts cannot be read
+     */
+    public long exportAccounts(Path file) throws IOException, SQLException {
+        return export(file, ACCOUNT_QUERY, (rs, csv) -> csv
+                .field(rs.getInt("account_id"))
+                .field(rs.getInt("customer_id"))
+                .field(rs.getString("account_type"))
+                .field(String.valueOf(Money.read(rs, "balance"))),
+                "account_id", "customer_id", "account_type", "balance");
+    }
+
+    /**
+     * Writes every transaction to a CSV file with a header row, replacing the file if it exists.
+     *
+     * @param file the CSV file
+     * @return the number of transactions written
+     * @throws IOException if the file cannot be written
+     * @throws SQLException if the transactions cannot be read
+     */
+    public long exportTransactions(Path file) throws IOException, SQLException {
+        return export(file, TRANSACTION_QUERY, (rs, csv) -> {
+            Timestamp date = rs.getTimestamp("transaction_date");
+            Money balanceAfter = Money.read(rs, "balance_after");
+            long sequence = rs.getLong("sequence_no");
+            boolean sequenced = !rs.wasNull();
+            csv.field(rs.getInt("transaction_id"))
+                    .field(rs.getInt("account_id"))
+                    .field(TransactionType.fromCode(rs.getByte("transaction_type")).getLabel())
+                    .field(String.valueOf(Money.read(rs, "amount")))
+                    .field(date == null ? null : date.toString())
+                    .field(rs.getString("idempotency_key"))
+                    .field(balanceAfter == null ? null : balanceAfter.toString())
+                    .field(sequenced ? String.valueOf(sequence) : null);
+        }, "transaction_id", "account_id", "transaction_type", "amount", "transaction_date", "idempotency_key",
+                "balance_after", "sequence_no");
+    }
+
+    private long export(Path file, String query, RowWriter rowWriter, String... header)
+            throws IOException, SQLException {
+        long rows = 0;
+        ShardMap shards = DatabaseConnection.getShardMap();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Csv.Writer csv = new Csv.Writer(channel);
+            for (String column : header) {
+                csv.field(column);
+            }
+            csv.endRecord();
+            for (int shard = 0; shard < shards.getShardCount(); shard++) {
+                rows += exportShard(shards, shard, query, rowWriter, csv);
+            }
+            csv.flush();
+        }
+        return rows;
+    }
+
+    private long exportShard(ShardMap shards, int shard, String query, RowWriter rowWriter, Csv.Writer csv)
+            throws IOException, SQLException {
+        long rows = 0;
+        try (Connection connection = shards.getConnection(shard);
+             // Not through the statement cache, which would keep the streaming fetch size
+             PreparedStatement statement = connection.prepareStatement(query,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            statement.setFetchSize(fetchSize);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rowWriter.write(rs, csv);
+                    csv.endRecord();
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the fields of the current row.
+     */
+    private interface RowWriter {
+
+        void write(ResultSet rs, Csv.Writer csv) throws SQLException;
+    }
+}
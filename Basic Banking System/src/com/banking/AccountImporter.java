@@ -0,0 +1,442 @@
+package com.banking;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AccountImporter creates accounts in bulk from a CSV file, for onboarding a whole
+ * portfolio at once. Where {@link AccountManagement#addAccount} checks one customer
+ * and inserts one row per call, the importer works on chunks of rows:
+ *
+ *   1. The calling thread parses the file through a {@link FileChannel} and cuts it into chunks.
+ *   2. Each chunk is handed to one of {@code threads} workers, each on its own pooled connection.
+ *   3. A worker looks up every customer of its chunk with a few IN queries, rejects the
+ *      rows whose customer does not exist, inserts the rest in JDBC batches and commits.
+ *
+ * At most two chunks per worker are parsed ahead of the database, so memory use does not
+ * grow with the file. Each chunk commits on its own: if the database refuses a chunk,
+ * its rows are reported as failed and the other chunks are still imported. With MySQL,
+ * add rewriteBatchedStatements=true to the JDBC URL so that a batch is sent as one
+ * multi-row INSERT.
+ *
+ * The file has the columns customer_id, account_type and balance, in that order, or
+ * in any order given by a header row. A header may name other columns too, such as the
+ * account_id written by {@link AccountExporter}; they are ignored and new IDs assigned.
+ * A row with a negative balance is rejected as malformed.
+ *
+ * With several shards (see {@link ShardMap}) a worker splits its chunk by the shard of
+ * each row's customer, and validates and commits each part on that shard. A part
+ * fails if the shard generates an account ID that {@link ShardMap#shardOf} routes elsewhere.
+ */
+public class AccountImporter {
+
+    static final String INSERT_QUERY = "INSERT INTO Account (customer_id, account_type, balance) VALUES (?, ?, ?)";
+
+    // Customer IDs looked up per query; IN lists are padded to a power of two up to
+    // this size so that a handful of statement shapes serve every chunk
+    private static final int LOOKUP_SIZE = 1024;
+    private static final int MIN_LOOKUP_SIZE = 16;
+
+    private static final int MAX_ACCOUNT_TYPE_LENGTH = 20;
+    private static final int MAX_REJECTS_KEPT = 100;
+
+    private final int chunkSize;
+    private final int batchSize;
+    private final int threads;
+
+    /**
+     * Creates an importer configured from the "banking.import.*" system properties:
+     * chunkSize (5000 rows), batchSize (1000 rows) and threads (4).
+     */
+    public AccountImporter() {
+        this(Integer.getInteger("banking.import.chunkSize", 5_000),
+             Integer.getInteger("banking.import.batchSize", 1_000),
+             Integer.getInteger("banking.import.threads", 4));
+    }
+
+    /**
+     * Creates an importer.
+     *
+     * @param chunkSize the number of rows validated and committed together
+     * @param batchSize the number of rows sent to the database in one JDBC batch
+     * @param threads the number of chunks loaded at once, each on its own connection
+     */
+    public AccountImporter(int chunkSize, int batchSize, int threads) {
+        if (chunkSize < 1 || batchSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("chunkSize, batchSize and threads must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Imports the accounts in a CSV file.
+     *
+     * @param file the CSV file
+     * @return the counts of imported and rejected rows
+     * @throws IOException if the file cannot be read or has a header without the required columns;
+     *         chunks loaded before the error stay imported
+     */
+    public ImportResult importCsv(Path file) throws IOException {
+        long start = System.nanoTime();
+        Progress progress = new Progress();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "banking-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore parsedAhead = new Semaphore(threads * 2);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Csv.Reader reader = new Csv.Reader(channel);
+            List<String> record = reader.next();
+            int[] columns = { 0, 1, 2 };
+            if (record != null && isHeader(record)) {
+                columns = columnsOf(record);
+                record = reader.next();
+            }
+            Chunk chunk = new Chunk(chunkSize);
+            while (record != null) {
+                progress.rowsRead.increment();
+                parse(record, columns, reader.getLineNumber(), chunk, progress);
+                if (chunk.size == chunkSize) {
+                    submit(chunk, workers, parsedAhead, progress);
+                    chunk = new Chunk(chunkSize);
+                }
+                record = reader.next();
+            }
+            if (chunk.size > 0) {
+                submit(chunk, workers, parsedAhead, progress);
+            }
+        } finally {
+            workers.shutdown();
+            awaitQuietly(workers);
+        }
+        return progress.toResult(System.nanoTime() - start);
+    }
+
+    /**
+     * Tells whether the first row is a header: it names at least one of the expected
+     * columns. Any other first row is data, and is reported like any other row if it is malformed.
+     */
+    private static boolean isHeader(List<String> record) {
+        for (String field : record) {
+            switch (field.trim().toLowerCase(Locale.ROOT)) {
+                case "customer_id":
+                case "account_type":
+                case "balance":
+                    return true;
+                default:
+                    break;
+            }
+        }
+        return false;
+    }
+
+    private static int[] columnsOf(List<String> header) throws IOException {
+        int[] columns = { -1, -1, -1 };
+        for (int i = 0; i < header.size(); i++) {
+            switch (header.get(i).trim().toLowerCase(Locale.ROOT)) {
+                case "customer_id":
+                    columns[0] = i;
+                    break;
+                case "account_type":
+                    columns[1] = i;
+                    break;
+                case "balance":
+                    columns[2] = i;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (columns[0] < 0 || columns[1] < 0 || columns[2] < 0) {
+            throw new IOException("CSV header must name the customer_id, account_type and balance columns");
+        }
+        return columns;
+    }
+
+    private static void parse(List<String> record, int[] columns, long line, Chunk chunk, Progress progress) {
+        int customerColumn = columns[0];
+        int typeColumn = columns[1];
+        int balanceColumn = columns[2];
+        int needed = Math.max(customerColumn, Math.max(typeColumn, balanceColumn)) + 1;
+        if (record.size() < needed) {
+            progress.malformed(line, "expected at least " + needed + " fields, found " + record.size());
+            return;
+        }
+        String accountType = record.get(typeColumn).trim();
+        if (accountType.isEmpty() || accountType.length() > MAX_ACCOUNT_TYPE_LENGTH) {
+            progress.malformed(line, "account type must be 1 to " + MAX_ACCOUNT_TYPE_LENGTH + " characters");
+            return;
+        }
+        try {
+            Money balance = Money.parse(record.get(balanceColumn));
+            if (balance.isNegative()) {
+                progress.malformed(line, "opening balance must not be negative: " + balance);
+                return;
+            }
+            chunk.add(line, Integer.parseInt(record.get(customerColumn).trim()), accountType, balance);
+        } catch (NumberFormatException | ArithmeticException e) {
+            progress.malformed(line, "invalid number: " + e.getMessage());
+        }
+    }
+
+    private void submit(Chunk chunk, ExecutorService workers, Semaphore parsedAhead, Progress progress)
+            throws InterruptedIOException {
+        try {
+            parsedAhead.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the import workers");
+        }
+        workers.execute(() -> {
+            try {
+                load(chunk, progress);
+            } finally {
+                parsedAhead.release();
+            }
+        });
+    }
+
+    private static void awaitQuietly(ExecutorService workers) {
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting; every chunk either commits or fails on its own
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Loads one chunk, split into one part per shard.
+     */
+    private void load(Chunk chunk, Progress progress) {
+        ShardMap shards = DatabaseConnection.getShardMap();
+        if (shards.getShardCount() == 1) {
+            load(0, chunk, progress);
+            return;
+        }
+        int[] sizes = new int[shards.getShardCount()];
+        for (int i = 0; i < chunk.size; i++) {
+            sizes[shards.shardOfCustomer(chunk.customerIds[i])]++;
+        }
+        Chunk[] parts = new Chunk[sizes.length];
+        for (int i = 0; i < chunk.size; i++) {
+            int shard = shards.shardOfCustomer(chunk.customerIds[i]);
+            if (parts[shard] == null) {
+                parts[shard] = new Chunk(sizes[shard]);
+            }
+            parts[shard].add(chunk.lines[i], chunk.customerIds[i], chunk.accountTypes[i], chunk.balances[i]);
+        }
+        for (int shard = 0; shard < parts.length; shard++) {
+            if (parts[shard] != null) {
+                load(shard, parts[shard], progress);
+            }
+        }
+    }
+
+    /**
+     * Validates one shard's part of a chunk and inserts its accounts in one database transaction.
+     */
+    private void load(int shard, Chunk chunk, Progress progress) {
+        // Rows that count as failed if the chunk cannot be loaded: all of them until validated
+        int pending = chunk.size;
+        try (Connection connection = DatabaseConnection.getShardMap().getConnection(shard)) {
+            IntLongHashMap customers = existingCustomers(connection, chunk);
+            int valid = 0;
+            for (int i = 0; i < chunk.size; i++) {
+                if (customers.containsKey(chunk.customerIds[i])) {
+                    valid++;
+                } else {
+                    progress.unknownCustomer(chunk.lines[i], chunk.customerIds[i]);
+                }
+            }
+            pending = valid;
+            if (valid == 0) {
+                return;
+            }
+            connection.setAutoCommit(false);
+            boolean sharded = DatabaseConnection.getShardMap().getShardCount() > 1;
+            try (PreparedStatement insert = sharded
+                    ? connection.prepareStatement(INSERT_QUERY, Statement.RETURN_GENERATED_KEYS)
+                    : connection.prepareStatement(INSERT_QUERY)) {
+                int batched = 0;
+                for (int i = 0; i < chunk.size; i++) {
+                    if (!customers.containsKey(chunk.customerIds[i])) {
+                        continue;
+                    }
+                    insert.setInt(1, chunk.customerIds[i]);
+                    insert.setString(2, chunk.accountTypes[i]);
+                    Money.bind(insert, 3, chunk.balances[i]);
+                    insert.addBatch();
+                    if (++batched == batchSize) {
+                        executeBatch(insert, shard, sharded);
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    executeBatch(insert, shard, sharded);
+                }
+                connection.commit();
+                progress.imported.add(valid);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            progress.failed(chunk, pending, e);
+        }
+    }
+
+    /**
+     * Sends a batch of inserts. With several shards, every generated account ID must
+     * route back to the shard it was created on, as {@link AccountManagement} checks
+     * for single accounts; otherwise the chunk fails.
+     */
+    private static void executeBatch(PreparedStatement insert, int shard, boolean sharded) throws SQLException {
+        insert.executeBatch();
+        if (!sharded) {
+            return;
+        }
+        ShardMap shards = DatabaseConnection.getShardMap();
+        try (ResultSet keys = insert.getGeneratedKeys()) {
+            while (keys.next()) {
+                int accountId = keys.getInt(1);
+                // An ID outside the shard's residue class would route the account to another shard
+                if (shards.shardOf(accountId) != shard) {
+                    throw new SQLException("Shard " + shard + " generated account ID " + accountId
+                            + ", which belongs to shard " + shards.shardOf(accountId)
+                            + "; check its auto_increment_increment and auto_increment_offset");
+                }
+            }
+        }
+    }
+
+    private static IntLongHashMap existingCustomers(Connection connection, Chunk chunk) throws SQLException {
+        IntLongHashMap requested = new IntLongHashMap(chunk.size);
+        for (int i = 0; i < chunk.size; i++) {
+            requested.put(chunk.customerIds[i], 0);
+        }
+        int[] ids = new int[requested.size()];
+        int[] count = { 0 };
+        requested.forEach((id, unused) -> ids[count[0]++] = id);
+
+        IntLongHashMap existing = new IntLongHashMap(ids.length);
+        for (int from = 0; from < ids.length; from += LOOKUP_SIZE) {
+            int length = Math.min(LOOKUP_SIZE, ids.length - from);
+            int width = Math.max(MIN_LOOKUP_SIZE, Integer.highestOneBit(length - 1) << 1);
+            try (PreparedStatement lookup = connection.prepareStatement(lookupQuery(width))) {
+                for (int i = 0; i < width; i++) {
+                    // Padding repeats the last ID, which the IN list ignores
+                    lookup.setInt(i + 1, ids[from + Math.min(i, length - 1)]);
+                }
+                try (ResultSet rs = lookup.executeQuery()) {
+                    while (rs.next()) {
+                        existing.put(rs.getInt(1), 0);
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    private static String lookupQuery(int width) {
+        StringBuilder sql = new StringBuilder(64 + width * 3);
+        sql.append("SELECT customer_id FROM Customer WHERE customer_id IN (?");
+        for (int i = 1; i < width; i++) {
+            sql.append(", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Parsed rows waiting to be loaded, held in parallel arrays.
+     */
+    private static final class Chunk {
+
+        private final long[] lines;
+        private final int[] customerIds;
+        private final String[] accountTypes;
+        private final Money[] balances;
+        private int size;
+
+        private Chunk(int capacity) {
+            lines = new long[capacity];
+            customerIds = new int[capacity];
+            accountTypes = new String[capacity];
+            balances = new Money[capacity];
+        }
+
+        private void add(long line, int customerId, String accountType, Money balance) {
+            lines[size] = line;
+            customerIds[size] = customerId;
+            accountTypes[size] = accountType;
+            balances[size] = balance;
+            size++;
+        }
+    }
+
+    /**
+     * Counters shared by the parsing thread and the workers.
+     */
+    private static final class Progress {
+
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder imported = new LongAdder();
+        private final LongAdder unknownCustomers = new LongAdder();
+        private final LongAdder malformed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final List<String> rejects = new ArrayList<>();
+
+        private void malformed(long line, String reason) {
+            malformed.increment();
+            reject("Line " + line + ": " + reason);
+        }
+
+        private void unknownCustomer(long line, int customerId) {
+            unknownCustomers.increment();
+            reject("Line " + line + ": customer ID does not exist: " + customerId);
+        }
+
+        private void failed(Chunk chunk, int rows, Exception e) {
+            failed.add(rows);
+            reject("Lines " + chunk.lines[0] + "-" + chunk.lines[chunk.size - 1] + ": chunk not imported: "
+                    + e.getMessage());
+        }
+
+        private void reject(String description) {
+            synchronized (rejects) {
+                if (rejects.size() < MAX_REJECTS_KEPT) {
+                    rejects.add(description);
+                }
+            }
+        }
+
+        private ImportResult toResult(long elapsedNanos) {
+            synchronized (rejects) {
+                return new ImportResult(rowsRead.sum(), imported.sum(), unknownCustomers.sum(), malformed.sum(),
+                        failed.sum(), elapsedNanos, new ArrayList<>(rejects));
+            }
+        }
+    }
+}
@@ -4,12 +4,15 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * Manages operations related to bank accounts, including adding, viewing, updating, and closing accounts.
  */
 public class AccountManagement {
 
+    private final AccountCloser closer = new AccountCloser();
+
     /**
      * Adds a new account to the database.
      * 
@@ -17,41 +20,79 @@ public class AccountManagement {
      * @param accountType the type of the account (e.g., Savings, Checking)
      * @param initialBalance the initial balance of the account
      */
-	public void addAccount(int customerId, String accountType, double initialBalance) {
+	public void addAccount(int customerId, String accountType, Money initialBalance) {
+	    AccountResult result = createAccount(customerId, accountType, initialBalance);
+	    switch (result.getStatus()) {
+	        case SUCCESS:
+	            System.out.println("Account successfully added.");
+	            break;
+	        case CUSTOMER_NOT_FOUND:
+	            System.out.println("Error: Customer ID does not exist.");
+	            break;
+	        default:
+	            System.err.println("Error adding account: " + result.getMessage());
+	    }
+	}
+
+    /**
+     * Adds a new account to the database without printing anything.
+     * 
+     * @param customerId the ID of the customer who owns the account
+     * @param accountType the type of the account (e.g., Savings, Checking)
+     * @param initialBalance the initial balance of the account
+     * @return the outcome, carrying the generated account ID on success
+     */
+	public AccountResult createAccount(int customerId, String accountType, Money initialBalance) {
+	    long start = System.nanoTime();
+	    return BankingMetrics.OPEN_ACCOUNT.record(start, insertAccount(customerId, accountType, initialBalance));
+	}
+
+	private AccountResult insertAccount(int customerId, String accountType, Money initialBalance) {
 	    // First, check if the customer exists
-	    if (!customerExists(customerId)) {
-	        System.out.println("Error: Customer ID does not exist.");
-	        return;
+	    try {
+	        if (!AccountCache.customerExists(customerId)) {
+	            return new AccountResult(AccountResult.Status.CUSTOMER_NOT_FOUND, 0,
+	                    "Customer ID does not exist: " + customerId);
+	        }
+	    } catch (SQLException e) {
+	        return new AccountResult(AccountResult.Status.FAILED, 0, e.getMessage());
 	    }
 
-	    // Proceed with adding the account
+	    // Proceed with adding the account, on the customer's shard
+	    ShardMap shards = DatabaseConnection.getShardMap();
+	    boolean sharded = shards.getShardCount() > 1;
 	    String query = "INSERT INTO Account (customer_id, account_type, balance) VALUES (?, ?, ?)";
-	    try (Connection connection = DatabaseConnection.getConnection();
-	         PreparedStatement statement = connection.prepareStatement(query)) {
+	    try (Connection connection = DatabaseConnection.getConnectionForCustomer(customerId);
+	         PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS)) {
+	        if (sharded) {
+	            connection.setAutoCommit(false);
+	        }
 	        statement.setInt(1, customerId);
 	        statement.setString(2, accountType);
-	        statement.setDouble(3, initialBalance);
+	        Money.bind(statement, 3, initialBalance);
 	        statement.executeUpdate();
-	        System.out.println("Account successfully added.");
-	    } catch (SQLException e) {
-	        System.err.println("Error adding account: " + e.getMessage());
-	    }
-	}
-
-	private boolean customerExists(int customerId) {
-	    String query = "SELECT 1 FROM Customer WHERE customer_id = ?";
-	    try (Connection connection = DatabaseConnection.getConnection();
-	         PreparedStatement statement = connection.prepareStatement(query)) {
-	        statement.setInt(1, customerId);
-	        ResultSet rs = statement.executeQuery();
-	        return rs.next();
+	        int accountId = 0;
+	        try (ResultSet keys = statement.getGeneratedKeys()) {
+	            if (keys.next()) {
+	                accountId = keys.getInt(1);
+	            }
+	        }
+	        if (sharded) {
+	            // An ID outside the shard's residue class would route the account to another shard
+	            if (shards.shardOf(accountId) != shards.shardOfCustomer(customerId)) {
+	                connection.rollback();
+	                return new AccountResult(AccountResult.Status.FAILED, 0, "Shard "
+	                        + shards.shardOfCustomer(customerId) + " generated account ID " + accountId
+	                        + ", which belongs to shard " + shards.shardOf(accountId)
+	                        + "; check its auto_increment_increment and auto_increment_offset");
+	            }
+	            connection.commit();
+	        }
+	        return new AccountResult(AccountResult.Status.SUCCESS, accountId, "Account added");
 	    } catch (SQLException e) {
-	        System.err.println("Error checking customer existence: " + e.getMessage());
-	        return false;
+	        return new AccountResult(AccountResult.Status.FAILED, 0, e.getMessage());
 	    }
 	}
-	
-
 
     /**
      * Views the details of a specific account.
@@ -59,16 +100,13 @@ public class AccountManagement {
      * @param accountId the ID of the account to view
      */
     public void viewAccountDetails(int accountId) {
-        String query = "SELECT * FROM Account WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, accountId);
-            ResultSet rs = statement.executeQuery();
-            if (rs.next()) {
-                System.out.println("Account ID: " + rs.getInt("account_id"));
-                System.out.println("Customer ID: " + rs.getInt("customer_id"));
-                System.out.println("Account Type: " + rs.getString("account_type"));
-                System.out.println("Balance: $" + rs.getDouble("balance"));
+        try {
+            Account account = getAccount(accountId);
+            if (account != null) {
+                System.out.println("Account ID: " + account.getAccountId());
+                System.out.println("Customer ID: " + account.getCustomerId());
+                System.out.println("Account Type: " + account.getAccountType());
+                System.out.println("Balance: " + account.getBalance().format());
             } else {
                 System.out.println("No account found with ID: " + accountId);
             }
@@ -77,6 +115,30 @@ public class AccountManagement {
         }
     }
     
+    /**
+     * Gets a specific account, served from the {@link AccountCache} when possible.
+     * 
+     * @param accountId the ID of the account to get
+     * @return the account, or null if no account has that ID
+     * @throws SQLException if a database access error occurs
+     */
+    public Account getAccount(int accountId) throws SQLException {
+        long start = System.nanoTime();
+        Account account;
+        try {
+            account = AccountCache.getAccount(accountId);
+        } catch (SQLException e) {
+            BankingMetrics.VIEW_ACCOUNT.failure(start);
+            throw e;
+        }
+        if (account != null) {
+            BankingMetrics.VIEW_ACCOUNT.success(start);
+        } else {
+            BankingMetrics.VIEW_ACCOUNT.rejected(start);
+        }
+        return account;
+    }
+
     /**
      * Updates the details of an existing account.
      * 
@@ -84,62 +146,119 @@ public class AccountManagement {
      * @param newAccountType the new type of the account (e.g., Savings, Checking)
      * @param newBalance the new balance of the account
      */
-    public void updateAccount(int accountId, String newAccountType, double newBalance) {
-        String query = "UPDATE Account SET account_type = ?, balance = ? WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setString(1, newAccountType);
-            statement.setDouble(2, newBalance);
-            statement.setInt(3, accountId);
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Account successfully updated.");
-            } else {
-                System.out.println("No account found with ID: " + accountId);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error updating account: " + e.getMessage());
+    public void updateAccount(int accountId, String newAccountType, Money newBalance) {
+        AccountResult result = modifyAccount(accountId, newAccountType, newBalance);
+        if (result.isSuccess()) {
+            System.out.println("Account successfully updated.");
+        } else if (result.getStatus() == AccountResult.Status.ACCOUNT_NOT_FOUND) {
+            System.out.println("No account found with ID: " + accountId);
+        } else {
+            System.err.println("Error updating account: " + result.getMessage());
         }
     }
-    public void deleteTransactions(int accountId) {
-        String query = "DELETE FROM Transaction WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, accountId);
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Transactions successfully deleted.");
-            } else {
-                System.out.println("No transactions found for Account ID: " + accountId);
+
+    /**
+     * Updates the details of an existing account without printing anything.
+     * 
+     * @param accountId the ID of the account to update
+     * @param newAccountType the new type of the account (e.g., Savings, Checking)
+     * @param newBalance the new balance of the account
+     * @return the outcome
+     */
+    public AccountResult modifyAccount(int accountId, String newAccountType, Money newBalance) {
+        long start = System.nanoTime();
+        return BankingMetrics.UPDATE_ACCOUNT.record(start, updateRow(accountId, newAccountType, newBalance));
+    }
+
+    /**
+     * Updates the account row. A changed balance is recorded as an "Adjustment" ledger
+     * row for the difference, so the running balances of the history stay continuous.
+     * The buckets of a striped account are merged first in the same transaction, so the
+     * difference is taken from the full balance and no bucket deposit lands on top of
+     * the new one.
+     */
+    private AccountResult updateRow(int accountId, String newAccountType, Money newBalance) {
+        String lockQuery = "SELECT balance FROM Account WHERE account_id = ? FOR UPDATE";
+        String query = "UPDATE Account SET account_type = ?, balance = ?, last_sequence = last_sequence + ?"
+                + " WHERE account_id = ?";
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement(lockQuery);
+                 PreparedStatement statement = connection.prepareStatement(query);
+                 PreparedStatement log = connection.prepareStatement(TransactionManagement.LOG_QUERY)) {
+                if (StripedBalances.isStriped(accountId)) {
+                    StripedBalances.compact(connection, accountId);
+                }
+                lock.setInt(1, accountId);
+                Money oldBalance;
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.rollback();
+                        return new AccountResult(AccountResult.Status.ACCOUNT_NOT_FOUND, accountId,
+                                "No account found with ID: " + accountId);
+                    }
+                    oldBalance = Money.read(rs, "balance");
+                }
+                boolean adjusted = oldBalance.compareTo(newBalance) != 0;
+                statement.setString(1, newAccountType);
+                Money.bind(statement, 2, newBalance);
+                statement.setInt(3, adjusted ? 1 : 0);
+                statement.setInt(4, accountId);
+                statement.executeUpdate();
+                if (adjusted) {
+                    TransactionManagement.bindLog(log, accountId, TransactionType.ADJUSTMENT,
+                            newBalance.minus(oldBalance), null);
+                    log.executeUpdate();
+                }
+                connection.commit();
+                return new AccountResult(AccountResult.Status.SUCCESS, accountId, "Account updated");
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                AccountCache.invalidate(accountId);
             }
         } catch (SQLException e) {
-            System.err.println("Error deleting transactions: " + e.getMessage());
+            return new AccountResult(AccountResult.Status.FAILED, accountId, e.getMessage());
         }
     }
 
     /**
-     * Closes (deletes) an account from the database.
+     * Closes (deletes) an account from the database. Its transaction history is
+     * moved to the archive table in bounded chunks; see {@link AccountCloser}.
      * 
      * @param accountId the ID of the account to close
      */
     public void closeAccount(int accountId) {
-        // First, delete related transactions
-        deleteTransactions(accountId);
-
-        // Then, delete the account
-        String query = "DELETE FROM Account WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, accountId);
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Account successfully closed.");
-            } else {
-                System.out.println("No account found with ID: " + accountId);
-            }
-        } catch (SQLException e) {
-            System.err.println("Error closing account: " + e.getMessage());
+        AccountResult result = closer.close(accountId);
+        if (result.isSuccess()) {
+            System.out.println("Account successfully closed.");
+        } else if (result.getStatus() == AccountResult.Status.ACCOUNT_NOT_FOUND) {
+            System.out.println("No account found with ID: " + accountId);
+        } else {
+            System.err.println("Error closing account: " + result.getMessage());
         }
     }
 
+    /**
+     * Closes (deletes) an account without printing anything. The account and the
+     * last of its history are removed in one database transaction, after the rest
+     * of the history has been archived in bounded chunks.
+     * 
+     * @param accountId the ID of the account to close
+     * @return the outcome
+     */
+    public AccountResult removeAccount(int accountId) {
+        return closer.close(accountId);
+    }
+
+    /**
+     * Gets the closer used for account closures, e.g. to close many accounts at once.
+     * 
+     * @return the account closer
+     */
+    public AccountCloser getAccountCloser() {
+        return closer;
+    }
+
 }
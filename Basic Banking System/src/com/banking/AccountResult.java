@@ -0,0 +1,80 @@
+package com.banking;
+
+/**
+ * AccountResult describes the outcome of adding, updating or closing an account,
+ * so callers can react to it instead of parsing console output.
+ */
+public class AccountResult {
+
+    /**
+     * The possible outcomes of an account operation.
+     */
+    public enum Status {
+        // The change was committed
+        SUCCESS,
+        // The customer the account should belong to does not exist
+        CUSTOMER_NOT_FOUND,
+        // No account has the given ID
+        ACCOUNT_NOT_FOUND,
+        // A database error occurred and nothing was committed
+        FAILED
+    }
+
+    private final Status status;
+    private final int accountId;
+    private final String message;
+
+    /**
+     * Creates an account result.
+     *
+     * @param status the outcome
+     * @param accountId the ID of the account, or 0 if none was created
+     * @param message a human-readable description of the outcome
+     */
+    public AccountResult(Status status, int accountId, String message) {
+        this.status = status;
+        this.accountId = accountId;
+        this.message = message;
+    }
+
+    /**
+     * Gets the outcome of the operation.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Tells whether the operation was committed.
+     *
+     * @return true if the status is SUCCESS
+     */
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * Gets the ID of the account; for a new account this is the generated ID.
+     *
+     * @return the account ID
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets a human-readable description of the outcome.
+     *
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountResult [status=" + status + ", accountId=" + accountId + ", message=" + message + "]";
+    }
+}
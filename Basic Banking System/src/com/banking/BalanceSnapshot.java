@@ -0,0 +1,146 @@
+package com.banking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * BalanceSnapshot is a compact binary copy of every account balance as of one
+ * journal sequence number, its high-water mark. Loading a snapshot and replaying
+ * only the journal records after the high-water mark gives the same balances as
+ * replaying the whole journal.
+ *
+ * The file is little-endian:
+ *
+ *   magic (4) | version (4) | sequence (8) | account count (4) |
+ *   account count x (account ID (4) | balance in cents (8)) | CRC32C of everything before it (4)
+ *
+ * A new snapshot is written to a temporary file, forced to disk and then moved over
+ * the old one, so a crash while writing leaves the previous snapshot in place.
+ */
+final class BalanceSnapshot {
+
+    private static final int MAGIC = 0x424B5331; // "BKS1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+    private static final int ENTRY_SIZE = 12;
+
+    private final long sequence;
+    private final IntLongHashMap balances;
+
+    private BalanceSnapshot(long sequence, IntLongHashMap balances) {
+        this.sequence = sequence;
+        this.balances = balances;
+    }
+
+    /**
+     * Gets the journal sequence number the balances are current to.
+     *
+     * @return the high-water mark
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the balances, in cents by account ID.
+     *
+     * @return the balances
+     */
+    IntLongHashMap getBalances() {
+        return balances;
+    }
+
+    /**
+     * Writes a snapshot, replacing any earlier one at the same path.
+     *
+     * @param path the snapshot file
+     * @param sequence the journal sequence number the balances are current to
+     * @param balances the balances in cents by account ID
+     * @return the size of the file in bytes
+     * @throws IOException if the snapshot cannot be written
+     */
+    static long write(Path path, long sequence, IntLongHashMap balances) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        long size;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(balances.size());
+            try {
+                balances.forEach((accountId, cents) -> {
+                    if (buffer.remaining() < ENTRY_SIZE) {
+                        drain(out, buffer, crc);
+                    }
+                    buffer.putInt(accountId).putLong(cents);
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            drain(out, buffer, crc);
+            buffer.putInt((int) crc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(true);
+            size = out.size();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    // Writes out the buffered bytes, adding them to the checksum on the way
+    private static void drain(FileChannel out, ByteBuffer buffer, CRC32C crc) {
+        buffer.flip();
+        crc.update(buffer.duplicate());
+        try {
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param path the snapshot file
+     * @return the snapshot, or null if there is no file
+     * @throws IOException if the file cannot be read or is damaged
+     */
+    static BalanceSnapshot read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.remaining() < HEADER_SIZE + 4 || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Not a version " + VERSION + " balance snapshot: " + path);
+        }
+        long sequence = data.getLong(8);
+        int count = data.getInt(16);
+        int end = HEADER_SIZE + count * ENTRY_SIZE;
+        if (count < 0 || data.limit() != end + 4) {
+            throw new IOException("Balance snapshot has the wrong length: " + path);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(data.array(), 0, end);
+        if (data.getInt(end) != (int) crc.getValue()) {
+            throw new IOException("Balance snapshot checksum does not match: " + path);
+        }
+        IntLongHashMap balances = new IntLongHashMap(Math.max(16, count));
+        for (int offset = HEADER_SIZE; offset < end; offset += ENTRY_SIZE) {
+            balances.put(data.getInt(offset), data.getLong(offset + 4));
+        }
+        return new BalanceSnapshot(sequence, balances);
+    }
+}
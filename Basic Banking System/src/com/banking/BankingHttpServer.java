@@ -0,0 +1,377 @@
+package com.banking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * BankingHttpServer exposes the eight menu operations as a small JSON API on the
+ * JDK's built-in HTTP server:
+ *
+ *   POST   /accounts                       {"customerId":1,"accountType":"Savings","balance":"10.00"}
+ *   GET    /accounts/{id}
+ *   PUT    /accounts/{id}                  {"accountType":"Checking","balance":"25.00"}
+ *   DELETE /accounts/{id}
+ *   POST   /accounts/{id}/deposit          {"amount":"5.00"}
+ *   POST   /accounts/{id}/withdraw         {"amount":"5.00"}
+ *   POST   /transfers                      {"fromAccountId":1,"toAccountId":2,"amount":"5.00"}
+ *   GET    /accounts/{id}/transactions?limit=20&afterDate=...&afterId=...&from=...&to=...
+ *   GET    /metrics                        plain-text {@link BankingMetrics} dump
+ *
+ * Deposits, withdrawals and transfers honour an Idempotency-Key request header: a
+ * retry carrying the same key is answered with the original result and moves no
+ * money; a key reused for a different request is refused with 422. Amounts are
+ * decimal strings so that no precision is lost in transit. Requests are handed to a
+ * BankingService and answered when its future completes, so a request thread is
+ * never parked on JDBC. Outcomes map onto status codes: 404 for an unknown account
+ * or customer, 409 for insufficient funds, 400 for a malformed request (including an
+ * amount that is not positive), 500 for a database error and 501 for an operation
+ * the configured ledger does not offer.
+ */
+public class BankingHttpServer implements AutoCloseable {
+
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
+
+    static {
+        // The JDK server writes headers and body separately; without TCP_NODELAY the
+        // body waits on the client's delayed ACK and every response takes ~40 ms.
+        // The property is read once, when the first server is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final BankingService service;
+
+    /**
+     * Creates a server on the given port; call {@link #start()} to begin serving.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param service the service the requests are handed to
+     * @throws IOException if the port cannot be bound
+     */
+    public BankingHttpServer(int port, BankingService service) throws IOException {
+        this.service = service;
+        this.server = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("banking.http.backlog", 1024));
+        ExecutorService perTask = BankingService.newVirtualThreadPerTaskExecutor();
+        this.executor = perTask != null ? perTask : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "banking-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server.setExecutor(executor);
+        this.server.createContext("/accounts", this::handleAccounts);
+        this.server.createContext("/transfers", this::handleTransfers);
+        this.server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleAccounts(HttpExchange exchange) {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            // path[0] is empty and path[1] is "accounts"
+            if (path.length == 2) {
+                if (!"POST".equals(method)) {
+                    send(exchange, 405, error("Method not allowed"));
+                    return;
+                }
+                Map<String, String> body = readBody(exchange);
+                reply(exchange, service.addAccount(intMember(body, "customerId"),
+                        requiredMember(body, "accountType"), Money.parse(requiredMember(body, "balance"))),
+                        result -> accountResult(result, 201));
+                return;
+            }
+            int accountId = Integer.parseInt(path[2]);
+            if (path.length == 3) {
+                switch (method) {
+                    case "GET":
+                        reply(exchange, service.getAccount(accountId), account -> account == null
+                                ? new Response(404, error("No account found with ID: " + accountId))
+                                : new Response(200, Json.account(account)));
+                        return;
+                    case "PUT":
+                        Map<String, String> body = readBody(exchange);
+                        reply(exchange, service.updateAccount(accountId, requiredMember(body, "accountType"),
+                                Money.parse(requiredMember(body, "balance"))), result -> accountResult(result, 200));
+                        return;
+                    case "DELETE":
+                        reply(exchange, service.closeAccount(accountId), result -> accountResult(result, 200));
+                        return;
+                    default:
+                        send(exchange, 405, error("Method not allowed"));
+                        return;
+                }
+            }
+            if (path.length == 4 && "POST".equals(method) && "deposit".equals(path[3])) {
+                Money amount = amountMember(readBody(exchange));
+                reply(exchange, service.deposit(accountId, amount, idempotencyKey(exchange)),
+                        BankingHttpServer::postingResult);
+            } else if (path.length == 4 && "POST".equals(method) && "withdraw".equals(path[3])) {
+                Money amount = amountMember(readBody(exchange));
+                reply(exchange, service.withdraw(accountId, amount, idempotencyKey(exchange)),
+                        BankingHttpServer::postingResult);
+            } else if (path.length == 4 && "GET".equals(method) && "transactions".equals(path[3])) {
+                HistoryQuery query = historyQuery(accountId, exchange.getRequestURI());
+                reply(exchange, service.getTransactionHistory(query), page -> historyPage(page, query));
+            } else {
+                send(exchange, 404, error("Not found"));
+            }
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (IOException e) {
+            send(exchange, 400, error("Error reading request: " + e.getMessage()));
+        }
+    }
+
+    private void handleTransfers(HttpExchange exchange) {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod()) || !"/transfers".equals(exchange.getRequestURI().getPath())) {
+                send(exchange, 404, error("Not found"));
+                return;
+            }
+            Map<String, String> body = readBody(exchange);
+            reply(exchange, service.transferFunds(intMember(body, "fromAccountId"), intMember(body, "toAccountId"),
+                    amountMember(body), idempotencyKey(exchange)),
+                    BankingHttpServer::postingResult);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (IOException e) {
+            send(exchange, 400, error("Error reading request: " + e.getMessage()));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) {
+        if (!"GET".equals(exchange.getRequestMethod()) || !"/metrics".equals(exchange.getRequestURI().getPath())) {
+            send(exchange, 404, error("Not found"));
+            return;
+        }
+        send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", BankingMetrics.dump());
+    }
+
+    private static HistoryQuery historyQuery(int accountId, URI uri) {
+        Map<String, String> parameters = queryParameters(uri.getRawQuery());
+        HistoryQuery query = new HistoryQuery(accountId);
+        String limit = parameters.get("limit");
+        query.setLimit(limit == null ? DEFAULT_HISTORY_LIMIT : Integer.parseInt(limit));
+        if (parameters.containsKey("from")) {
+            query.setFrom(Timestamp.valueOf(parameters.get("from")));
+        }
+        if (parameters.containsKey("to")) {
+            query.setTo(Timestamp.valueOf(parameters.get("to")));
+        }
+        if (parameters.containsKey("afterDate") && parameters.containsKey("afterId")) {
+            Transaction last = new Transaction();
+            last.setTransactionDate(parameters.get("afterDate"));
+            last.setTransactionId(Integer.parseInt(parameters.get("afterId")));
+            query.setAfter(last);
+        }
+        return query;
+    }
+
+    private static Map<String, String> queryParameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return Json.parseObject(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String idempotencyKey(HttpExchange exchange) {
+        return exchange.getRequestHeaders().getFirst("Idempotency-Key");
+    }
+
+    private static String requiredMember(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing \"" + name + "\"");
+        }
+        return value;
+    }
+
+    /**
+     * Reads the "amount" of a posting, which must be positive; a zero or negative amount
+     * is a malformed request rather than something to hand to the ledger.
+     */
+    private static Money amountMember(Map<String, String> body) {
+        Money amount = Money.parse(requiredMember(body, "amount"));
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("\"amount\" must be positive");
+        }
+        return amount;
+    }
+
+    private static int intMember(Map<String, String> body, String name) {
+        return Integer.parseInt(requiredMember(body, name));
+    }
+
+    private static Response accountResult(AccountResult result, int successStatus) {
+        int status;
+        switch (result.getStatus()) {
+            case SUCCESS:
+                status = successStatus;
+                break;
+            case CUSTOMER_NOT_FOUND:
+            case ACCOUNT_NOT_FOUND:
+                status = 404;
+                break;
+            default:
+                status = 500;
+        }
+        return new Response(status, "{\"status\":\"" + result.getStatus() + "\",\"accountId\":" + result.getAccountId()
+                + ",\"message\":" + Json.quote(result.getMessage()) + "}");
+    }
+
+    private static Response postingResult(PostingResult result) {
+        int status;
+        switch (result.getStatus()) {
+            case SUCCESS:
+            case DUPLICATE:
+                status = 200;
+                break;
+            case ACCOUNT_NOT_FOUND:
+                status = 404;
+                break;
+            case INSUFFICIENT_FUNDS:
+                status = 409;
+                break;
+            case LIMIT_EXCEEDED:
+                status = 429;
+                break;
+            case KEY_MISMATCH:
+                status = 422;
+                break;
+            default:
+                status = 500;
+        }
+        return new Response(status, "{\"status\":\"" + result.getStatus() + "\",\"accountId\":" + result.getAccountId()
+                + ",\"amount\":\"" + result.getAmount() + "\",\"message\":" + Json.quote(result.getMessage()) + "}");
+    }
+
+    private static Response historyPage(List<Transaction> page, HistoryQuery query) {
+        StringBuilder body = new StringBuilder("{\"transactions\":[");
+        for (int i = 0; i < page.size(); i++) {
+            body.append(i == 0 ? "" : ",").append(Json.transaction(page.get(i)));
+        }
+        body.append(']');
+        // A full page may have more behind it; hand back the keyset cursor for the next one
+        if (query.getLimit() > 0 && page.size() == query.getLimit()) {
+            Transaction last = page.get(page.size() - 1);
+            body.append(",\"next\":{\"afterDate\":").append(Json.quote(last.getTransactionDate()))
+                    .append(",\"afterId\":").append(last.getTransactionId()).append('}');
+        }
+        return new Response(200, body.append('}').toString());
+    }
+
+    /**
+     * Sends the response once the future completes, on whichever thread completes it.
+     */
+    private static <T> void reply(HttpExchange exchange, CompletableFuture<T> future,
+                                  Function<T, Response> render) {
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                Response response = render.apply(value);
+                send(exchange, response.status, response.body);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (cause instanceof UnsupportedOperationException) {
+                    // Not offered by the configured ledger, e.g. closing an account in journal mode
+                    send(exchange, 501, error(cause.getMessage()));
+                    return;
+                }
+                System.err.println("Error serving " + exchange.getRequestURI() + ": " + cause.getMessage());
+                send(exchange, 500, error(String.valueOf(cause.getMessage())));
+            }
+        });
+    }
+
+    private static String error(String message) {
+        return "{\"status\":\"ERROR\",\"message\":" + Json.quote(message) + "}";
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) {
+        send(exchange, status, "application/json; charset=utf-8", body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(status, bytes.length);
+            out.write(bytes);
+        } catch (IOException e) {
+            System.err.println("Error sending response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops accepting connections, lets exchanges in progress finish for up to a second
+     * and shuts down the request executor.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * A rendered response.
+     */
+    private static final class Response {
+
+        private final int status;
+        private final String body;
+
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
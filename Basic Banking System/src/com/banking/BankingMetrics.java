@@ -0,0 +1,189 @@
+package com.banking;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * BankingMetrics is the process-wide registry of hot-path metrics: per-operation
+ * latency histograms with success, rejection, failure and retry counters, plus the
+ * time spent borrowing pooled connections and the time spent inside the database,
+ * measured around statement execute and commit calls. The gap between an
+ * operation's latency and its acquire and execute time is time spent in the
+ * application itself.
+ *
+ * The metrics are exposed over JMX by {@link #registerMBean()} and as plain text by
+ * {@link #dump()}, in the Prometheus text exposition format so a local scraper or a
+ * plain curl of the HTTP server's /metrics endpoint can read them.
+ */
+public final class BankingMetrics {
+
+    /**
+     * The name the metrics are registered under on the platform MBean server.
+     */
+    public static final String OBJECT_NAME = "com.banking:type=BankingMetrics";
+
+    public static final OperationMetrics OPEN_ACCOUNT = new OperationMetrics("open_account");
+    public static final OperationMetrics VIEW_ACCOUNT = new OperationMetrics("view_account");
+    public static final OperationMetrics UPDATE_ACCOUNT = new OperationMetrics("update_account");
+    public static final OperationMetrics CLOSE_ACCOUNT = new OperationMetrics("close_account");
+    public static final OperationMetrics DEPOSIT = new OperationMetrics("deposit");
+    public static final OperationMetrics WITHDRAWAL = new OperationMetrics("withdrawal");
+    public static final OperationMetrics TRANSFER = new OperationMetrics("transfer");
+    public static final OperationMetrics HISTORY = new OperationMetrics("history");
+
+    /**
+     * Time from asking the pool for a connection to receiving one.
+     */
+    public static final LatencyHistogram CONNECTION_ACQUIRE = new LatencyHistogram();
+
+    /**
+     * Time spent in Statement.execute, executeQuery, executeUpdate and executeBatch.
+     */
+    public static final LatencyHistogram SQL_EXECUTE = new LatencyHistogram();
+
+    /**
+     * Time spent in Connection.commit.
+     */
+    public static final LatencyHistogram COMMIT = new LatencyHistogram();
+
+    private static final List<OperationMetrics> OPERATIONS = Collections.unmodifiableList(Arrays.asList(
+            OPEN_ACCOUNT, VIEW_ACCOUNT, UPDATE_ACCOUNT, CLOSE_ACCOUNT, DEPOSIT, WITHDRAWAL, TRANSFER, HISTORY));
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private BankingMetrics() {
+    }
+
+    /**
+     * Gets the metrics of every operation, in a fixed order.
+     *
+     * @return the operation metrics
+     */
+    public static List<OperationMetrics> operations() {
+        return OPERATIONS;
+    }
+
+    /**
+     * Registers the metrics on the platform MBean server. Calling this more than once is harmless.
+     */
+    public static void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new MXBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Clears all counters and histograms, e.g. after a warm-up run.
+     */
+    public static void reset() {
+        for (OperationMetrics operation : OPERATIONS) {
+            operation.reset();
+        }
+        CONNECTION_ACQUIRE.reset();
+        SQL_EXECUTE.reset();
+        COMMIT.reset();
+    }
+
+    /**
+     * Renders every metric as plain text, one sample per line. Latencies are
+     * summaries in seconds with 50th, 90th, 99th and 99.9th percentiles.
+     *
+     * @return the metrics dump
+     */
+    public static String dump() {
+        StringBuilder out = new StringBuilder(8192);
+        out.append("# TYPE banking_operation_seconds summary\n");
+        for (OperationMetrics operation : OPERATIONS) {
+            summary(out, "banking_operation_seconds", "operation=\"" + operation.getName() + "\"",
+                    operation.getLatency());
+        }
+        out.append("# TYPE banking_operation_total counter\n");
+        for (OperationMetrics operation : OPERATIONS) {
+            String label = "banking_operation_total{operation=\"" + operation.getName() + "\",outcome=\"";
+            out.append(label).append("success\"} ").append(operation.getSuccessCount()).append('\n');
+            out.append(label).append("rejected\"} ").append(operation.getRejectedCount()).append('\n');
+            out.append(label).append("failure\"} ").append(operation.getFailureCount()).append('\n');
+        }
+        out.append("# TYPE banking_operation_retries_total counter\n");
+        for (OperationMetrics operation : OPERATIONS) {
+            out.append("banking_operation_retries_total{operation=\"").append(operation.getName()).append("\"} ")
+                    .append(operation.getRetryCount()).append('\n');
+        }
+        out.append("# TYPE banking_connection_acquire_seconds summary\n");
+        summary(out, "banking_connection_acquire_seconds", null, CONNECTION_ACQUIRE);
+        out.append("# TYPE banking_sql_execute_seconds summary\n");
+        summary(out, "banking_sql_execute_seconds", null, SQL_EXECUTE);
+        out.append("# TYPE banking_sql_commit_seconds summary\n");
+        summary(out, "banking_sql_commit_seconds", null, COMMIT);
+        return out.toString();
+    }
+
+    private static void summary(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels == null ? "" : labels + ",";
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{").append(prefix).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.getValueAtPercentile(quantile * 100))).append('\n');
+        }
+        String suffix = labels == null ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(seconds(histogram.getTotalNanos())).append('\n');
+        out.append(name).append("_count").append(suffix).append(histogram.getCount()).append('\n');
+        out.append(name).append("_max").append(suffix).append(seconds(histogram.getMaxNanos())).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * The registered MBean; every call reads the static registry.
+     */
+    private static final class MXBean implements BankingMetricsMXBean {
+
+        @Override
+        public List<OperationStats> getOperations() {
+            List<OperationStats> stats = new ArrayList<>(OPERATIONS.size());
+            for (OperationMetrics operation : OPERATIONS) {
+                stats.add(new OperationStats(operation));
+            }
+            return stats;
+        }
+
+        @Override
+        public LatencyStats getConnectionAcquire() {
+            return new LatencyStats(CONNECTION_ACQUIRE);
+        }
+
+        @Override
+        public LatencyStats getSqlExecute() {
+            return new LatencyStats(SQL_EXECUTE);
+        }
+
+        @Override
+        public LatencyStats getCommit() {
+            return new LatencyStats(COMMIT);
+        }
+
+        @Override
+        public String dump() {
+            return BankingMetrics.dump();
+        }
+
+        @Override
+        public void reset() {
+            BankingMetrics.reset();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.banking;
+
+import java.util.List;
+
+/**
+ * The JMX view of {@link BankingMetrics}, registered as "com.banking:type=BankingMetrics".
+ * Every attribute is a point-in-time copy, so jconsole, VisualVM or any JMX client
+ * can read it without a dependency on this application's classes.
+ */
+public interface BankingMetricsMXBean {
+
+    /**
+     * Gets the counters and latencies of every banking operation.
+     *
+     * @return one entry per operation
+     */
+    List<OperationStats> getOperations();
+
+    /**
+     * Gets the time callers waited to borrow a pooled connection.
+     *
+     * @return the connection acquire latency
+     */
+    LatencyStats getConnectionAcquire();
+
+    /**
+     * Gets the time spent in statement execute calls, i.e. in the database round trip.
+     *
+     * @return the SQL execute latency
+     */
+    LatencyStats getSqlExecute();
+
+    /**
+     * Gets the time spent in connection commit calls.
+     *
+     * @return the commit latency
+     */
+    LatencyStats getCommit();
+
+    /**
+     * Renders all metrics in the plain-text dump format.
+     *
+     * @return the metrics dump
+     */
+    String dump();
+
+    /**
+     * Clears all counters and histograms.
+     */
+    void reset();
+
+    /**
+     * A copy of one latency histogram's summary, in microseconds.
+     */
+    final class LatencyStats {
+
+        private final long count;
+        private final double meanMicros;
+        private final double p50Micros;
+        private final double p99Micros;
+        private final double p999Micros;
+        private final double maxMicros;
+
+        LatencyStats(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.meanMicros = histogram.getMeanNanos() / 1e3;
+            this.p50Micros = histogram.getValueAtPercentile(50) / 1e3;
+            this.p99Micros = histogram.getValueAtPercentile(99) / 1e3;
+            this.p999Micros = histogram.getValueAtPercentile(99.9) / 1e3;
+            this.maxMicros = histogram.getMaxNanos() / 1e3;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanMicros() {
+            return meanMicros;
+        }
+
+        public double getP50Micros() {
+            return p50Micros;
+        }
+
+        public double getP99Micros() {
+            return p99Micros;
+        }
+
+        public double getP999Micros() {
+            return p999Micros;
+        }
+
+        public double getMaxMicros() {
+            return maxMicros;
+        }
+    }
+
+    /**
+     * A copy of one operation's counters and latency.
+     */
+    final class OperationStats {
+
+        private final String name;
+        private final long successCount;
+        private final long rejectedCount;
+        private final long failureCount;
+        private final long retryCount;
+        private final LatencyStats latency;
+
+        OperationStats(OperationMetrics metrics) {
+            this.name = metrics.getName();
+            this.successCount = metrics.getSuccessCount();
+            this.rejectedCount = metrics.getRejectedCount();
+            this.failureCount = metrics.getFailureCount();
+            this.retryCount = metrics.getRetryCount();
+            this.latency = new LatencyStats(metrics.getLatency());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSuccessCount() {
+            return successCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        public long getFailureCount() {
+            return failureCount;
+        }
+
+        public long getRetryCount() {
+            return retryCount;
+        }
+
+        public LatencyStats getLatency() {
+            return latency;
+        }
+    }
+}
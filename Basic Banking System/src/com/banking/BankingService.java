@@ -0,0 +1,347 @@
+package com.banking;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BankingService is a non-blocking front end to AccountManagement and a Ledger.
+ * Every method returns at once with a CompletableFuture holding a typed outcome;
+ * the blocking JDBC work runs on a separate executor.
+ *
+ * On a runtime with virtual threads each call gets its own virtual thread, so the
+ * number of calls in flight is limited only by memory. Since at most one call per
+ * pooled connection can make progress anyway, a semaphore sized to the connection
+ * pool admits that many calls to the database at a time and parks the rest
+ * cheaply. On older runtimes a fixed pool of platform threads of the same size is
+ * used instead.
+ *
+ * With a {@link JournalLedger}, accounts are opened and read in the journal, which
+ * keeps balances only. Updating and closing accounts and reading their history need
+ * the database, so those calls fail with an UnsupportedOperationException instead.
+ */
+public class BankingService implements AutoCloseable {
+
+    private final AccountManagement accountManagement;
+    private final Ledger ledger;
+    // Set when the ledger is the database-free journal
+    private final JournalLedger journal;
+    private final TransactionManagement transactionManagement;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final boolean virtualThreads;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Creates a service over the database, bounded by the combined size of the shards' connection pools.
+     */
+    public BankingService() {
+        this(new AccountManagement(), new TransactionManagement(),
+                DatabaseConnection.getShardMap().getMaxConnections());
+    }
+
+    /**
+     * Creates a service that posts straight to the database.
+     *
+     * @param accountManagement the account operations
+     * @param transactionManagement the transaction operations
+     * @param concurrency the number of calls allowed to run against the database at once
+     */
+    public BankingService(AccountManagement accountManagement, TransactionManagement transactionManagement,
+                          int concurrency) {
+        this(accountManagement, transactionManagement, transactionManagement, concurrency);
+    }
+
+    /**
+     * Creates a service.
+     *
+     * @param accountManagement the account operations
+     * @param transactionManagement the transaction history source
+     * @param ledger the ledger deposits, withdrawals and transfers are posted to
+     * @param concurrency the number of calls allowed to run against the database at once
+     */
+    public BankingService(AccountManagement accountManagement, TransactionManagement transactionManagement,
+                          Ledger ledger, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+        this.accountManagement = accountManagement;
+        this.transactionManagement = transactionManagement;
+        this.ledger = ledger;
+        this.journal = ledger instanceof JournalLedger ? (JournalLedger) ledger : null;
+        this.permits = new Semaphore(concurrency);
+        ExecutorService perTask = newVirtualThreadPerTaskExecutor();
+        this.virtualThreads = perTask != null;
+        this.executor = perTask != null ? perTask : Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "banking-service");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor reflectively, so the class still
+     * compiles and runs on runtimes without virtual threads.
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds a new account.
+     *
+     * @param customerId the ID of the customer who owns the account
+     * @param accountType the type of the account (e.g., Savings, Checking)
+     * @param initialBalance the initial balance of the account
+     * @return the outcome, carrying the generated account ID on success
+     */
+    public CompletableFuture<AccountResult> addAccount(int customerId, String accountType, Money initialBalance) {
+        if (journal != null) {
+            // The journal keeps balances only; customer and type stay unrecorded
+            return submit(() -> {
+                PostingResult opened = journal.openAccount(initialBalance);
+                return opened.isSuccess()
+                        ? new AccountResult(AccountResult.Status.SUCCESS, opened.getAccountId(),
+                                "Account successfully added with ID: " + opened.getAccountId())
+                        : new AccountResult(AccountResult.Status.FAILED, 0, opened.getMessage());
+            });
+        }
+        return submit(() -> accountManagement.createAccount(customerId, accountType, initialBalance));
+    }
+
+    /**
+     * Gets a specific account.
+     *
+     * @param accountId the ID of the account to get
+     * @return the account, or null if no account has that ID; completes exceptionally
+     *         with the SQLException if the lookup fails
+     */
+    public CompletableFuture<Account> getAccount(int accountId) {
+        if (journal != null) {
+            return submit(() -> {
+                long cents = journal.getBalanceCents(accountId);
+                if (cents < 0) {
+                    return null;
+                }
+                Account account = new Account();
+                account.setAccountId(accountId);
+                account.setBalance(Money.ofMinor(cents));
+                return account;
+            });
+        }
+        return submit(() -> accountManagement.getAccount(accountId));
+    }
+
+    /**
+     * Updates the details of an existing account.
+     *
+     * @param accountId the ID of the account to update
+     * @param newAccountType the new type of the account (e.g., Savings, Checking)
+     * @param newBalance the new balance of the account
+     * @return the outcome; fails with UnsupportedOperationException with a journal ledger
+     */
+    public CompletableFuture<AccountResult> updateAccount(int accountId, String newAccountType, Money newBalance) {
+        if (journal != null) {
+            return notInJournal("Updating accounts");
+        }
+        return submit(() -> accountManagement.modifyAccount(accountId, newAccountType, newBalance));
+    }
+
+    /**
+     * Closes an account, deleting its transactions.
+     *
+     * @param accountId the ID of the account to close
+     * @return the outcome; fails with UnsupportedOperationException with a journal ledger
+     */
+    public CompletableFuture<AccountResult> closeAccount(int accountId) {
+        if (journal != null) {
+            return notInJournal("Closing accounts");
+        }
+        return submit(() -> accountManagement.removeAccount(accountId));
+    }
+
+    /**
+     * Deposits an amount into an account.
+     *
+     * @param accountId the ID of the account
+     * @param amount the amount to deposit
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> deposit(int accountId, Money amount) {
+        return deposit(accountId, amount, null);
+    }
+
+    /**
+     * Deposits an amount into an account at most once per idempotency key; a retried request gets the
+     * first request's result.
+     *
+     * @param accountId the ID of the account
+     * @param amount the amount to deposit
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> deposit(int accountId, Money amount, String idempotencyKey) {
+        IdempotencyIndex.validate(idempotencyKey);
+        return submit(() -> ledger.postDeposit(accountId, amount, idempotencyKey));
+    }
+
+    /**
+     * Withdraws an amount from an account.
+     *
+     * @param accountId the ID of the account
+     * @param amount the amount to withdraw
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> withdraw(int accountId, Money amount) {
+        return withdraw(accountId, amount, null);
+    }
+
+    /**
+     * Withdraws an amount from an account at most once per idempotency key; a retried request gets the
+     * first request's result.
+     *
+     * @param accountId the ID of the account
+     * @param amount the amount to withdraw
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> withdraw(int accountId, Money amount, String idempotencyKey) {
+        IdempotencyIndex.validate(idempotencyKey);
+        return submit(() -> ledger.postWithdrawal(accountId, amount, idempotencyKey));
+    }
+
+    /**
+     * Transfers an amount between two accounts.
+     *
+     * @param fromAccountId the ID of the account to transfer from
+     * @param toAccountId the ID of the account to transfer to
+     * @param amount the amount to transfer
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> transferFunds(int fromAccountId, int toAccountId, Money amount) {
+        return transferFunds(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * Transfers an amount between two accounts at most once per idempotency key; a retried request gets the
+     * first request's result.
+     *
+     * @param fromAccountId the ID of the account to transfer from
+     * @param toAccountId the ID of the account to transfer to
+     * @param amount the amount to transfer
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome
+     */
+    public CompletableFuture<PostingResult> transferFunds(int fromAccountId, int toAccountId, Money amount, String idempotencyKey) {
+        IdempotencyIndex.validate(idempotencyKey);
+        return submit(() -> ledger.postTransfer(fromAccountId, toAccountId, amount, idempotencyKey));
+    }
+
+    /**
+     * Reads one page of an account's transaction history. The whole page is held in
+     * memory, so queries should set a limit.
+     *
+     * @param query the account, filters and page position
+     * @return the transactions, newest first; fails with UnsupportedOperationException
+     *         with a journal ledger
+     */
+    public CompletableFuture<List<Transaction>> getTransactionHistory(HistoryQuery query) {
+        if (journal != null) {
+            return notInJournal("Transaction history");
+        }
+        return submit(() -> {
+            try (Stream<Transaction> history = transactionManagement.streamTransactionHistory(query)) {
+                return history.collect(Collectors.toList());
+            }
+        });
+    }
+
+    private static <T> CompletableFuture<T> notInJournal(String operation) {
+        return CompletableFuture.failedFuture(
+                new UnsupportedOperationException(operation + " is not available with the journal ledger."));
+    }
+
+    /**
+     * A blocking call run on the executor.
+     */
+    private interface Call<T> {
+        T call() throws SQLException;
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        inFlight.incrementAndGet();
+        CompletableFuture<T> result = CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+        return result.whenComplete((value, error) -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * Tells whether calls run on virtual threads.
+     *
+     * @return true if virtual threads are in use, false if a fixed thread pool is
+     */
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Gets the number of calls submitted but not yet completed.
+     *
+     * @return the in-flight count
+     */
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the number of calls waiting for a turn at the database.
+     *
+     * @return the queue length
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Stops accepting calls and waits for the ones in flight to finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,6 +1,18 @@
 package com.banking;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * The main class for the Banking System application.
@@ -9,12 +21,66 @@ import java.util.Scanner;
 public class BankingSystem {
 
     public static void main(String[] args) {
+        // Operation latencies and counters can be read with jconsole under com.banking
+        BankingMetrics.registerMBean();
+
+        // "serve [port]" runs the HTTP API instead of the interactive menu
+        if (args.length > 0 && "serve".equals(args[0])) {
+            serve(args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("banking.http.port", 8080));
+            return;
+        }
+        // "import <file>" bulk-loads accounts from CSV; "export accounts|transactions <file>" writes them out
+        if (args.length == 2 && "import".equals(args[0])) {
+            importAccounts(Paths.get(args[1]));
+            return;
+        }
+        if (args.length == 3 && "export".equals(args[0])) {
+            export(args[1], Paths.get(args[2]));
+            return;
+        }
+        // "close <file>" closes every account whose ID is listed in the file, one per line
+        if (args.length == 2 && "close".equals(args[0])) {
+            closeAccounts(Paths.get(args[1]));
+            return;
+        }
+        // "eod [yyyy-mm-dd]" accrues a day's interest on every account; today by default
+        if (args.length >= 1 && args.length <= 2 && "eod".equals(args[0])) {
+            endOfDay(args.length == 2 ? LocalDate.parse(args[1]) : LocalDate.now());
+            return;
+        }
+        // "reconcile" checks the ledger rows added since the last run
+        if (args.length == 1 && "reconcile".equals(args[0])) {
+            reconcile();
+            return;
+        }
+
         // Create a Scanner object for user input
         Scanner scanner = new Scanner(System.in);
 
         // Create instances of AccountManagement and TransactionManagement
         AccountManagement accountManagement = new AccountManagement();
-        TransactionManagement transactionManagement = new TransactionManagement();
+        TransactionLogWriter logWriter = createLogWriter();
+        TransactionManagement transactionManagement = createTransactionManagement(logWriter);
+
+        // Postings go straight to the database unless another ledger is selected
+        // with -Dbanking.ledger=memory or -Dbanking.ledger=journal
+        Ledger ledger = createLedger(transactionManagement);
+        if (ledger == null) {
+            scanner.close();
+            closeLogWriter(logWriter);
+            return;
+        }
+
+        // The journal runs without MySQL, so there is nothing to recover or count there
+        boolean journal = ledger instanceof JournalLedger;
+        if (!journal) {
+            // Finish any cross-shard transfer left half done by an earlier run
+            int recovered = transactionManagement.getTransferEngine().recoverPendingTransfers();
+            if (recovered > 0) {
+                System.out.println("Finished " + recovered + " pending cross-shard transfers.");
+            }
+            rebuildVelocityLimits(transactionManagement.getVelocityLimiter());
+        }
 
         // Infinite loop to keep the menu running until the user chooses to exit
         while (true) {
@@ -44,28 +110,49 @@ public class BankingSystem {
                     System.out.println("Enter Account Type (Savings/Checking):");
                     String accountType = scanner.nextLine();
                     System.out.println("Enter Initial Balance:");
-                    double balance = scanner.nextDouble();
-                    accountManagement.addAccount(customerId, accountType, balance);
+                    Money balance = Money.of(scanner.nextBigDecimal());
+                    if (journal) {
+                        // The journal keeps balances only; customer and type stay unrecorded
+                        PostingResult opened = ((JournalLedger) ledger).openAccount(balance);
+                        System.out.println(opened.isSuccess()
+                                ? "Account successfully added with ID: " + opened.getAccountId() : opened.getMessage());
+                    } else {
+                        accountManagement.addAccount(customerId, accountType, balance);
+                    }
                     break;
                 case 2:
                     // View details of an existing account
                     System.out.println("Enter Account ID:");
                     int accountId = scanner.nextInt();
-                    accountManagement.viewAccountDetails(accountId);
+                    if (journal) {
+                        long cents = ((JournalLedger) ledger).getBalanceCents(accountId);
+                        System.out.println(cents < 0 ? "No account found with ID: " + accountId
+                                : "Account ID: " + accountId + "\nBalance: " + Money.ofMinor(cents).format());
+                    } else {
+                        accountManagement.viewAccountDetails(accountId);
+                    }
                     break;
                 case 3:
                     // Update details of an existing account
+                    if (journal) {
+                        printNotInJournal("Updating accounts");
+                        break;
+                    }
                     System.out.print("Enter Account ID: ");
                     accountId = scanner.nextInt();
                     scanner.nextLine(); // Consume newline
                     System.out.print("Enter New Account Type (Savings/Checking): ");
                     String newAccountType = scanner.nextLine();
                     System.out.print("Enter New Balance: ");
-                    double newBalance = scanner.nextDouble();
+                    Money newBalance = Money.of(scanner.nextBigDecimal());
                     accountManagement.updateAccount(accountId, newAccountType, newBalance);
                     break;
                 case 4:
                     // Close an existing account
+                    if (journal) {
+                        printNotInJournal("Closing accounts");
+                        break;
+                    }
                     System.out.print("Enter Account ID to Close: ");
                     accountId = scanner.nextInt();
                     accountManagement.closeAccount(accountId);
@@ -75,16 +162,16 @@ public class BankingSystem {
                     System.out.println("Enter Account ID:");
                     accountId = scanner.nextInt();
                     System.out.println("Enter Amount to Deposit:");
-                    double depositAmount = scanner.nextDouble();
-                    transactionManagement.deposit(accountId, depositAmount);
+                    Money depositAmount = Money.of(scanner.nextBigDecimal());
+                    printResult(ledger.postDeposit(accountId, depositAmount));
                     break;
                 case 6:
                     // Withdraw funds from an account
                     System.out.println("Enter Account ID:");
                     accountId = scanner.nextInt();
                     System.out.println("Enter Amount to Withdraw:");
-                    double withdrawalAmount = scanner.nextDouble();
-                    transactionManagement.withdraw(accountId, withdrawalAmount);
+                    Money withdrawalAmount = Money.of(scanner.nextBigDecimal());
+                    printResult(ledger.postWithdrawal(accountId, withdrawalAmount));
                     break;
                 case 7:
                     // Transfer funds between two accounts
@@ -93,11 +180,15 @@ public class BankingSystem {
                     System.out.print("Enter Destination Account ID: ");
                     int toAccountId = scanner.nextInt();
                     System.out.print("Enter Amount to Transfer: ");
-                    double transferAmount = scanner.nextDouble();
-                    transactionManagement.transferFunds(fromAccountId, toAccountId, transferAmount);
+                    Money transferAmount = Money.of(scanner.nextBigDecimal());
+                    printResult(ledger.postTransfer(fromAccountId, toAccountId, transferAmount));
                     break;
                 case 8:
                     // View transaction history for an account
+                    if (journal) {
+                        printNotInJournal("Transaction history");
+                        break;
+                    }
                     System.out.print("Enter Account ID to View Transaction History: ");
                     accountId = scanner.nextInt();
                     transactionManagement.viewTransactionHistory(accountId);
@@ -106,6 +197,8 @@ public class BankingSystem {
                     // Exit the application
                     System.out.println("Exiting...");
                     scanner.close(); // Close the scanner to free resources
+                    closeLedger(ledger); // Write out any postings still queued
+                    closeLogWriter(logWriter);
                     return; // Exit the loop and end the program
                 default:
                     // Handle invalid options
@@ -113,4 +206,277 @@ public class BankingSystem {
             }
         }
     }
+
+    /**
+     * Serves the menu operations over HTTP until the process is stopped.
+     *
+     * @param port the port to listen on
+     */
+    private static void serve(int port) {
+        TransactionLogWriter logWriter = createLogWriter();
+        TransactionManagement transactionManagement = createTransactionManagement(logWriter);
+        Ledger ledger = createLedger(transactionManagement);
+        if (ledger == null) {
+            closeLogWriter(logWriter);
+            return;
+        }
+        BankingService service;
+        if (ledger instanceof JournalLedger) {
+            // Accounts are opened and read in the journal; nothing here touches MySQL
+            service = new BankingService(new AccountManagement(), transactionManagement, ledger,
+                    Integer.getInteger("banking.http.concurrency", Runtime.getRuntime().availableProcessors()));
+        } else {
+            service = new BankingService(new AccountManagement(), transactionManagement, ledger,
+                    DatabaseConnection.getShardMap().getMaxConnections());
+            scheduleTransferRecovery(transactionManagement.getTransferEngine());
+            scheduleBucketCompaction();
+            rebuildVelocityLimits(transactionManagement.getVelocityLimiter());
+        }
+        BankingHttpServer server;
+        try {
+            server = new BankingHttpServer(port, service);
+        } catch (IOException e) {
+            System.err.println("Error starting HTTP server: " + e.getMessage());
+            service.close();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            service.close();
+            closeLedger(ledger); // Write out any postings still queued
+            closeLogWriter(logWriter);
+        }, "banking-shutdown"));
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getPort());
+    }
+
+    /**
+     * With more than one shard, periodically finishes the cross-shard transfers whose
+     * credit did not land, every "banking.saga.recoveryIntervalMillis" (10 seconds).
+     *
+     * @param transferEngine the engine that runs the transfers
+     */
+    private static void scheduleTransferRecovery(TransferEngine transferEngine) {
+        if (DatabaseConnection.getShardMap().getShardCount() < 2) {
+            return;
+        }
+        long interval = Long.getLong("banking.saga.recoveryIntervalMillis", 10_000);
+        ScheduledExecutorService recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "banking-saga-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recovery.scheduleWithFixedDelay(transferEngine::recoverPendingTransfers, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * With striped accounts configured, periodically merges their balance buckets,
+     * every "banking.striped.compactIntervalMillis" (1 second).
+     */
+    private static void scheduleBucketCompaction() {
+        if (StripedBalances.getAccounts().isEmpty()) {
+            return;
+        }
+        long interval = Long.getLong("banking.striped.compactIntervalMillis", 1_000);
+        ScheduledExecutorService compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "banking-bucket-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compaction.scheduleWithFixedDelay(StripedBalances::compactAll, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * With velocity limits configured, counts the debits of the last two days against
+     * them, so that restarting does not give every account a fresh allowance.
+     *
+     * @param velocityLimiter the limiter to rebuild
+     */
+    private static void rebuildVelocityLimits(VelocityLimiter velocityLimiter) {
+        if (!velocityLimiter.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        int counted = velocityLimiter.rebuild();
+        System.out.println("Counted " + counted + " recent debits against velocity limits in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+    }
+
+    /**
+     * Imports accounts from a CSV file and reports the outcome.
+     *
+     * @param file the CSV file
+     */
+    private static void importAccounts(Path file) {
+        try {
+            ImportResult result = new AccountImporter().importCsv(file);
+            System.out.println(result);
+            for (String reject : result.getRejects()) {
+                System.err.println(reject);
+            }
+        } catch (IOException e) {
+            System.err.println("Error importing accounts: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Exports the Account or Transaction table to a CSV file.
+     *
+     * @param table "accounts" or "transactions"
+     * @param file the CSV file
+     */
+    private static void export(String table, Path file) {
+        AccountExporter exporter = new AccountExporter();
+        long start = System.nanoTime();
+        try {
+            long rows;
+            if ("accounts".equals(table)) {
+                rows = exporter.exportAccounts(file);
+            } else if ("transactions".equals(table)) {
+                rows = exporter.exportTransactions(file);
+            } else {
+                System.err.println("Unknown table: " + table + " (expected accounts or transactions)");
+                return;
+            }
+            System.out.printf("Exported %d %s in %.2f s%n", rows, table, (System.nanoTime() - start) / 1e9);
+        } catch (IOException | SQLException e) {
+            System.err.println("Error exporting " + table + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes the accounts listed in a file, printing progress and throughput as it goes.
+     *
+     * @param file the file of account IDs, one per line
+     */
+    private static void closeAccounts(Path file) {
+        List<Integer> accountIds = new ArrayList<>();
+        try (Stream<String> lines = Files.lines(file)) {
+            lines.map(String::trim).filter(line -> !line.isEmpty())
+                    .forEach(line -> accountIds.add(Integer.parseInt(line)));
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading account IDs: " + e.getMessage());
+            return;
+        }
+        ClosureReport report = new AccountManagement().getAccountCloser().closeAll(accountIds,
+                progress -> System.out.println(progress.getAccountsClosed() + "/" + accountIds.size() + " closed, "
+                        + String.format("%.1f accounts/s, %.0f rows archived/s",
+                                progress.getAccountsPerSecond(), progress.getRowsPerSecond())));
+        System.out.println(report);
+    }
+
+    /**
+     * Runs the end-of-day interest accrual for a business date, resuming a run that stopped part way.
+     *
+     * @param businessDate the day the interest is for
+     */
+    private static void endOfDay(LocalDate businessDate) {
+        EndOfDayReport report = new EndOfDayProcessor().run(businessDate,
+                progress -> System.out.println(progress.getPartitionsProcessed() + " partitions, "
+                        + progress.getAccountsCredited() + " accounts credited, "
+                        + String.format("%.0f accounts/s", progress.getAccountsPerSecond())));
+        System.out.println(report);
+    }
+
+    /**
+     * Checks the Transaction rows added since the last reconciliation and reports any drift.
+     */
+    private static void reconcile() {
+        ReconciliationReport report = new LedgerReconciler().reconcile();
+        System.out.println(report);
+        for (LedgerBreak broken : report.getBreaks()) {
+            System.err.println(broken);
+        }
+    }
+
+    /**
+     * Creates the {@link TransactionLogWriter} that takes ledger rows off the posting
+     * threads when -Dbanking.log.writer=true is set, configured from the other
+     * "banking.log.*" properties.
+     *
+     * @return the writer, or null to write ledger rows in the posting transactions
+     */
+    private static TransactionLogWriter createLogWriter() {
+        return Boolean.getBoolean("banking.log.writer") ? new TransactionLogWriter() : null;
+    }
+
+    /**
+     * Creates the database ledger, writing its deposit, withdrawal and transfer rows
+     * through the log writer if there is one.
+     *
+     * @param logWriter the log writer, or null for none
+     * @return the transaction operations
+     */
+    private static TransactionManagement createTransactionManagement(TransactionLogWriter logWriter) {
+        if (logWriter == null) {
+            return new TransactionManagement();
+        }
+        return new TransactionManagement(new TransferEngine(5, 5, 200, logWriter), logWriter);
+    }
+
+    // Commits the ledger rows still queued; called after the ledger has stopped posting
+    private static void closeLogWriter(TransactionLogWriter logWriter) {
+        if (logWriter != null) {
+            logWriter.close();
+        }
+    }
+
+    /**
+     * Creates the ledger selected by the banking.ledger system property: "memory" for
+     * the {@link InMemoryLedger}, "journal" for the database-free {@link JournalLedger},
+     * or the database itself by default.
+     *
+     * @param transactionManagement the database ledger
+     * @return the ledger, or null if the journal could not be opened
+     */
+    private static Ledger createLedger(TransactionManagement transactionManagement) {
+        String mode = System.getProperty("banking.ledger", "database");
+        if ("memory".equalsIgnoreCase(mode)) {
+            return new InMemoryLedger();
+        }
+        if ("journal".equalsIgnoreCase(mode)) {
+            try {
+                JournalLedger journal = new JournalLedger();
+                System.out.println("Recovered to journal sequence " + journal.getSequence() + " in "
+                        + journal.getRecoveryNanos() / 1_000_000 + " ms (snapshot load "
+                        + journal.getSnapshotLoadNanos() / 1_000_000 + " ms, "
+                        + journal.getRecoveredRecords() + " records replayed).");
+                return journal;
+            } catch (IOException e) {
+                System.err.println("Error opening journal: " + e.getMessage());
+                return null;
+            }
+        }
+        return transactionManagement;
+    }
+
+    private static void closeLedger(Ledger ledger) {
+        if (ledger instanceof InMemoryLedger) {
+            ((InMemoryLedger) ledger).close();
+        } else if (ledger instanceof JournalLedger) {
+            ((JournalLedger) ledger).close();
+        }
+    }
+
+    /**
+     * Explains that a menu action needs the database, which journal mode runs without.
+     *
+     * @param operation the action, for the message
+     */
+    private static void printNotInJournal(String operation) {
+        System.err.println(operation + " is not available with the journal ledger.");
+    }
+
+    /**
+     * Prints the outcome of a deposit, withdrawal or transfer.
+     *
+     * @param result the posting result
+     */
+    private static void printResult(PostingResult result) {
+        if (result.getStatus() == PostingResult.Status.FAILED || result.getStatus() == PostingResult.Status.UNLOGGED) {
+            System.err.println(result.getMessage());
+        } else {
+            System.out.println(result.getMessage());
+        }
+    }
 }
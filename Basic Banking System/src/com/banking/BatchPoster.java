@@ -0,0 +1,454 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * BatchPoster applies large numbers of postings (payroll runs, settlement files)
+ * using JDBC batches on a single connection instead of one connection and two
+ * commits per posting. Postings are grouped into batches of {@code batchSize}
+ * and committed every {@code commitInterval} postings.
+ *
+ * Each posting gets its own {@link PostingResult}. Results are only reported once
+ * the posting's batch has been committed. If a batch fails as a whole, the
+ * uncommitted postings are rolled back and replayed one at a time, so a single
+ * bad posting cannot fail its neighbours.
+ *
+ * A batch runs on one connection, so with several shards it applies only to the
+ * shard of its first posting's account. Postings for accounts on other shards, and
+ * transfers between shards, are reported FAILED without being applied; callers split
+ * their input by {@link ShardMap#shardOf} first, and send cross-shard transfers
+ * through {@link TransferEngine}.
+ *
+ * All balance updates of a batch run before its ledger rows are inserted, so each
+ * row's running balance and sequence number are derived from the account's final
+ * values minus the postings that come after it in the batch. The updates run in
+ * input order, and a transfer only debits its source if the balance covers the
+ * amount at that point; otherwise it is reported INSUFFICIENT_FUNDS.
+ */
+public class BatchPoster {
+
+    // One leg of a posting: adds the signed amount, unless the leg is guarded and the
+    // balance would go negative. Every leg shares the statement, so the batch keeps input order
+    private static final String UPDATE_QUERY = "UPDATE Account SET balance = balance + ?,"
+            + " last_sequence = last_sequence + 1 WHERE account_id = ? AND (? OR balance + ? >= 0)";
+
+    private static final String EXISTS_QUERY = "SELECT 1 FROM Account WHERE account_id = ?";
+
+    // Undo a leg of a failed transfer, taking back the sequence number it used
+    private static final String UNDO_DEBIT_QUERY =
+            "UPDATE Account SET balance = balance + ?, last_sequence = last_sequence - 1 WHERE account_id = ?";
+    private static final String UNDO_CREDIT_QUERY =
+            "UPDATE Account SET balance = balance - ?, last_sequence = last_sequence - 1 WHERE account_id = ?";
+
+    // A ledger row of a batch: the account's final running balance and sequence, less
+    // the amounts and the number of the account's rows that follow it in the batch
+    private static final String LOG_QUERY =
+            "INSERT INTO Transaction (account_id, transaction_type, amount, balance_after, sequence_no)"
+            + " SELECT account_id, ?, ?, balance - ?, last_sequence - ? FROM Account WHERE account_id = ?";
+
+    private final int batchSize;
+    private final int commitInterval;
+
+    /**
+     * Creates a batch poster with a batch size of 500 and a commit every 5000 postings.
+     */
+    public BatchPoster() {
+        this(500, 5_000);
+    }
+
+    /**
+     * Creates a batch poster.
+     *
+     * @param batchSize the number of postings sent to the database in one JDBC batch
+     * @param commitInterval the number of postings applied between commits;
+     *        rounded up to a whole number of batches
+     */
+    public BatchPoster(int batchSize, int commitInterval) {
+        if (batchSize < 1 || commitInterval < 1) {
+            throw new IllegalArgumentException("batchSize and commitInterval must be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Applies a list of postings.
+     *
+     * @param postings the postings to apply
+     * @return one result per posting, in the same order as the input
+     */
+    public List<PostingResult> postAll(List<Posting> postings) {
+        List<PostingResult> results = new ArrayList<>(postings.size());
+        postAll(postings.iterator(), (posting, result) -> results.add(result));
+        return results;
+    }
+
+    /**
+     * Applies a stream of postings without holding the whole stream in memory.
+     *
+     * @param postings the postings to apply
+     * @param resultSink receives each posting with its result, in input order
+     */
+    public void postAll(Stream<Posting> postings, BiConsumer<Posting, PostingResult> resultSink) {
+        postAll(postings.iterator(), resultSink);
+    }
+
+    private void postAll(Iterator<Posting> postings, BiConsumer<Posting, PostingResult> resultSink) {
+        List<Posting> uncommitted = new ArrayList<>();
+        List<PostingResult> uncommittedResults = new ArrayList<>();
+        List<Posting> batch = new ArrayList<>(batchSize);
+        if (!postings.hasNext()) {
+            return;
+        }
+        Posting first = postings.next();
+        ShardMap shards = DatabaseConnection.getShardMap();
+        int shard = shards.shardOf(first.getAccountId());
+        postings = prepend(first, postings);
+
+        try (Connection connection = shards.getConnection(shard)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_QUERY);
+                 PreparedStatement undoDebit = connection.prepareStatement(UNDO_DEBIT_QUERY);
+                 PreparedStatement undoCredit = connection.prepareStatement(UNDO_CREDIT_QUERY);
+                 PreparedStatement log = connection.prepareStatement(LOG_QUERY);
+                 PreparedStatement exists = connection.prepareStatement(EXISTS_QUERY)) {
+                Statements statements = new Statements(shard, update, undoDebit, undoCredit, log, exists);
+
+                while (postings.hasNext()) {
+                    batch.add(postings.next());
+                    if (batch.size() == batchSize || !postings.hasNext()) {
+                        uncommitted.addAll(batch);
+                        batch.clear();
+                        try {
+                            uncommittedResults.addAll(applyBatch(statements, uncommitted.subList(
+                                    uncommittedResults.size(), uncommitted.size())));
+                            if (uncommitted.size() < commitInterval && postings.hasNext()) {
+                                continue;
+                            }
+                            connection.commit();
+                            invalidate(uncommitted);
+                            emit(uncommitted, uncommittedResults, resultSink);
+                        } catch (SQLException e) {
+                            connection.rollback();
+                            replayOneByOne(connection, statements, uncommitted, resultSink);
+                        }
+                        uncommitted.clear();
+                        uncommittedResults.clear();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // The connection itself failed; nothing after the last commit was applied
+            uncommitted.addAll(batch);
+            while (postings.hasNext()) {
+                uncommitted.add(postings.next());
+            }
+            for (Posting posting : uncommitted) {
+                resultSink.accept(posting, failed(posting, "Error posting batch: " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Sends one batch of postings. Balance updates go first so that the ledger
+     * rows are only written for postings whose accounts were found.
+     */
+    private List<PostingResult> applyBatch(Statements statements, List<Posting> batch) throws SQLException {
+        // Index into the update batch of each posting's debit and credit, or -1 if the posting has no such leg
+        int[] debitIndex = new int[batch.size()];
+        int[] creditIndex = new int[batch.size()];
+        int legs = 0;
+        ShardMap shards = DatabaseConnection.getShardMap();
+        boolean[] foreign = new boolean[batch.size()];
+
+        for (int i = 0; i < batch.size(); i++) {
+            Posting posting = batch.get(i);
+            debitIndex[i] = -1;
+            creditIndex[i] = -1;
+            foreign[i] = shards.shardOf(posting.getAccountId()) != statements.shard
+                    || (posting.getType() == Posting.Type.TRANSFER
+                        && shards.shardOf(posting.getToAccountId()) != statements.shard);
+            if (foreign[i]) {
+                continue;
+            }
+            switch (posting.getType()) {
+                case DEPOSIT:
+                    addLeg(statements.update, posting.getAccountId(), posting.getAmount(), false);
+                    creditIndex[i] = legs++;
+                    break;
+                case WITHDRAWAL:
+                    addLeg(statements.update, posting.getAccountId(), posting.getAmount().negate(), false);
+                    debitIndex[i] = legs++;
+                    break;
+                case TRANSFER:
+                    addLeg(statements.update, posting.getAccountId(), posting.getAmount().negate(), true);
+                    debitIndex[i] = legs++;
+                    addLeg(statements.update, posting.getToAccountId(), posting.getAmount(), false);
+                    creditIndex[i] = legs++;
+                    break;
+            }
+        }
+        int[] counts = legs > 0 ? statements.update.executeBatch() : new int[0];
+
+        List<PostingResult> results = new ArrayList<>(batch.size());
+        boolean compensate = false;
+        List<LogRow> logRows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Posting posting = batch.get(i);
+            if (foreign[i]) {
+                results.add(failed(posting, "Posting skipped. Its accounts are not all on shard " + statements.shard
+                        + "; split batches by shard and send cross-shard transfers through TransferEngine."));
+                continue;
+            }
+            boolean debited = debitIndex[i] >= 0 && applied(counts[debitIndex[i]]);
+            boolean credited = creditIndex[i] >= 0 && applied(counts[creditIndex[i]]);
+            if (posting.getType() == Posting.Type.TRANSFER && !debited && credited && batch.size() > 1) {
+                // Later debits of the batch may have counted on that credit; the replay runs each posting alone
+                throw new SQLException("Transfer from Account ID " + posting.getAccountId()
+                        + " debited nothing but credited its destination");
+            }
+
+            switch (posting.getType()) {
+                case DEPOSIT:
+                    results.add(credited ? success(posting, "Deposit successful.")
+                            : notFound(posting, "Deposit failed. Account ID may not exist."));
+                    if (credited) {
+                        logRows.add(new LogRow(posting.getAccountId(), TransactionType.DEPOSIT,
+                                posting.getAmount(), false));
+                    }
+                    break;
+                case WITHDRAWAL:
+                    results.add(debited ? success(posting, "Withdrawal successful.")
+                            : notFound(posting, "Withdrawal failed. Account ID may not exist."));
+                    if (debited) {
+                        logRows.add(new LogRow(posting.getAccountId(), TransactionType.WITHDRAWAL,
+                                posting.getAmount(), true));
+                    }
+                    break;
+                case TRANSFER:
+                    if (debited && credited) {
+                        results.add(success(posting, "Transfer successful."));
+                        logRows.add(new LogRow(posting.getAccountId(), TransactionType.TRANSFER_OUT,
+                                posting.getAmount(), true));
+                        logRows.add(new LogRow(posting.getToAccountId(), TransactionType.TRANSFER_IN,
+                                posting.getAmount(), false));
+                    } else if (!debited && exists(statements.exists, posting.getAccountId())) {
+                        results.add(new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, posting.getAccountId(),
+                                posting.getAmount(),
+                                "Transfer failed. Insufficient funds in Account ID: " + posting.getAccountId()));
+                    } else {
+                        results.add(notFound(posting, debited
+                                ? "Transfer failed. Destination Account ID may not exist."
+                                : "Transfer failed. Source Account ID may not exist."));
+                    }
+                    if (!debited || !credited) {
+                        // Undo whichever leg did apply
+                        if (debited) {
+                            addUpdate(statements.undoDebit, posting.getAccountId(), posting.getAmount());
+                            compensate = true;
+                        }
+                        if (credited) {
+                            addUpdate(statements.undoCredit, posting.getToAccountId(), posting.getAmount());
+                            compensate = true;
+                        }
+                    }
+                    break;
+            }
+        }
+        if (compensate) {
+            statements.undoDebit.executeBatch();
+            statements.undoCredit.executeBatch();
+        }
+        if (!logRows.isEmpty()) {
+            addLogs(statements.log, logRows);
+            statements.log.executeBatch();
+        }
+        return results;
+    }
+
+    /**
+     * Adds the ledger rows of a batch whose balance updates have all been applied.
+     * Walking the rows backwards, each account's later amounts and row count are the
+     * offsets from its final balance and sequence.
+     */
+    private static void addLogs(PreparedStatement statement, List<LogRow> rows) throws SQLException {
+        Map<Integer, Money> laterChange = new HashMap<>();
+        Map<Integer, Integer> laterRows = new HashMap<>();
+        Money[] changeAfter = new Money[rows.size()];
+        int[] rowsAfter = new int[rows.size()];
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            LogRow row = rows.get(i);
+            changeAfter[i] = laterChange.getOrDefault(row.accountId, Money.ZERO);
+            rowsAfter[i] = laterRows.getOrDefault(row.accountId, 0);
+            laterChange.put(row.accountId,
+                    row.debit ? changeAfter[i].minus(row.amount) : changeAfter[i].plus(row.amount));
+            laterRows.put(row.accountId, rowsAfter[i] + 1);
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            LogRow row = rows.get(i);
+            statement.setByte(1, row.transactionType.getCode());
+            Money.bind(statement, 2, row.amount);
+            Money.bind(statement, 3, changeAfter[i]);
+            statement.setInt(4, rowsAfter[i]);
+            statement.setInt(5, row.accountId);
+            statement.addBatch();
+        }
+    }
+
+    /**
+     * Re-applies postings one at a time after their batch failed, committing each
+     * on its own so that only the postings that really fail are reported as failed.
+     */
+    private void replayOneByOne(Connection connection, Statements statements, List<Posting> postings,
+                                BiConsumer<Posting, PostingResult> resultSink) throws SQLException {
+        statements.clearBatches();
+        for (Posting posting : postings) {
+            PostingResult result;
+            try {
+                result = applyBatch(statements, List.of(posting)).get(0);
+                connection.commit();
+                invalidate(List.of(posting));
+            } catch (SQLException e) {
+                connection.rollback();
+                statements.clearBatches();
+                result = failed(posting, "Error posting " + posting.getType().name().toLowerCase()
+                        + ": " + e.getMessage());
+            }
+            resultSink.accept(posting, result);
+        }
+    }
+
+    private static <T> Iterator<T> prepend(T first, Iterator<T> rest) {
+        return new Iterator<T>() {
+            private boolean firstTaken;
+
+            @Override
+            public boolean hasNext() {
+                return !firstTaken || rest.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!firstTaken) {
+                    firstTaken = true;
+                    return first;
+                }
+                return rest.next();
+            }
+        };
+    }
+
+    private static void invalidate(List<Posting> postings) {
+        for (Posting posting : postings) {
+            AccountCache.invalidate(posting.getAccountId());
+            if (posting.getType() == Posting.Type.TRANSFER) {
+                AccountCache.invalidate(posting.getToAccountId());
+            }
+        }
+    }
+
+    private void emit(List<Posting> postings, List<PostingResult> results,
+                      BiConsumer<Posting, PostingResult> resultSink) {
+        for (int i = 0; i < postings.size(); i++) {
+            resultSink.accept(postings.get(i), results.get(i));
+        }
+    }
+
+    private static void addUpdate(PreparedStatement statement, int accountId, Money amount) throws SQLException {
+        Money.bind(statement, 1, amount);
+        statement.setInt(2, accountId);
+        statement.addBatch();
+    }
+
+    private static void addLeg(PreparedStatement statement, int accountId, Money change, boolean guarded)
+            throws SQLException {
+        Money.bind(statement, 1, change);
+        statement.setInt(2, accountId);
+        statement.setBoolean(3, !guarded);
+        Money.bind(statement, 4, change);
+        statement.addBatch();
+    }
+
+    private static boolean exists(PreparedStatement statement, int accountId) throws SQLException {
+        statement.setInt(1, accountId);
+        try (ResultSet rs = statement.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    // Drivers that rewrite batches may report SUCCESS_NO_INFO instead of a row count
+    private static boolean applied(int updateCount) {
+        return updateCount > 0 || updateCount == Statement.SUCCESS_NO_INFO;
+    }
+
+    private static PostingResult success(Posting posting, String message) {
+        return new PostingResult(PostingResult.Status.SUCCESS, posting.getAccountId(), posting.getAmount(), message);
+    }
+
+    private static PostingResult notFound(Posting posting, String message) {
+        return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, posting.getAccountId(), posting.getAmount(), message);
+    }
+
+    private static PostingResult failed(Posting posting, String message) {
+        return new PostingResult(PostingResult.Status.FAILED, posting.getAccountId(), posting.getAmount(), message);
+    }
+
+    /**
+     * A ledger row waiting for the balance updates of its batch.
+     */
+    private static final class LogRow {
+
+        private final int accountId;
+        private final TransactionType transactionType;
+        private final Money amount;
+        private final boolean debit;
+
+        private LogRow(int accountId, TransactionType transactionType, Money amount, boolean debit) {
+            this.accountId = accountId;
+            this.transactionType = transactionType;
+            this.amount = amount;
+            this.debit = debit;
+        }
+    }
+
+    /**
+     * The statements every batch is built from, and the shard they run on.
+     */
+    private static final class Statements {
+
+        private final int shard;
+        private final PreparedStatement update;
+        private final PreparedStatement undoDebit;
+        private final PreparedStatement undoCredit;
+        private final PreparedStatement log;
+        private final PreparedStatement exists;
+
+        private Statements(int shard, PreparedStatement update, PreparedStatement undoDebit,
+                           PreparedStatement undoCredit, PreparedStatement log, PreparedStatement exists) {
+            this.shard = shard;
+            this.update = update;
+            this.undoDebit = undoDebit;
+            this.undoCredit = undoCredit;
+            this.log = log;
+            this.exists = exists;
+        }
+
+        private void clearBatches() throws SQLException {
+            update.clearBatch();
+            undoDebit.clearBatch();
+            undoCredit.clearBatch();
+            log.clearBatch();
+        }
+    }
+}
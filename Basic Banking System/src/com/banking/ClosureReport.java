@@ -0,0 +1,105 @@
+package com.banking;
+
+/**
+ * ClosureReport is a point-in-time summary of a mass closure run by
+ * {@link AccountCloser#closeAll}: how many accounts have been closed so far, how
+ * much history was archived, and the rates achieved.
+ */
+public class ClosureReport {
+
+    private final long accountsClosed;
+    private final long accountsNotFound;
+    private final long accountsFailed;
+    private final long rowsArchived;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a closure report.
+     *
+     * @param accountsClosed the number of accounts closed
+     * @param accountsNotFound the number of account IDs that did not exist
+     * @param accountsFailed the number of accounts that could not be closed
+     * @param rowsArchived the number of Transaction rows moved to the archive
+     * @param elapsedNanos the wall-clock time since the run started
+     */
+    public ClosureReport(long accountsClosed, long accountsNotFound, long accountsFailed, long rowsArchived,
+                         long elapsedNanos) {
+        this.accountsClosed = accountsClosed;
+        this.accountsNotFound = accountsNotFound;
+        this.accountsFailed = accountsFailed;
+        this.rowsArchived = rowsArchived;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of accounts closed.
+     *
+     * @return the closed count
+     */
+    public long getAccountsClosed() {
+        return accountsClosed;
+    }
+
+    /**
+     * Gets the number of account IDs that did not exist.
+     *
+     * @return the not found count
+     */
+    public long getAccountsNotFound() {
+        return accountsNotFound;
+    }
+
+    /**
+     * Gets the number of accounts that could not be closed because of a database error.
+     *
+     * @return the failed count
+     */
+    public long getAccountsFailed() {
+        return accountsFailed;
+    }
+
+    /**
+     * Gets the number of Transaction rows moved to the archive.
+     *
+     * @return the archived row count
+     */
+    public long getRowsArchived() {
+        return rowsArchived;
+    }
+
+    /**
+     * Gets the wall-clock time since the run started.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the closure rate.
+     *
+     * @return accounts closed per second
+     */
+    public double getAccountsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : accountsClosed / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Gets the archiving rate.
+     *
+     * @return Transaction rows archived per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsArchived / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "ClosureReport [closed=" + accountsClosed + ", notFound=" + accountsNotFound
+                + ", failed=" + accountsFailed + ", rowsArchived=" + rowsArchived
+                + ", seconds=" + String.format("%.2f", elapsedNanos / 1e9)
+                + ", accountsPerSecond=" + String.format("%.1f", getAccountsPerSecond())
+                + ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "]";
+    }
+}
@@ -0,0 +1,540 @@
+package com.banking;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ConnectionPool keeps a bounded set of open JDBC connections and hands them out
+ * to callers so that each operation does not pay for a new TCP and login handshake.
+ * Borrowed connections are returned to the pool when the caller closes them.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final PoolConfig config;
+
+    // Idle connections, most recently returned first so that warm connections are reused
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+
+    // One permit per connection that may still be borrowed
+    private final Semaphore permits;
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    // Metrics
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final StatementCache.Stats statementCacheStats = new StatementCache.Stats();
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool for the given database.
+     *
+     * @param url the JDBC URL
+     * @param user the database user
+     * @param password the database password
+     * @param config the pool settings
+     */
+    public ConnectionPool(String url, String user, String password, PoolConfig config) {
+        if (config.getMinIdle() > config.getMaxSize()) {
+            throw new IllegalArgumentException("minIdle must not exceed maxSize");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "banking-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor.scheduleWithFixedDelay(this::maintain, 0,
+                config.getEvictionIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if none is idle and the
+     * pool is below its maximum size. Closing the returned connection gives it back.
+     *
+     * @return a pooled connection
+     * @throws SQLException if no connection becomes available within the acquire timeout
+     *         or a new connection cannot be opened
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("Timed out after " + config.getAcquireTimeoutMillis()
+                        + " ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeIdleOrCreate();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        activeConnections.incrementAndGet();
+        recordWait(System.nanoTime() - start);
+        return pooled.lease();
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getAcquireTimeoutMillis());
+        while (true) {
+            PooledConnection pooled = idle.pollFirst();
+            if (pooled == null) {
+                if (reserveSlot()) {
+                    return create();
+                }
+                // Every slot is held by a connection on its way back into the idle deque;
+                // wait briefly for it, or for a slot freed by a discarded connection
+                pooled = pollIdle(deadline);
+                if (pooled == null) {
+                    continue;
+                }
+            }
+            if (!config.isValidateOnBorrow() || isValid(pooled)) {
+                return pooled;
+            }
+            validationFailureCount.incrementAndGet();
+            discard(pooled);
+        }
+    }
+
+    private PooledConnection pollIdle(long deadline) throws SQLException {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Timed out after " + config.getAcquireTimeoutMillis()
+                    + " ms waiting for a database connection");
+        }
+        try {
+            return idle.pollFirst(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(10)), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+    }
+
+    /**
+     * Counts a new physical connection against maxSize before it is opened, so that
+     * borrowers and the evictor together never open more than maxSize connections.
+     *
+     * @return true if a slot was reserved; create() must then be called
+     */
+    private boolean reserveSlot() {
+        int total;
+        do {
+            total = totalConnections.get();
+            if (total >= config.getMaxSize()) {
+                return false;
+            }
+        } while (!totalConnections.compareAndSet(total, total + 1));
+        return true;
+    }
+
+    private boolean isValid(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(config.getValidationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection physical;
+        try {
+            physical = DriverManager.getConnection(url, user, password);
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            throw e;
+        }
+        createdCount.incrementAndGet();
+        return new PooledConnection(physical,
+                new StatementCache(physical, config.getStatementCacheSize(), statementCacheStats));
+    }
+
+    private void recordWait(long waitNanos) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        BankingMetrics.CONNECTION_ACQUIRE.record(waitNanos);
+    }
+
+    /**
+     * Returns a connection to the pool once its borrower has closed it. Connections
+     * left inside a transaction are rolled back so the next borrower starts clean.
+     */
+    private void release(PooledConnection pooled) {
+        activeConnections.decrementAndGet();
+        try {
+            if (closed || pooled.broken || !reset(pooled)) {
+                discard(pooled);
+            } else {
+                pooled.lastReturnedNanos = System.nanoTime();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(PooledConnection pooled) {
+        try {
+            Connection physical = pooled.physical;
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            physical.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing pooled connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs on the evictor thread: closes connections that have been idle for longer
+     * than the idle timeout (keeping at least minIdle) and tops the pool back up to minIdle.
+     */
+    private void maintain() {
+        if (closed) {
+            return;
+        }
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(config.getIdleTimeoutMillis());
+        Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+        while (oldestFirst.hasNext() && idle.size() > config.getMinIdle()) {
+            PooledConnection pooled = oldestFirst.next();
+            if (pooled.lastReturnedNanos - cutoff < 0 && idle.removeLastOccurrence(pooled)) {
+                evictedCount.incrementAndGet();
+                discard(pooled);
+            }
+        }
+
+        while (!closed && idle.size() < config.getMinIdle() && reserveSlot()) {
+            try {
+                PooledConnection pooled = create();
+                pooled.lastReturnedNanos = System.nanoTime();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                System.err.println("Error opening pooled connection: " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops the evictor. Connections that are still
+     * borrowed are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Gets the most connections the pool will ever open at once.
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxSize() {
+        return config.getMaxSize();
+    }
+
+    /**
+     * Gets the number of connections currently borrowed.
+     *
+     * @return the active connection count
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Gets the number of open connections waiting in the pool.
+     *
+     * @return the idle connection count
+     */
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    /**
+     * Gets the number of open physical connections, borrowed or idle.
+     *
+     * @return the total connection count
+     */
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    /**
+     * Gets the number of successful borrows.
+     *
+     * @return the acquire count
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * Gets the average time callers waited for a connection.
+     *
+     * @return the average wait in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        long count = acquireCount.get();
+        return count == 0 ? 0.0 : totalWaitNanos.get() / (count * 1_000_000.0);
+    }
+
+    /**
+     * Gets the longest time a caller waited for a connection.
+     *
+     * @return the maximum wait in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Gets the number of borrows that gave up after the acquire timeout.
+     *
+     * @return the timeout count
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Gets the number of physical connections opened since the pool started.
+     *
+     * @return the created count
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * Gets the number of idle connections closed by the evictor.
+     *
+     * @return the evicted count
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Gets the number of idle connections that failed validation on borrow.
+     *
+     * @return the validation failure count
+     */
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    /**
+     * Gets the hit, miss and eviction counters of the per-connection statement caches.
+     *
+     * @return the statement cache counters
+     */
+    public StatementCache.Stats getStatementCacheStats() {
+        return statementCacheStats;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool [active=" + getActiveConnections() + ", idle=" + getIdleConnections()
+                + ", total=" + getTotalConnections() + ", acquired=" + getAcquireCount()
+                + ", avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + ", maxWaitMs=" + String.format("%.3f", getMaxWaitMillis())
+                + ", timeouts=" + getTimeoutCount()
+                + ", stmtCacheHitRatio=" + String.format("%.3f", statementCacheStats.getHitRatio()) + "]";
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private final class PooledConnection {
+
+        private final Connection physical;
+        private final StatementCache statements;
+        private volatile long lastReturnedNanos;
+
+        // Set when the driver reports a connection-level failure; the connection is dropped on return
+        private volatile boolean broken;
+
+        private PooledConnection(Connection physical, StatementCache statements) {
+            this.physical = physical;
+            this.statements = statements;
+        }
+
+        private Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Lease(this));
+        }
+    }
+
+    /**
+     * The handle given to one borrower. Closing it returns the physical connection to
+     * the pool exactly once; any later use of the handle fails as if it were closed.
+     */
+    private final class Lease implements InvocationHandler {
+
+        private final PooledConnection pooled;
+        private boolean closed;
+
+        private Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                if (args != null && args.length == 1 && "prepareStatement".equals(method.getName())
+                        && config.getStatementCacheSize() > 0) {
+                    return pooled.statements.prepare((String) args[0], (Connection) proxy);
+                }
+                if ("commit".equals(method.getName())) {
+                    long start = System.nanoTime();
+                    pooled.physical.commit();
+                    BankingMetrics.COMMIT.record(System.nanoTime() - start);
+                    return null;
+                }
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement) {
+                    // Statements that bypass the statement cache are timed by a thin wrapper instead
+                    return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                            new Class<?>[] { method.getReturnType() }, new TimedStatement((Statement) result, proxy));
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw markIfBroken(e.getCause());
+            } catch (SQLException e) {
+                throw markIfBroken(e);
+            }
+        }
+
+        private Throwable markIfBroken(Throwable cause) {
+            if (cause instanceof SQLException && isConnectionFailure((SQLException) cause)) {
+                pooled.broken = true;
+            }
+            return cause;
+        }
+
+        private boolean isConnectionFailure(SQLException e) {
+            String state = e.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+
+    /**
+     * Wraps a statement that is not cached so that its execute calls are timed
+     * and getConnection() returns the borrower's handle, not the physical connection.
+     */
+    private static final class TimedStatement implements InvocationHandler {
+
+        private final Statement physical;
+        private final Object owner;
+
+        private TimedStatement(Statement physical, Object owner) {
+            this.physical = physical;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+            boolean timed = method.getName().startsWith("execute");
+            long start = timed ? System.nanoTime() : 0;
+            try {
+                return method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (timed) {
+                    BankingMetrics.SQL_EXECUTE.record(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
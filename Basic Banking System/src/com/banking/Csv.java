@@ -0,0 +1,258 @@
+package com.banking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Csv reads and writes UTF-8 comma-separated files through NIO channels with one
+ * fixed-size buffer each, so files of any size are handled in constant memory.
+ * Fields containing a comma, quote or line break are quoted, with quotes doubled,
+ * as in RFC 4180. Lines may end in LF or CRLF.
+ */
+final class Csv {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Csv() {
+    }
+
+    /**
+     * Reads one record at a time from a channel.
+     */
+    static final class Reader {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private byte[] field = new byte[256];
+        private long lineNumber;
+        private boolean endOfInput;
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        /**
+         * Gets the line number of the record last returned by {@link #next()},
+         * counting from 1. A quoted field with line breaks counts as one line.
+         *
+         * @return the line number
+         */
+        long getLineNumber() {
+            return lineNumber;
+        }
+
+        /**
+         * Reads the next record, skipping blank lines.
+         *
+         * @return the fields of the record, or null at the end of the input
+         * @throws IOException if the channel cannot be read, or a quoted field is not closed
+         */
+        List<String> next() throws IOException {
+            List<String> fields = new ArrayList<>(8);
+            while (true) {
+                int b = read();
+                if (b < 0) {
+                    return null;
+                }
+                lineNumber++;
+                if (b == '\n' || b == '\r' && peekNewLine()) {
+                    continue;
+                }
+                int length = 0;
+                boolean quoted = false;
+                while (true) {
+                    if (b == '"' && length == 0 && !quoted) {
+                        length = readQuoted();
+                        quoted = true;
+                    } else if (b == ',') {
+                        fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+                        length = 0;
+                        quoted = false;
+                    } else if (b < 0 || b == '\n' || b == '\r' && peekNewLine()) {
+                        fields.add(new String(field, 0, length, StandardCharsets.UTF_8));
+                        return fields;
+                    } else {
+                        length = append(length, b);
+                    }
+                    b = read();
+                }
+            }
+        }
+
+        // Reads a quoted field after its opening quote, up to and including the closing quote
+        private int readQuoted() throws IOException {
+            int length = 0;
+            while (true) {
+                int b = read();
+                if (b < 0) {
+                    throw new IOException("Unterminated quoted field on line " + lineNumber);
+                }
+                if (b == '"') {
+                    if (!peek('"')) {
+                        return length;
+                    }
+                    read();
+                }
+                length = append(length, b);
+            }
+        }
+
+        private int append(int length, int b) {
+            if (length == field.length) {
+                field = Arrays.copyOf(field, length * 2);
+            }
+            field[length] = (byte) b;
+            return length + 1;
+        }
+
+        // Consumes the LF of a CRLF pair; a lone CR is ordinary data
+        private boolean peekNewLine() throws IOException {
+            if (peek('\n')) {
+                read();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(int expected) throws IOException {
+            return fill() && buffer.get(buffer.position()) == expected;
+        }
+
+        private int read() throws IOException {
+            return fill() ? buffer.get() & 0xFF : -1;
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (endOfInput) {
+                return false;
+            }
+            buffer.clear();
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read == 0);
+            buffer.flip();
+            endOfInput = read < 0;
+            return buffer.hasRemaining();
+        }
+    }
+
+    /**
+     * Writes records to a channel. Call {@link #flush()} when done.
+     */
+    static final class Writer {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final StringBuilder row = new StringBuilder(256);
+        private boolean firstField = true;
+
+        Writer(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Adds a field to the current record, quoting it if necessary.
+         *
+         * @param value the field, or null for an empty field
+         * @return this writer
+         */
+        Writer field(String value) {
+            separate();
+            if (value == null) {
+                return this;
+            }
+            boolean quote = false;
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                row.append(value);
+                return this;
+            }
+            row.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+            return this;
+        }
+
+        /**
+         * Adds a numeric field to the current record.
+         *
+         * @param value the field
+         * @return this writer
+         */
+        Writer field(long value) {
+            separate();
+            row.append(value);
+            return this;
+        }
+
+        private void separate() {
+            if (!firstField) {
+                row.append(',');
+            }
+            firstField = false;
+        }
+
+        /**
+         * Ends the current record.
+         *
+         * @throws IOException if the channel cannot be written
+         */
+        void endRecord() throws IOException {
+            row.append('\n');
+            CharBuffer chars = CharBuffer.wrap(row);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            row.setLength(0);
+            firstField = true;
+        }
+
+        /**
+         * Writes out everything buffered so far.
+         *
+         * @throws IOException if the channel cannot be written
+         */
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
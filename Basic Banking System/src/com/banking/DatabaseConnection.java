@@ -1,32 +1,80 @@
 package com.banking;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 /**
  * DatabaseConnection class provides a method to establish a connection
  * to the MySQL database used by the Banking System application.
+ * Connections are handed out from a shared {@link ConnectionPool} per shard;
+ * see {@link ShardMap} for how accounts are spread over several databases.
  */
 public class DatabaseConnection {
 
     // Database URL, including the database name
-    private static final String URL = "jdbc:mysql://localhost:3306/BankingSystem";
-    
+    private static final String URL = System.getProperty("banking.db.url",
+            "jdbc:mysql://localhost:3306/BankingSystem");
+
     // Database username
-    private static final String USER = "root";
-    
+    private static final String USER = System.getProperty("banking.db.user", "root");
+
     // Database password
-    private static final String PASSWORD = "Phoenix@7";
+    private static final String PASSWORD = System.getProperty("banking.db.password", "Phoenix@7");
+
+    // The pools are created on first use so that loading this class never touches the database
+    private static class PoolHolder {
+        private static final ShardMap SHARDS = ShardMap.fromSystemProperties(URL, USER, PASSWORD);
+    }
 
     /**
-     * Gets a connection to the database using JDBC.
-     * 
+     * Gets a connection to the first shard from its pool, for work that is not
+     * about one account. With a single shard this is the only database.
+     * Closing the connection returns it to the pool.
+     *
      * @return Connection object to interact with the database
      * @throws SQLException if a database access error occurs
      */
     public static Connection getConnection() throws SQLException {
-        // Establish and return a connection to the database
-        return DriverManager.getConnection(URL, USER, PASSWORD);
+        return PoolHolder.SHARDS.getConnection(0);
+    }
+
+    /**
+     * Gets a connection to the shard an account lives on.
+     *
+     * @param accountId the account ID
+     * @return Connection object to interact with the account's database
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnectionForAccount(int accountId) throws SQLException {
+        return PoolHolder.SHARDS.getConnection(PoolHolder.SHARDS.shardOf(accountId));
+    }
+
+    /**
+     * Gets a connection to the shard a customer lives on.
+     *
+     * @param customerId the customer ID
+     * @return Connection object to interact with the customer's database
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection getConnectionForCustomer(int customerId) throws SQLException {
+        return PoolHolder.SHARDS.getConnection(PoolHolder.SHARDS.shardOfCustomer(customerId));
+    }
+
+    /**
+     * Gets the pool of the first shard, e.g. to read its metrics.
+     *
+     * @return the connection pool
+     */
+    public static ConnectionPool getPool() {
+        return PoolHolder.SHARDS.getPool(0);
+    }
+
+    /**
+     * Gets the shard map, e.g. to route work or read each shard's pool.
+     *
+     * @return the shard map
+     */
+    public static ShardMap getShardMap() {
+        return PoolHolder.SHARDS;
     }
 }
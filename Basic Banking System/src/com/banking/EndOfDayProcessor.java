@@ -0,0 +1,365 @@
+package com.banking;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * EndOfDayProcessor accrues a day's interest on every account in bulk. Instead of
+ * one query per account, the Account table is cut into partitions of
+ * {@code partitionSize} consecutive account IDs, and each partition is credited
+ * with one set-based statement per interest-bearing account type:
+ *
+ *   1. INSERT ... SELECT writes an "Interest" Transaction row for every account of the
+ *      type in the partition whose interest rounds to at least one cent, with the
+ *      balance and sequence number the account will have after step 2.
+ *   2. UPDATE adds the same rounded interest to those accounts' balances.
+ *   3. An EOD_Checkpoint row records the partition as done for the business date.
+ *
+ * All three commit together, so a partition is credited exactly once per business
+ * date: a restarted run reads the checkpoints and skips what is already done. With
+ * MySQL the INSERT ... SELECT share-locks the rows it reads, so a concurrent posting
+ * cannot change a balance between the ledger row and the update.
+ *
+ * Partitions are processed in parallel on a {@link ForkJoinPool} of {@code threads}
+ * workers, each partition on its own pooled connection; keep {@code threads} within
+ * the connection pool size. Every shard is partitioned and checkpointed on its own.
+ *
+ * The run works on the database. Ledgers that keep balances in memory
+ * ({@link InMemoryLedger}, {@link JournalLedger}) must be stopped while it runs.
+ */
+public class EndOfDayProcessor {
+
+    private static final String ID_RANGE_QUERY = "SELECT MIN(account_id), MAX(account_id) FROM Account";
+    private static final String CHECKPOINTS_QUERY = "SELECT partition_start FROM EOD_Checkpoint WHERE run_date = ?";
+    private static final String CHECKPOINT_QUERY = "INSERT INTO EOD_Checkpoint"
+            + " (run_date, partition_start, partition_end, accounts_credited) VALUES (?, ?, ?, ?)";
+
+    // The interest of one account, rounded to cents the same way in both statements
+    private static final String INTEREST = "ROUND(balance * ?, 2)";
+    private static final String IN_PARTITION =
+            " WHERE account_type = ? AND account_id BETWEEN ? AND ? AND " + INTEREST + " > 0";
+    private static final String INTEREST_LOG_QUERY = "INSERT INTO Transaction"
+            + " (account_id, transaction_type, amount, balance_after, sequence_no)"
+            + " SELECT account_id, " + TransactionType.INTEREST.getCode() + ", " + INTEREST + ", balance + " + INTEREST
+            + ", last_sequence + 1 FROM Account" + IN_PARTITION;
+    private static final String INTEREST_QUERY = "UPDATE Account SET balance = balance + " + INTEREST
+            + ", last_sequence = last_sequence + 1" + IN_PARTITION;
+
+    private static final int DAYS_PER_YEAR = 365;
+
+    private final Map<String, BigDecimal> dailyRates;
+    private final int partitionSize;
+    private final int threads;
+    private final long progressIntervalNanos;
+
+    /**
+     * Creates a processor configured from the "banking.eod.*" system properties:
+     * rates (annual rate per account type, "Savings=0.02"), partitionSize (10000
+     * account IDs), threads (4) and progressIntervalMillis (1000).
+     */
+    public EndOfDayProcessor() {
+        this(parseRates(System.getProperty("banking.eod.rates", "Savings=0.02")),
+             Integer.getInteger("banking.eod.partitionSize", 10_000),
+             Integer.getInteger("banking.eod.threads", 4),
+             Long.getLong("banking.eod.progressIntervalMillis", 1_000));
+    }
+
+    /**
+     * Creates a processor.
+     *
+     * @param annualRates the annual interest rate of each interest-bearing account type, e.g. 0.02 for 2%
+     * @param partitionSize the number of consecutive account IDs credited in one database transaction
+     * @param threads the number of partitions processed at once
+     * @param progressIntervalMillis how often {@link #run} reports progress
+     */
+    public EndOfDayProcessor(Map<String, BigDecimal> annualRates, int partitionSize, int threads,
+                             long progressIntervalMillis) {
+        if (partitionSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("partitionSize and threads must be at least 1");
+        }
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        for (Map.Entry<String, BigDecimal> rate : annualRates.entrySet()) {
+            rates.put(rate.getKey(), rate.getValue().divide(BigDecimal.valueOf(DAYS_PER_YEAR), MathContext.DECIMAL64));
+        }
+        this.dailyRates = Collections.unmodifiableMap(rates);
+        this.partitionSize = partitionSize;
+        this.threads = threads;
+        this.progressIntervalNanos = TimeUnit.MILLISECONDS.toNanos(progressIntervalMillis);
+    }
+
+    /**
+     * Parses annual rates written as "Type=rate,Type=rate".
+     *
+     * @param rates the rates
+     * @return the annual rate of each account type, in the order given
+     */
+    static Map<String, BigDecimal> parseRates(String rates) {
+        Map<String, BigDecimal> parsed = new LinkedHashMap<>();
+        for (String rate : rates.split(",")) {
+            if (rate.isBlank()) {
+                continue;
+            }
+            int separator = rate.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Expected Type=rate, got: " + rate.trim());
+            }
+            parsed.put(rate.substring(0, separator).trim(), new BigDecimal(rate.substring(separator + 1).trim()));
+        }
+        return parsed;
+    }
+
+    /**
+     * Accrues one day's interest on every account, skipping the partitions already
+     * checkpointed for the business date. The buckets of striped accounts are merged
+     * into their balances first.
+     *
+     * @param businessDate the day the interest is for
+     * @param progress receives a report every progressIntervalMillis, and once more at the end;
+     *        may be null
+     * @return the final report
+     */
+    public EndOfDayReport run(LocalDate businessDate, Consumer<EndOfDayReport> progress) {
+        // Interest is paid on the whole balance, including deposits still in striped buckets
+        StripedBalances.compactAll();
+        Run run = new Run(businessDate, progress);
+        ShardMap shards = DatabaseConnection.getShardMap();
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            try {
+                RecursiveAction task = plan(run, shards, shard);
+                if (task != null) {
+                    tasks.add(task);
+                }
+            } catch (SQLException e) {
+                // The shard's partitions are unknown; it is reported as one failed partition
+                run.partitionsFailed.increment();
+                System.err.println("Error planning end of day on shard " + shard + ": " + e.getMessage());
+            }
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads, EndOfDayProcessor::newWorker, null, false);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+        EndOfDayReport report = run.report();
+        if (progress != null) {
+            progress.accept(report);
+        }
+        return report;
+    }
+
+    /**
+     * Reads a shard's account ID range and checkpoints, and creates the task covering its partitions.
+     *
+     * @return the task, or null if the shard has no accounts
+     */
+    private RecursiveAction plan(Run run, ShardMap shards, int shard) throws SQLException {
+        int firstPartition;
+        int lastPartition;
+        IntLongHashMap done = new IntLongHashMap(16);
+        try (Connection connection = shards.getConnection(shard)) {
+            try (PreparedStatement range = connection.prepareStatement(ID_RANGE_QUERY);
+                 ResultSet rs = range.executeQuery()) {
+                if (!rs.next() || rs.getObject(1) == null) {
+                    return null;
+                }
+                firstPartition = (rs.getInt(1) - 1) / partitionSize;
+                lastPartition = (rs.getInt(2) - 1) / partitionSize;
+            }
+            try (PreparedStatement checkpoints = connection.prepareStatement(CHECKPOINTS_QUERY)) {
+                checkpoints.setDate(1, Date.valueOf(run.businessDate));
+                try (ResultSet rs = checkpoints.executeQuery()) {
+                    while (rs.next()) {
+                        done.put(rs.getInt(1), 0);
+                    }
+                }
+            }
+        }
+        return new PartitionTask(run, shard, done, firstPartition, lastPartition + 1);
+    }
+
+    private static ForkJoinWorkerThread newWorker(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("banking-eod-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * Credits one partition's interest and checkpoints it in one database transaction.
+     *
+     * @return the number of accounts credited, or -1 if another run checkpointed the partition first
+     */
+    private long processPartition(Run run, int shard, int partitionStart, int partitionEnd) throws SQLException {
+        long credited = 0;
+        try (Connection connection = DatabaseConnection.getShardMap().getConnection(shard)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement log = connection.prepareStatement(INTEREST_LOG_QUERY);
+                 PreparedStatement update = connection.prepareStatement(INTEREST_QUERY);
+                 PreparedStatement checkpoint = connection.prepareStatement(CHECKPOINT_QUERY)) {
+                for (Map.Entry<String, BigDecimal> rate : dailyRates.entrySet()) {
+                    log.setBigDecimal(1, rate.getValue());
+                    bind(log, 2, rate.getValue(), rate.getKey(), partitionStart, partitionEnd);
+                    log.executeUpdate();
+                    bind(update, 1, rate.getValue(), rate.getKey(), partitionStart, partitionEnd);
+                    credited += update.executeUpdate();
+                }
+                checkpoint.setDate(1, Date.valueOf(run.businessDate));
+                checkpoint.setInt(2, partitionStart);
+                checkpoint.setInt(3, partitionEnd);
+                checkpoint.setLong(4, credited);
+                try {
+                    checkpoint.executeUpdate();
+                } catch (SQLException e) {
+                    // The checkpoint's primary key is the only unique key this statement can hit
+                    if (IdempotencyIndex.isDuplicateKey(e)) {
+                        connection.rollback();
+                        return -1;
+                    }
+                    throw e;
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        if (credited > 0) {
+            // Cheaper than invalidating every ID of the partition one by one
+            AccountCache.getAccounts().invalidateAll();
+        }
+        return credited;
+    }
+
+    /**
+     * Binds the interest of the SET or SELECT list, starting at the given index, and the partition filter.
+     */
+    private static void bind(PreparedStatement statement, int index, BigDecimal dailyRate, String accountType,
+                             int partitionStart, int partitionEnd) throws SQLException {
+        statement.setBigDecimal(index++, dailyRate);
+        statement.setString(index++, accountType);
+        statement.setInt(index++, partitionStart);
+        statement.setInt(index++, partitionEnd);
+        statement.setBigDecimal(index, dailyRate);
+    }
+
+    /**
+     * Gets the daily interest rate of each interest-bearing account type.
+     *
+     * @return the daily rates
+     */
+    public Map<String, BigDecimal> getDailyRates() {
+        return dailyRates;
+    }
+
+    /**
+     * A range of one shard's partitions, split in half until a single partition is left.
+     */
+    private final class PartitionTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Run run;
+        private final int shard;
+        private final IntLongHashMap done;
+        private final int fromPartition;
+        private final int toPartition;
+
+        private PartitionTask(Run run, int shard, IntLongHashMap done, int fromPartition, int toPartition) {
+            this.run = run;
+            this.shard = shard;
+            this.done = done;
+            this.fromPartition = fromPartition;
+            this.toPartition = toPartition;
+        }
+
+        @Override
+        protected void compute() {
+            if (toPartition - fromPartition > 1) {
+                int middle = (fromPartition + toPartition) >>> 1;
+                invokeAll(new PartitionTask(run, shard, done, fromPartition, middle),
+                          new PartitionTask(run, shard, done, middle, toPartition));
+                return;
+            }
+            int partitionStart = fromPartition * partitionSize + 1;
+            if (done.containsKey(partitionStart)) {
+                run.partitionsSkipped.increment();
+                return;
+            }
+            try {
+                long credited = processPartition(run, shard, partitionStart, partitionStart + partitionSize - 1);
+                if (credited < 0) {
+                    run.partitionsSkipped.increment();
+                } else {
+                    run.partitionsProcessed.increment();
+                    run.accountsCredited.add(credited);
+                }
+            } catch (SQLException e) {
+                run.partitionsFailed.increment();
+                System.err.println("Error processing accounts " + partitionStart + "-"
+                        + (partitionStart + partitionSize - 1) + ": " + e.getMessage());
+            }
+            run.reportIfDue();
+        }
+    }
+
+    /**
+     * Counters shared by the workers of one run.
+     */
+    private final class Run {
+
+        private final LocalDate businessDate;
+        private final Consumer<EndOfDayReport> progress;
+        private final long start = System.nanoTime();
+        private final AtomicLong lastReport = new AtomicLong(start);
+        private final LongAdder partitionsProcessed = new LongAdder();
+        private final LongAdder partitionsSkipped = new LongAdder();
+        private final LongAdder partitionsFailed = new LongAdder();
+        private final LongAdder accountsCredited = new LongAdder();
+
+        private Run(LocalDate businessDate, Consumer<EndOfDayReport> progress) {
+            this.businessDate = businessDate;
+            this.progress = progress;
+        }
+
+        private void reportIfDue() {
+            if (progress == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            // Only the worker that wins the update reports
+            if (now - last >= progressIntervalNanos && lastReport.compareAndSet(last, now)) {
+                progress.accept(report());
+            }
+        }
+
+        private EndOfDayReport report() {
+            return new EndOfDayReport(businessDate, partitionsProcessed.sum(), partitionsSkipped.sum(),
+                    partitionsFailed.sum(), accountsCredited.sum(), System.nanoTime() - start);
+        }
+    }
+}
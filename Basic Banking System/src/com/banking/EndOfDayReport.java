@@ -0,0 +1,112 @@
+package com.banking;
+
+import java.time.LocalDate;
+
+/**
+ * EndOfDayReport is a point-in-time summary of an end-of-day run by
+ * {@link EndOfDayProcessor#run}: how many account ID partitions have been processed,
+ * skipped because an earlier run had already done them, or failed, and how many
+ * accounts were credited with interest.
+ */
+public class EndOfDayReport {
+
+    private final LocalDate businessDate;
+    private final long partitionsProcessed;
+    private final long partitionsSkipped;
+    private final long partitionsFailed;
+    private final long accountsCredited;
+    private final long elapsedNanos;
+
+    /**
+     * Creates an end-of-day report.
+     *
+     * @param businessDate the business date of the run
+     * @param partitionsProcessed the number of partitions processed and checkpointed by this run
+     * @param partitionsSkipped the number of partitions already checkpointed by an earlier run
+     * @param partitionsFailed the number of partitions that could not be processed
+     * @param accountsCredited the number of accounts credited with interest
+     * @param elapsedNanos the wall-clock time since the run started
+     */
+    public EndOfDayReport(LocalDate businessDate, long partitionsProcessed, long partitionsSkipped,
+                          long partitionsFailed, long accountsCredited, long elapsedNanos) {
+        this.businessDate = businessDate;
+        this.partitionsProcessed = partitionsProcessed;
+        this.partitionsSkipped = partitionsSkipped;
+        this.partitionsFailed = partitionsFailed;
+        this.accountsCredited = accountsCredited;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the business date of the run.
+     *
+     * @return the business date
+     */
+    public LocalDate getBusinessDate() {
+        return businessDate;
+    }
+
+    /**
+     * Gets the number of partitions processed and checkpointed by this run.
+     *
+     * @return the processed count
+     */
+    public long getPartitionsProcessed() {
+        return partitionsProcessed;
+    }
+
+    /**
+     * Gets the number of partitions already checkpointed by an earlier run for the same date.
+     *
+     * @return the skipped count
+     */
+    public long getPartitionsSkipped() {
+        return partitionsSkipped;
+    }
+
+    /**
+     * Gets the number of partitions that could not be processed because of a database
+     * error. Running again for the same date processes them.
+     *
+     * @return the failed count
+     */
+    public long getPartitionsFailed() {
+        return partitionsFailed;
+    }
+
+    /**
+     * Gets the number of accounts credited with interest.
+     *
+     * @return the credited count
+     */
+    public long getAccountsCredited() {
+        return accountsCredited;
+    }
+
+    /**
+     * Gets the wall-clock time since the run started.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the processing rate.
+     *
+     * @return accounts credited per second
+     */
+    public double getAccountsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : accountsCredited / (elapsedNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "EndOfDayReport [date=" + businessDate + ", partitions=" + partitionsProcessed
+                + ", skipped=" + partitionsSkipped + ", failed=" + partitionsFailed
+                + ", accountsCredited=" + accountsCredited
+                + ", seconds=" + String.format("%.2f", elapsedNanos / 1e9)
+                + ", accountsPerSecond=" + String.format("%.0f", getAccountsPerSecond()) + "]";
+    }
+}
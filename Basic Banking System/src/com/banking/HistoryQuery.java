@@ -0,0 +1,156 @@
+package com.banking;
+
+import java.sql.Timestamp;
+
+/**
+ * HistoryQuery describes which part of an account's transaction history to read.
+ * Transactions are returned newest first, ordered by (transaction_date, transaction_id).
+ *
+ * To page through a long history, read a page with a limit, then pass the last
+ * transaction of that page to {@link #setAfter(Transaction)} to get the next page.
+ * This keyset pagination costs the same for every page, unlike OFFSET.
+ */
+public class HistoryQuery {
+
+    // The account whose history is read
+    private final int accountId;
+
+    // Optional inclusive lower bound on the transaction date
+    private Timestamp from;
+
+    // Optional exclusive upper bound on the transaction date
+    private Timestamp to;
+
+    // Keyset cursor: only transactions strictly older than this one are returned
+    private Timestamp afterDate;
+    private int afterTransactionId;
+
+    // Maximum number of transactions returned; 0 means no limit
+    private int limit;
+
+    // JDBC fetch size; Integer.MIN_VALUE makes MySQL Connector/J stream row by row.
+    // Drivers that reject negative fetch sizes need "banking.history.fetchSize" set to a row count.
+    private int fetchSize = Integer.getInteger("banking.history.fetchSize", Integer.MIN_VALUE);
+
+    /**
+     * Creates a query for the full history of an account.
+     *
+     * @param accountId the ID of the account
+     */
+    public HistoryQuery(int accountId) {
+        this.accountId = accountId;
+    }
+
+    /**
+     * Restricts the query to transactions on or after a date.
+     *
+     * @param from the inclusive lower bound
+     */
+    public void setFrom(Timestamp from) {
+        this.from = from;
+    }
+
+    /**
+     * Restricts the query to transactions before a date.
+     *
+     * @param to the exclusive upper bound
+     */
+    public void setTo(Timestamp to) {
+        this.to = to;
+    }
+
+    /**
+     * Continues after the given transaction, which is normally the last one of the previous page.
+     *
+     * @param last the last transaction already read
+     */
+    public void setAfter(Transaction last) {
+        this.afterDate = Transaction.toTimestamp(last.getTransactionTimeMicros());
+        this.afterTransactionId = last.getTransactionId();
+    }
+
+    /**
+     * Limits the number of transactions returned.
+     *
+     * @param limit the page size, or 0 for no limit
+     */
+    public void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("limit must not be negative");
+        }
+        this.limit = limit;
+    }
+
+    /**
+     * Sets the JDBC fetch size. The default, Integer.MIN_VALUE, makes MySQL stream
+     * rows one at a time; drivers that use cursor fetch take a positive row count.
+     *
+     * @param fetchSize the fetch size
+     */
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Gets the ID of the account.
+     *
+     * @return the account ID
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the inclusive lower date bound.
+     *
+     * @return the lower bound, or null
+     */
+    public Timestamp getFrom() {
+        return from;
+    }
+
+    /**
+     * Gets the exclusive upper date bound.
+     *
+     * @return the upper bound, or null
+     */
+    public Timestamp getTo() {
+        return to;
+    }
+
+    /**
+     * Gets the date of the keyset cursor.
+     *
+     * @return the cursor date, or null when reading from the newest transaction
+     */
+    public Timestamp getAfterDate() {
+        return afterDate;
+    }
+
+    /**
+     * Gets the transaction ID of the keyset cursor.
+     *
+     * @return the cursor transaction ID
+     */
+    public int getAfterTransactionId() {
+        return afterTransactionId;
+    }
+
+    /**
+     * Gets the maximum number of transactions returned.
+     *
+     * @return the limit, or 0 for no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the JDBC fetch size.
+     *
+     * @return the fetch size
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+}
@@ -0,0 +1,303 @@
+package com.banking;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * IdempotencyIndex remembers the outcome of recent postings by the idempotency key
+ * their client sent, so a retried request is answered with the original result
+ * instead of moving the money again.
+ *
+ * The index holds at most {@code maxKeys} keys for {@code ttlMillis} each; the
+ * oldest keys are dropped first. A key that has been dropped is still protected by
+ * the unique idempotency_key column on the Transaction table, which makes the
+ * database reject the repeated ledger row and with it the whole posting. When two
+ * requests with the same key arrive together, the second waits for the first and
+ * receives its result.
+ *
+ * Each key is stored with a description of the request that used it: the operation,
+ * accounts and amount. A key reused for a different request is refused with
+ * KEY_MISMATCH rather than answered with the first request's result.
+ */
+public class IdempotencyIndex {
+
+    /**
+     * The longest key accepted, matching the width of the idempotency_key column.
+     */
+    public static final int MAX_KEY_LENGTH = 64;
+
+    // MySQL's duplicate-key error code, and the standard SQLState used by H2 and PostgreSQL
+    private static final int ER_DUP_ENTRY = 1062;
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    // The unique index on Transaction.idempotency_key, named in the database's duplicate-key message
+    private static final String KEY_INDEX = "uq_transaction_idempotency_key";
+
+    private final int maxKeys;
+    private final long ttlNanos;
+
+    // Insertion order is also expiry order, since every key lives for the same time
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long mismatches;
+
+    /**
+     * Creates an index configured from the "banking.idempotency.*" system properties.
+     */
+    public IdempotencyIndex() {
+        this(Integer.getInteger("banking.idempotency.maxKeys", 100_000),
+             Long.getLong("banking.idempotency.ttlMillis", TimeUnit.HOURS.toMillis(24)));
+    }
+
+    /**
+     * Creates an index.
+     *
+     * @param maxKeys the most keys remembered at once
+     * @param ttlMillis how long a key is remembered
+     */
+    public IdempotencyIndex(int maxKeys, long ttlMillis) {
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("maxKeys must be at least 1");
+        }
+        this.maxKeys = maxKeys;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    /**
+     * Checks that a key can be stored.
+     *
+     * @param key the idempotency key, or null for none
+     * @throws IllegalArgumentException if the key is empty or longer than {@link #MAX_KEY_LENGTH}
+     */
+    public static void validate(String key) {
+        if (key != null && (key.isEmpty() || key.length() > MAX_KEY_LENGTH)) {
+            throw new IllegalArgumentException("Idempotency key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+    }
+
+    /**
+     * Tells whether an error means that a unique key, such as the idempotency key, was already taken.
+     *
+     * @param e the error
+     * @return true for a unique-constraint violation
+     */
+    public static boolean isDuplicateKey(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (current.getErrorCode() == ER_DUP_ENTRY || UNIQUE_VIOLATION.equals(current.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // MySQL, H2 and PostgreSQL all name the violated index or constraint in the message
+    private static boolean isDuplicateKey(SQLException e, String keyName) {
+        String name = keyName.toLowerCase(Locale.ROOT);
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if ((current.getErrorCode() == ER_DUP_ENTRY || UNIQUE_VIOLATION.equals(current.getSQLState()))
+                    && current.getMessage() != null
+                    && current.getMessage().toLowerCase(Locale.ROOT).contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether an error means that a ledger row's idempotency key was already taken,
+     * as opposed to any other unique key, such as an account's sequence number.
+     *
+     * @param e the error
+     * @return true if the idempotency key was a duplicate
+     */
+    public static boolean isDuplicateIdempotencyKey(SQLException e) {
+        return isDuplicateKey(e, KEY_INDEX);
+    }
+
+    /**
+     * Runs a posting once per key. A repeated key gets the result of the first run
+     * without running the posting again, provided it describes the same request. Only
+     * committed and DUPLICATE results are remembered; for any other result nothing was
+     * committed, and the client may safely try again.
+     *
+     * @param key the idempotency key, or null to always run the posting
+     * @param operation the operation and any accounts besides accountId, e.g. "transfer to 2"
+     * @param accountId the ID of the account the posting is made against
+     * @param amount the amount posted
+     * @param posting the posting to run
+     * @return the result of this run or of the earlier run with the same key, or
+     *         KEY_MISMATCH if the key was used for a different request
+     */
+    public PostingResult execute(String key, String operation, int accountId, Money amount,
+                                 Supplier<PostingResult> posting) {
+        if (key == null) {
+            return posting.get();
+        }
+        validate(key);
+        String request = operation + " " + accountId + " " + amount;
+        CompletableFuture<PostingResult> mine = new CompletableFuture<>();
+        CompletableFuture<PostingResult> earlier = null;
+        synchronized (entries) {
+            long now = System.nanoTime();
+            purgeExpired(now);
+            Entry entry = entries.get(key);
+            if (entry != null && !entry.request.equals(request)) {
+                mismatches++;
+                return new PostingResult(PostingResult.Status.KEY_MISMATCH, accountId, amount,
+                        "Idempotency key was already used for a different request.");
+            }
+            if (entry != null) {
+                hits++;
+                earlier = entry.result;
+            } else {
+                misses++;
+                entries.put(key, new Entry(request, mine, now + ttlNanos));
+                if (entries.size() > maxKeys) {
+                    Iterator<Entry> eldest = entries.values().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions++;
+                }
+            }
+        }
+        if (earlier != null) {
+            return earlier.join();
+        }
+
+        PostingResult result;
+        try {
+            result = posting.get();
+        } catch (RuntimeException e) {
+            forget(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        if (!result.isCommitted() && result.getStatus() != PostingResult.Status.DUPLICATE) {
+            forget(key, mine);
+        }
+        mine.complete(result);
+        return result;
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Entry> oldestFirst = entries.values().iterator();
+        while (oldestFirst.hasNext()) {
+            if (oldestFirst.next().expiresAtNanos - now > 0) {
+                return;
+            }
+            oldestFirst.remove();
+            expirations++;
+        }
+    }
+
+    private void forget(String key, CompletableFuture<PostingResult> result) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.result == result) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of keys currently remembered.
+     *
+     * @return the size
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Gets the number of postings answered from the index.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        synchronized (entries) {
+            return hits;
+        }
+    }
+
+    /**
+     * Gets the number of keyed postings that had to run.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        synchronized (entries) {
+            return misses;
+        }
+    }
+
+    /**
+     * Gets the number of keys dropped to stay within maxKeys.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        synchronized (entries) {
+            return evictions;
+        }
+    }
+
+    /**
+     * Gets the number of keys dropped because they outlived the TTL.
+     *
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        synchronized (entries) {
+            return expirations;
+        }
+    }
+
+    /**
+     * Gets the number of postings refused because their key was used for a different request.
+     *
+     * @return the mismatch count
+     */
+    public long getMismatchCount() {
+        synchronized (entries) {
+            return mismatches;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (entries) {
+            return "IdempotencyIndex [size=" + entries.size() + ", hits=" + hits + ", misses=" + misses
+                    + ", evictions=" + evictions + ", expirations=" + expirations
+                    + ", mismatches=" + mismatches + "]";
+        }
+    }
+
+    /**
+     * A remembered key: the request that used it, and the result, or the future
+     * result of a posting still running.
+     */
+    private static final class Entry {
+
+        private final String request;
+        private final CompletableFuture<PostingResult> result;
+        private final long expiresAtNanos;
+
+        private Entry(String request, CompletableFuture<PostingResult> result, long expiresAtNanos) {
+            this.request = request;
+            this.result = result;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.banking;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ImportResult summarises one run of the {@link AccountImporter}. Every data row
+ * of the file is counted exactly once: as imported, as rejected because its
+ * customer does not exist, as malformed, or as failed because the database
+ * refused the chunk it was loaded in.
+ */
+public class ImportResult {
+
+    private final long rowsRead;
+    private final long imported;
+    private final long unknownCustomers;
+    private final long malformed;
+    private final long failed;
+    private final long elapsedNanos;
+    private final List<String> rejects;
+
+    /**
+     * Creates an import result.
+     *
+     * @param rowsRead the number of data rows read from the file
+     * @param imported the number of accounts created
+     * @param unknownCustomers the number of rows rejected because the customer does not exist
+     * @param malformed the number of rows that could not be parsed
+     * @param failed the number of rows in chunks the database refused
+     * @param elapsedNanos the wall-clock time of the import
+     * @param rejects descriptions of the first rejected rows and failed chunks, with line numbers
+     */
+    public ImportResult(long rowsRead, long imported, long unknownCustomers, long malformed, long failed,
+                        long elapsedNanos, List<String> rejects) {
+        this.rowsRead = rowsRead;
+        this.imported = imported;
+        this.unknownCustomers = unknownCustomers;
+        this.malformed = malformed;
+        this.failed = failed;
+        this.elapsedNanos = elapsedNanos;
+        this.rejects = Collections.unmodifiableList(rejects);
+    }
+
+    /**
+     * Gets the number of data rows read from the file, not counting a header row.
+     *
+     * @return the row count
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Gets the number of accounts created.
+     *
+     * @return the imported count
+     */
+    public long getImported() {
+        return imported;
+    }
+
+    /**
+     * Gets the number of rows rejected because their customer does not exist.
+     *
+     * @return the unknown customer count
+     */
+    public long getUnknownCustomers() {
+        return unknownCustomers;
+    }
+
+    /**
+     * Gets the number of rows that could not be parsed.
+     *
+     * @return the malformed count
+     */
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * Gets the number of rows in chunks that the database refused; none of them were imported.
+     *
+     * @return the failed count
+     */
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * Gets the wall-clock time of the import.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the import rate.
+     *
+     * @return accounts created per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : imported / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Gets descriptions of the first rejected rows and failed chunks.
+     *
+     * @return the rejects, each starting with its line number
+     */
+    public List<String> getRejects() {
+        return rejects;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportResult [rows=" + rowsRead + ", imported=" + imported + ", unknownCustomers=" + unknownCustomers
+                + ", malformed=" + malformed + ", failed=" + failed
+                + ", seconds=" + String.format("%.2f", elapsedNanos / 1e9)
+                + ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "]";
+    }
+}
@@ -0,0 +1,508 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * InMemoryLedger keeps account balances in memory, in whole cents, and applies
+ * deposits, withdrawals and transfers at memory speed. It is meant for hot accounts
+ * whose balance updates would otherwise queue on the same database row.
+ *
+ * Balances are spread over a fixed number of stripes. Each stripe owns a primitive
+ * {@link IntLongHashMap} and a lock, so postings on different stripes never contend.
+ * A transfer locks its two stripes in stripe order, which rules out deadlock.
+ *
+ * Every accepted posting is queued for a background writer that applies it to the
+ * Account and Transaction tables through a {@link BatchPoster}. The in-memory balance
+ * is authoritative while the engine runs, so accounts it manages must not be
+ * changed through the database directly at the same time.
+ *
+ * Idempotency keys are checked against an in-memory {@link IdempotencyIndex} only;
+ * the rows written through do not carry them, so a key is forgotten once it leaves
+ * the index or the process restarts.
+ */
+public class InMemoryLedger implements Ledger, AutoCloseable {
+
+    private static final String BALANCE_QUERY = "SELECT balance FROM Account WHERE account_id = ?";
+
+    private final ReentrantLock[] locks;
+    private final IntLongHashMap[] balances;
+    private final int stripeMask;
+
+    private final BlockingQueue<Posting> writeQueue;
+    private final ToIntFunction<List<Posting>> writeThrough;
+    private final Thread writer;
+    // closed refuses new postings; stopped lets the writer exit once the queue is empty
+    private volatile boolean closed;
+    private volatile boolean stopped;
+    // Postings past the closed check, which close() waits for before stopping the writer
+    private final AtomicInteger posting = new AtomicInteger();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    private final IdempotencyIndex idempotencyIndex = new IdempotencyIndex();
+
+    /**
+     * Creates a ledger with 64 stripes that writes through to the database in batches.
+     */
+    public InMemoryLedger() {
+        this(64, 100_000, new DatabaseWriteThrough(new BatchPoster()));
+    }
+
+    /**
+     * Creates a ledger.
+     *
+     * @param stripes the number of lock stripes; rounded up to a power of two
+     * @param writeQueueCapacity the number of postings that may wait for write-through
+     *        before posting threads are made to wait
+     * @param writeThrough receives batches of accepted postings, in acceptance order,
+     *        and returns the number of postings it could not persist
+     */
+    public InMemoryLedger(int stripes, int writeQueueCapacity, ToIntFunction<List<Posting>> writeThrough) {
+        int stripeCount = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.locks = new ReentrantLock[stripeCount];
+        this.balances = new IntLongHashMap[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            locks[i] = new ReentrantLock();
+            balances[i] = new IntLongHashMap(64);
+        }
+        this.stripeMask = stripeCount - 1;
+        this.writeQueue = new LinkedBlockingQueue<>(writeQueueCapacity);
+        this.writeThrough = writeThrough;
+        this.writer = new Thread(this::drainWriteQueue, "banking-ledger-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Registers an account with a known balance, bypassing the database lookup.
+     *
+     * @param accountId the account ID
+     * @param balanceCents the balance in cents
+     */
+    public void registerAccount(int accountId, long balanceCents) {
+        int stripe = stripe(accountId);
+        locks[stripe].lock();
+        try {
+            balances[stripe].put(accountId, balanceCents);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Gets the in-memory balance of an account, loading it from the database if needed.
+     *
+     * @param accountId the account ID
+     * @return the balance in cents, or -1 if the account does not exist
+     */
+    public long getBalanceCents(int accountId) {
+        if (!ensureLoaded(accountId)) {
+            return -1;
+        }
+        int stripe = stripe(accountId);
+        locks[stripe].lock();
+        try {
+            return balances[stripe].get(accountId, -1);
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount) {
+        long cents = toCents(amount);
+        if (cents <= 0 || !enter()) {
+            return rejected(accountId, amount, cents);
+        }
+        try {
+            if (!ensureLoaded(accountId)) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount,
+                        "Deposit failed. Account ID may not exist.");
+            }
+            int stripe = stripe(accountId);
+            locks[stripe].lock();
+            try {
+                IntLongHashMap map = balances[stripe];
+                long balance = Math.addExact(map.get(accountId, 0), cents);
+                if (!enqueue(Posting.deposit(accountId, amount))) {
+                    return notQueued(accountId, amount);
+                }
+                map.put(accountId, balance);
+            } finally {
+                locks[stripe].unlock();
+            }
+            return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, "Deposit successful.");
+        } finally {
+            posting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount) {
+        long cents = toCents(amount);
+        if (cents <= 0 || !enter()) {
+            return rejected(accountId, amount, cents);
+        }
+        try {
+            if (!ensureLoaded(accountId)) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount,
+                        "Withdrawal failed. Account ID may not exist.");
+            }
+            int stripe = stripe(accountId);
+            locks[stripe].lock();
+            try {
+                IntLongHashMap map = balances[stripe];
+                long balance = map.get(accountId, 0);
+                if (balance < cents) {
+                    return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, accountId, amount,
+                            "Withdrawal failed. Insufficient funds in Account ID: " + accountId);
+                }
+                if (!enqueue(Posting.withdrawal(accountId, amount))) {
+                    return notQueued(accountId, amount);
+                }
+                map.put(accountId, balance - cents);
+            } finally {
+                locks[stripe].unlock();
+            }
+            return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, "Withdrawal successful.");
+        } finally {
+            posting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount) {
+        long cents = toCents(amount);
+        if (cents <= 0 || !enter()) {
+            return rejected(fromAccountId, amount, cents);
+        }
+        try {
+            return transfer(fromAccountId, toAccountId, amount, cents);
+        } finally {
+            posting.decrementAndGet();
+        }
+    }
+
+    private PostingResult transfer(int fromAccountId, int toAccountId, Money amount, long cents) {
+        if (fromAccountId == toAccountId) {
+            return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                    "Transfer failed. Source and destination accounts are the same.");
+        }
+        if (!ensureLoaded(fromAccountId)) {
+            return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                    "Transfer failed. Source Account ID may not exist.");
+        }
+        if (!ensureLoaded(toAccountId)) {
+            return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                    "Transfer failed. Destination Account ID may not exist.");
+        }
+
+        int fromStripe = stripe(fromAccountId);
+        int toStripe = stripe(toAccountId);
+        ReentrantLock first = locks[Math.min(fromStripe, toStripe)];
+        ReentrantLock second = locks[Math.max(fromStripe, toStripe)];
+        first.lock();
+        second.lock();
+        try {
+            long fromBalance = balances[fromStripe].get(fromAccountId, 0);
+            if (fromBalance < cents) {
+                return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, fromAccountId, amount,
+                        "Transfer failed. Insufficient funds in Account ID: " + fromAccountId);
+            }
+            long toBalance = Math.addExact(balances[toStripe].get(toAccountId, 0), cents);
+            if (!enqueue(Posting.transfer(fromAccountId, toAccountId, amount))) {
+                return notQueued(fromAccountId, amount);
+            }
+            balances[toStripe].put(toAccountId, toBalance);
+            balances[fromStripe].put(fromAccountId, fromBalance - cents);
+        } finally {
+            second.unlock();
+            first.unlock();
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, fromAccountId, amount, "Transfer successful.");
+    }
+
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "deposit", accountId, amount,
+                () -> postDeposit(accountId, amount));
+    }
+
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "withdrawal", accountId, amount,
+                () -> postWithdrawal(accountId, amount));
+    }
+
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "transfer to " + toAccountId, fromAccountId, amount,
+                () -> postTransfer(fromAccountId, toAccountId, amount));
+    }
+
+    /**
+     * Loads an account's balance from the database the first time it is used.
+     * The query runs without holding the stripe lock; if two threads load the same
+     * account at once, the first one to store its balance wins.
+     */
+    private boolean ensureLoaded(int accountId) {
+        int stripe = stripe(accountId);
+        locks[stripe].lock();
+        try {
+            if (balances[stripe].containsKey(accountId)) {
+                return true;
+            }
+        } finally {
+            locks[stripe].unlock();
+        }
+
+        long cents;
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId);
+             PreparedStatement statement = connection.prepareStatement(BALANCE_QUERY)) {
+            statement.setInt(1, accountId);
+            ResultSet rs = statement.executeQuery();
+            if (!rs.next()) {
+                return false;
+            }
+            cents = Money.read(rs, "balance").getMinorUnits();
+        } catch (SQLException e) {
+            System.err.println("Error loading account balance: " + e.getMessage());
+            return false;
+        }
+
+        locks[stripe].lock();
+        try {
+            if (!balances[stripe].containsKey(accountId)) {
+                balances[stripe].put(accountId, cents);
+            }
+            return true;
+        } finally {
+            locks[stripe].unlock();
+        }
+    }
+
+    /**
+     * Counts a posting in, unless the ledger is closed. A posting counted in is always
+     * written through, since close() waits for it before stopping the writer.
+     *
+     * @return true if the posting may proceed; it must then call posting.decrementAndGet()
+     */
+    private boolean enter() {
+        posting.incrementAndGet();
+        if (closed) {
+            posting.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Queues an accepted posting for write-through, before its balance change is
+     * applied. Called while holding the stripe lock so that postings on one account
+     * reach the writer in the order they were applied; a full queue therefore also
+     * holds back further postings on that stripe.
+     *
+     * @return false if the thread was interrupted and nothing was queued
+     */
+    private boolean enqueue(Posting accepted) {
+        try {
+            writeQueue.put(accepted);
+            enqueued.incrementAndGet();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void drainWriteQueue() {
+        List<Posting> batch = new ArrayList<>();
+        while (!stopped || !writeQueue.isEmpty()) {
+            try {
+                Posting first = writeQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                writeQueue.drainTo(batch, 9_999);
+                int rejected = writeThrough.applyAsInt(batch);
+                if (rejected > 0) {
+                    writeFailures.addAndGet(rejected);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                writeFailures.addAndGet(batch.size());
+                System.err.println("Error writing ledger batch: " + e.getMessage());
+            } finally {
+                written.addAndGet(batch.size());
+                batch.clear();
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until every posting accepted so far has been handed to the write-through.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = enqueued.get();
+        while (written.get() < target && writer.isAlive()) {
+            wait(100);
+        }
+    }
+
+    /**
+     * Stops accepting postings, waits for the postings already under way, writes out
+     * everything accepted and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            while (posting.get() > 0) {
+                Thread.sleep(1);
+            }
+            stopped = true;
+            writer.join();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of postings waiting for write-through.
+     *
+     * @return the write queue depth
+     */
+    public int getWriteQueueDepth() {
+        return writeQueue.size();
+    }
+
+    /**
+     * Gets the number of postings handed to the write-through.
+     *
+     * @return the written count
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Gets the number of postings whose write-through failed.
+     *
+     * @return the write failure count
+     */
+    public long getWriteFailureCount() {
+        return writeFailures.get();
+    }
+
+    private int stripe(int accountId) {
+        return (accountId * 0x9E3779B9 >>> 16) & stripeMask;
+    }
+
+    // Amounts are kept as minor units of the system currency
+    private static long toCents(Money amount) {
+        return amount.getCurrency() == Money.SYSTEM_CURRENCY ? amount.getMinorUnits() : 0;
+    }
+
+    private static PostingResult notQueued(int accountId, Money amount) {
+        return new PostingResult(PostingResult.Status.FAILED, accountId, amount,
+                "Posting failed. Interrupted while queueing it for the database; the balance is unchanged.");
+    }
+
+    private static PostingResult rejected(int accountId, Money amount, long cents) {
+        return new PostingResult(PostingResult.Status.FAILED, accountId, amount, cents <= 0
+                ? "Posting failed. Amount must be a positive " + Money.SYSTEM_CURRENCY + " amount."
+                : "Posting failed. The in-memory ledger is closed.");
+    }
+
+    /**
+     * The default write-through: applies each batch with a {@link BatchPoster} and
+     * reports any posting the database rejected.
+     */
+    private static final class DatabaseWriteThrough implements ToIntFunction<List<Posting>> {
+
+        private final BatchPoster batchPoster;
+        private final TransferEngine transferEngine = new TransferEngine();
+
+        private DatabaseWriteThrough(BatchPoster batchPoster) {
+            this.batchPoster = batchPoster;
+        }
+
+        @Override
+        public int applyAsInt(List<Posting> postings) {
+            ShardMap shards = DatabaseConnection.getShardMap();
+            if (shards.getShardCount() == 1) {
+                return post(postings);
+            }
+            // A batch runs on one shard, and transfers between shards need a saga of their own.
+            // The postings collected so far are written before each such transfer, so the
+            // database sees every account's postings in the order the ledger accepted them
+            List<List<Posting>> byShard = new ArrayList<>(shards.getShardCount());
+            for (int shard = 0; shard < shards.getShardCount(); shard++) {
+                byShard.add(new ArrayList<>());
+            }
+            int rejected = 0;
+            for (Posting posting : postings) {
+                int shard = shards.shardOf(posting.getAccountId());
+                if (posting.getType() == Posting.Type.TRANSFER && shards.shardOf(posting.getToAccountId()) != shard) {
+                    rejected += postCollected(byShard);
+                    rejected += report(posting, transferEngine.transfer(posting.getAccountId(),
+                            posting.getToAccountId(), posting.getAmount()));
+                } else {
+                    byShard.get(shard).add(posting);
+                }
+            }
+            return rejected + postCollected(byShard);
+        }
+
+        /**
+         * Writes and clears the postings collected per shard.
+         */
+        private int postCollected(List<List<Posting>> byShard) {
+            int rejected = 0;
+            for (List<Posting> shardPostings : byShard) {
+                if (!shardPostings.isEmpty()) {
+                    rejected += post(shardPostings);
+                    shardPostings.clear();
+                }
+            }
+            return rejected;
+        }
+
+        private int post(List<Posting> postings) {
+            int[] rejected = new int[1];
+            batchPoster.postAll(postings.stream(), (posting, result) -> rejected[0] += report(posting, result));
+            return rejected[0];
+        }
+
+        private static int report(Posting posting, PostingResult result) {
+            if (result.isSuccess()) {
+                return 0;
+            }
+            System.err.println("Write-through rejected " + posting + ": " + result.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.banking;
+
+import java.util.Arrays;
+
+/**
+ * IntLongHashMap is an open-addressing hash map from primitive int keys to
+ * primitive long values. It avoids the boxing and per-entry objects of a
+ * HashMap&lt;Integer, Long&gt;, which matters on the posting hot path.
+ *
+ * The map is not thread-safe; callers guard it with their own lock.
+ */
+public class IntLongHashMap {
+
+    /**
+     * Receives the entries of the map during {@link IntLongHashMap#forEach}.
+     */
+    public interface EntryConsumer {
+
+        /**
+         * Accepts one entry.
+         *
+         * @param key the key
+         * @param value the value
+         */
+        void accept(int key, long value);
+    }
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+    private int resizeAt;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize the number of entries the map should hold without resizing
+     */
+    public IntLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int slot(int key) {
+        // Fibonacci hashing spreads sequential account IDs across the table
+        int mask = keys.length - 1;
+        int index = (key * 0x9E3779B9) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Tells whether the map contains a key.
+     *
+     * @param key the key
+     * @return true if the key is present
+     */
+    public boolean containsKey(int key) {
+        return used[slot(key)];
+    }
+
+    /**
+     * Gets the value for a key.
+     *
+     * @param key the key
+     * @param defaultValue the value returned when the key is absent
+     * @return the value, or defaultValue if the key is absent
+     */
+    public long get(int key, long defaultValue) {
+        int index = slot(key);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    /**
+     * Sets the value for a key.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(int key, long value) {
+        int index = slot(key);
+        if (!used[index]) {
+            if (size >= resizeAt) {
+                rehash(keys.length << 1);
+                index = slot(key);
+            }
+            used[index] = true;
+            keys[index] = key;
+            size++;
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key the key
+     * @return true if the key was present
+     */
+    public boolean remove(int key) {
+        int index = slot(key);
+        if (!used[index]) {
+            return false;
+        }
+        used[index] = false;
+        size--;
+        // Re-insert the rest of the probe run so that lookups do not stop at the hole
+        int mask = keys.length - 1;
+        for (int next = (index + 1) & mask; used[next]; next = (next + 1) & mask) {
+            used[next] = false;
+            size--;
+            put(keys[next], values[next]);
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry in the map.
+     *
+     * @param consumer receives each key and value
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+}
@@ -0,0 +1,736 @@
+package com.banking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * JournalLedger runs the banking engine without a database. Every accepted posting
+ * is appended as a fixed-size binary record to a journal file that is memory-mapped
+ * in large regions, and balances are held in memory. At startup the journal is
+ * replayed from the beginning to rebuild every balance.
+ *
+ * An append is a copy into the mapped region, so it survives a crash of the process
+ * as soon as the posting returns. Surviving a crash of the machine requires the
+ * pages to be forced to disk; that happens every {@code syncEveryRecords} records,
+ * every {@code syncIntervalMillis} on a background thread, and on {@link #sync()}
+ * and {@link #close()}. With syncEveryRecords set to 1 every posting is forced
+ * before it returns.
+ *
+ * A record is 40 bytes, little-endian:
+ *
+ *   sequence (8) | timestamp millis (8) | account ID (4) | to-account ID (4) |
+ *   amount in cents (8) | type (1) | padding (3) | CRC32C of the first 36 bytes (4)
+ *
+ * The first record slot holds the file header, so record N starts at byte 40 * N.
+ * Replay stops at the first record whose sequence or checksum does not match,
+ * which discards a torn final write; new records overwrite it.
+ *
+ * So that startup time does not grow with the journal's history, a background
+ * thread periodically writes a {@link BalanceSnapshot} next to the journal. It
+ * keeps its own copy of the balances and brings it forward by reading the journal
+ * records appended since its last snapshot, so postings are never blocked while a
+ * snapshot is built or written. Startup loads the snapshot and replays only the
+ * records after its high-water mark.
+ */
+public class JournalLedger implements Ledger, AutoCloseable {
+
+    static final int RECORD_SIZE = 40;
+    private static final int MAGIC = 0x424B4A31; // "BKJ1"
+    private static final int VERSION = 1;
+
+    // Record types
+    static final byte OPEN = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAWAL = 3;
+    static final byte TRANSFER = 4;
+
+    private final FileChannel channel;
+    private final long regionSize;
+    private final int syncEveryRecords;
+
+    // Guards the balances, the mapped region and the sequence; appends happen in sequence order
+    private final ReentrantLock lock = new ReentrantLock();
+    private IntLongHashMap balances = new IntLongHashMap(1024);
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32C crc = new CRC32C();
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long sequence;
+    private int maxAccountId;
+    private int unsyncedRecords;
+    // Start of the part of the mapped region not yet forced to disk
+    private int syncedPosition;
+    private volatile boolean closed;
+
+    private final ScheduledExecutorService syncer;
+    private final IdempotencyIndex idempotencyIndex = new IdempotencyIndex();
+
+    private final long recoveredRecords;
+    private final long recoveryNanos;
+    private long snapshotLoadNanos;
+
+    // Owned by whichever thread holds snapshotLock: the balances as of snapshotSequence
+    private final Path snapshotPath;
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService snapshotter;
+    private IntLongHashMap snapshotBalances;
+    private long snapshotSequence;
+    private volatile long snapshotCount;
+    private volatile long lastSnapshotBytes;
+    private volatile long lastSnapshotNanos;
+    private long syncCount;
+    private final LatencyHistogram syncLatency = new LatencyHistogram();
+
+    /**
+     * Opens the journal named by the "banking.journal.*" system properties,
+     * replaying it if it already exists.
+     *
+     * @throws IOException if the journal cannot be opened or is not a journal file
+     */
+    public JournalLedger() throws IOException {
+        this(Paths.get(System.getProperty("banking.journal.path", "banking.journal")),
+             Integer.getInteger("banking.journal.syncEveryRecords", 256),
+             Long.getLong("banking.journal.syncIntervalMillis", 10),
+             Integer.getInteger("banking.journal.regionRecords", 1 << 20),
+             Long.getLong("banking.journal.snapshotIntervalMillis", 60_000));
+    }
+
+    /**
+     * Opens a journal without periodic snapshots, replaying it if it already exists.
+     * A snapshot left by an earlier run is still used for recovery.
+     *
+     * @param path the journal file
+     * @param syncEveryRecords force the journal to disk after this many appends; 0 to rely on the interval
+     * @param syncIntervalMillis force the journal to disk at least this often; 0 to disable
+     * @param regionRecords the number of records mapped at a time
+     * @throws IOException if the journal cannot be opened or is not a journal file
+     */
+    public JournalLedger(Path path, int syncEveryRecords, long syncIntervalMillis, int regionRecords)
+            throws IOException {
+        this(path, syncEveryRecords, syncIntervalMillis, regionRecords, 0);
+    }
+
+    /**
+     * Opens a journal, replaying it if it already exists.
+     *
+     * @param path the journal file
+     * @param syncEveryRecords force the journal to disk after this many appends; 0 to rely on the interval
+     * @param syncIntervalMillis force the journal to disk at least this often; 0 to disable
+     * @param regionRecords the number of records mapped at a time
+     * @param snapshotIntervalMillis write a balance snapshot this often; 0 to disable
+     * @throws IOException if the journal cannot be opened or is not a journal file
+     */
+    public JournalLedger(Path path, int syncEveryRecords, long syncIntervalMillis, int regionRecords,
+                         long snapshotIntervalMillis) throws IOException {
+        if (regionRecords < 2) {
+            throw new IllegalArgumentException("regionRecords must be at least 2");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.regionSize = (long) regionRecords * RECORD_SIZE;
+        this.syncEveryRecords = syncEveryRecords;
+        this.snapshotPath = path.resolveSibling(path.getFileName() + ".snapshot");
+
+        long start = System.nanoTime();
+        try {
+            if (hasHeader()) {
+                loadSnapshot();
+                long fromSequence = sequence;
+                sequence = readRecords(sequence, Long.MAX_VALUE, this::apply);
+                map((sequence + 1) * RECORD_SIZE);
+                this.recoveredRecords = sequence - fromSequence;
+            } else {
+                map(0);
+                writeHeader();
+                this.recoveredRecords = 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.recoveryNanos = System.nanoTime() - start;
+
+        if (snapshotIntervalMillis > 0) {
+            this.snapshotBalances = copyOf(balances);
+            this.snapshotSequence = sequence;
+            this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "banking-journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMillis,
+                    snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotter = null;
+        }
+
+        if (syncIntervalMillis > 0) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "banking-journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    /**
+     * Receives journal records during {@link JournalLedger#readRecords}.
+     */
+    private interface RecordVisitor {
+        void accept(long sequence, byte type, int accountId, int toAccountId, long cents);
+    }
+
+    /**
+     * Checks the file header.
+     *
+     * @return true if the file is a journal, false if it is new and empty
+     */
+    private boolean hasHeader() throws IOException {
+        if (channel.size() < RECORD_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a version " + VERSION + " banking journal");
+        }
+        return true;
+    }
+
+    /**
+     * Loads the balance snapshot, if there is one. A snapshot that cannot be read, or
+     * whose last record is not a valid record in the journal, is only a lost shortcut:
+     * it is ignored and the whole journal is replayed instead.
+     */
+    private void loadSnapshot() {
+        long start = System.nanoTime();
+        try {
+            BalanceSnapshot snapshot = BalanceSnapshot.read(snapshotPath);
+            // The file is extended a whole region at a time, so its size says nothing about
+            // how far the journal reaches; the snapshot's own last record must check out
+            if (snapshot != null && !hasRecord(snapshot.getSequence())) {
+                System.err.println("Balance snapshot is ahead of the journal, replaying the whole journal: "
+                        + snapshotPath);
+            } else if (snapshot != null) {
+                balances = snapshot.getBalances();
+                sequence = snapshot.getSequence();
+                balances.forEach((accountId, cents) -> maxAccountId = Math.max(maxAccountId, accountId));
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading balance snapshot, replaying the whole journal: " + e.getMessage());
+        }
+        snapshotLoadNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Tells whether the journal holds a valid record with the given sequence number.
+     */
+    private boolean hasRecord(long recordSequence) throws IOException {
+        return recordSequence == 0 || readRecords(recordSequence - 1, recordSequence,
+                (readSequence, type, accountId, toAccountId, cents) -> { }) == recordSequence;
+    }
+
+    /**
+     * Reads the valid records after a sequence number, in order.
+     *
+     * @param afterSequence the last sequence number already applied
+     * @param upToSequence the last sequence number to read
+     * @param visitor receives each record
+     * @return the sequence number of the last record read
+     */
+    private long readRecords(long afterSequence, long upToSequence, RecordVisitor visitor) throws IOException {
+        CRC32C checksum = new CRC32C();
+        byte[] record = new byte[RECORD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN);
+        long size = channel.size();
+        long next = afterSequence + 1;
+        while (next <= upToSequence && (next + 1) * RECORD_SIZE <= size) {
+            long offset = next * RECORD_SIZE;
+            long mapLength = Math.min(regionSize, (size - offset) / RECORD_SIZE * RECORD_SIZE);
+            if (upToSequence - next < mapLength / RECORD_SIZE) {
+                mapLength = (upToSequence - next + 1) * RECORD_SIZE;
+            }
+            MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offset, mapLength);
+            while (chunk.remaining() >= RECORD_SIZE) {
+                chunk.get(record);
+                checksum.reset();
+                checksum.update(record, 0, RECORD_SIZE - 4);
+                if (view.getLong(0) != next || view.getInt(RECORD_SIZE - 4) != (int) checksum.getValue()) {
+                    return next - 1;
+                }
+                visitor.accept(next, view.get(32), view.getInt(16), view.getInt(20), view.getLong(24));
+                next++;
+            }
+        }
+        return next - 1;
+    }
+
+    private void apply(long recordSequence, byte type, int accountId, int toAccountId, long cents) {
+        applyTo(balances, recordSequence, type, accountId, toAccountId, cents);
+        if (type == OPEN) {
+            maxAccountId = Math.max(maxAccountId, accountId);
+        }
+    }
+
+    private static void applyTo(IntLongHashMap target, long recordSequence, byte type, int accountId,
+                                int toAccountId, long cents) {
+        switch (type) {
+            case OPEN:
+                target.put(accountId, cents);
+                break;
+            case DEPOSIT:
+                target.put(accountId, target.get(accountId, 0) + cents);
+                break;
+            case WITHDRAWAL:
+                target.put(accountId, target.get(accountId, 0) - cents);
+                break;
+            case TRANSFER:
+                target.put(accountId, target.get(accountId, 0) - cents);
+                target.put(toAccountId, target.get(toAccountId, 0) + cents);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type + " at sequence " + recordSequence);
+        }
+    }
+
+    private static IntLongHashMap copyOf(IntLongHashMap source) {
+        IntLongHashMap copy = new IntLongHashMap(Math.max(16, source.size()));
+        source.forEach(copy::put);
+        return copy;
+    }
+
+    /**
+     * Writes a balance snapshot as of the last record appended. The snapshot copy of
+     * the balances is brought forward from the journal file, without taking the lock
+     * that postings use. Does nothing if snapshots are disabled.
+     *
+     * @throws IOException if the journal cannot be read or the snapshot cannot be written
+     */
+    public void snapshot() throws IOException {
+        if (snapshotter == null) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            // Never let the snapshot get ahead of what the journal holds on disk
+            long upTo = sync();
+            if (upTo == snapshotSequence && snapshotCount > 0) {
+                return;
+            }
+            long start = System.nanoTime();
+            long reached = readRecords(snapshotSequence, upTo,
+                    (recordSequence, type, accountId, toAccountId, cents) ->
+                            applyTo(snapshotBalances, recordSequence, type, accountId, toAccountId, cents));
+            if (reached != upTo) {
+                throw new IOException("Journal ended at sequence " + reached + " while snapshotting up to " + upTo);
+            }
+            snapshotSequence = upTo;
+            lastSnapshotBytes = BalanceSnapshot.write(snapshotPath, upTo, snapshotBalances);
+            lastSnapshotNanos = System.nanoTime() - start;
+            snapshotCount++;
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error writing balance snapshot: " + e.getMessage());
+        }
+    }
+
+    private void writeHeader() {
+        region.putInt(0, MAGIC);
+        region.putInt(4, VERSION);
+        region.putInt(8, RECORD_SIZE);
+        region.position(RECORD_SIZE);
+        force();
+    }
+
+    /**
+     * Maps the region that contains the given offset and positions it there.
+     */
+    private void map(long offset) throws IOException {
+        regionStart = offset / regionSize * regionSize;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+        region.order(ByteOrder.LITTLE_ENDIAN);
+        region.position((int) (offset - regionStart));
+        syncedPosition = region.position();
+    }
+
+    /**
+     * Appends one record and forces the journal if the sync batch is full. Must be
+     * called with the lock held, after the posting has been validated.
+     */
+    private void append(byte type, int accountId, int toAccountId, long cents) {
+        try {
+            if (region.remaining() < RECORD_SIZE) {
+                force();
+                map(regionStart + regionSize);
+            }
+            scratch.clear();
+            scratch.putLong(sequence + 1)
+                   .putLong(System.currentTimeMillis())
+                   .putInt(accountId)
+                   .putInt(toAccountId)
+                   .putLong(cents)
+                   .put(type)
+                   .put((byte) 0).put((byte) 0).put((byte) 0);
+            crc.reset();
+            crc.update(scratch.array(), 0, RECORD_SIZE - 4);
+            scratch.putInt((int) crc.getValue());
+            region.put(scratch.array());
+            sequence++;
+            if (++unsyncedRecords >= syncEveryRecords && syncEveryRecords > 0) {
+                force();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error appending to the journal", e);
+        }
+    }
+
+    private void force() {
+        long start = System.nanoTime();
+        // Only the pages written since the last force, not the whole region
+        region.force(syncedPosition, region.position() - syncedPosition);
+        syncedPosition = region.position();
+        unsyncedRecords = 0;
+        syncCount++;
+        syncLatency.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Forces every record appended so far to disk.
+     *
+     * @return the sequence number of the last record forced, read under the same lock
+     *         hold, so that every record up to it is on disk
+     */
+    public long sync() {
+        lock.lock();
+        try {
+            if (unsyncedRecords > 0 && !closed) {
+                force();
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            System.err.println("Error syncing the journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens an account under the next unused account ID.
+     *
+     * @param initialBalance the opening balance
+     * @return the outcome, carrying the new account ID
+     */
+    public PostingResult openAccount(Money initialBalance) {
+        lock.lock();
+        try {
+            return openAccount(maxAccountId + 1, initialBalance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens an account in the journal with an initial balance.
+     *
+     * @param accountId the account ID
+     * @param initialBalance the opening balance
+     * @return the outcome; FAILED if the account is already open
+     */
+    public PostingResult openAccount(int accountId, Money initialBalance) {
+        long cents = toCents(initialBalance);
+        lock.lock();
+        try {
+            if (closed || cents < 0 || balances.containsKey(accountId)) {
+                return new PostingResult(PostingResult.Status.FAILED, accountId, initialBalance, closed
+                        ? "Posting failed. The journal is closed."
+                        : cents < 0 ? "Account failed. Opening balance must be a " + Money.SYSTEM_CURRENCY + " amount."
+                                    : "Account failed. Account ID already exists: " + accountId);
+            }
+            append(OPEN, accountId, 0, cents);
+            balances.put(accountId, cents);
+            maxAccountId = Math.max(maxAccountId, accountId);
+        } finally {
+            lock.unlock();
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, accountId, initialBalance, "Account opened.");
+    }
+
+    /**
+     * Gets the balance of an account.
+     *
+     * @param accountId the account ID
+     * @return the balance in cents, or -1 if the account does not exist
+     */
+    public long getBalanceCents(int accountId) {
+        lock.lock();
+        try {
+            return balances.get(accountId, -1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount) {
+        long cents = toCents(amount);
+        lock.lock();
+        try {
+            if (cents <= 0 || closed) {
+                return rejected(accountId, amount, cents);
+            }
+            if (!balances.containsKey(accountId)) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount,
+                        "Deposit failed. Account ID may not exist.");
+            }
+            long balance = Math.addExact(balances.get(accountId, 0), cents);
+            append(DEPOSIT, accountId, 0, cents);
+            balances.put(accountId, balance);
+        } finally {
+            lock.unlock();
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, "Deposit successful.");
+    }
+
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount) {
+        long cents = toCents(amount);
+        lock.lock();
+        try {
+            if (cents <= 0 || closed) {
+                return rejected(accountId, amount, cents);
+            }
+            long balance = balances.get(accountId, -1);
+            if (balance < 0) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount,
+                        "Withdrawal failed. Account ID may not exist.");
+            }
+            if (balance < cents) {
+                return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, accountId, amount,
+                        "Withdrawal failed. Insufficient funds in Account ID: " + accountId);
+            }
+            append(WITHDRAWAL, accountId, 0, cents);
+            balances.put(accountId, balance - cents);
+        } finally {
+            lock.unlock();
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, "Withdrawal successful.");
+    }
+
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount) {
+        long cents = toCents(amount);
+        if (fromAccountId == toAccountId) {
+            return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                    "Transfer failed. Source and destination accounts are the same.");
+        }
+        lock.lock();
+        try {
+            if (cents <= 0 || closed) {
+                return rejected(fromAccountId, amount, cents);
+            }
+            long fromBalance = balances.get(fromAccountId, -1);
+            if (fromBalance < 0) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                        "Transfer failed. Source Account ID may not exist.");
+            }
+            if (!balances.containsKey(toAccountId)) {
+                return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                        "Transfer failed. Destination Account ID may not exist.");
+            }
+            if (fromBalance < cents) {
+                return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, fromAccountId, amount,
+                        "Transfer failed. Insufficient funds in Account ID: " + fromAccountId);
+            }
+            long toBalance = Math.addExact(balances.get(toAccountId, 0), cents);
+            append(TRANSFER, fromAccountId, toAccountId, cents);
+            balances.put(fromAccountId, fromBalance - cents);
+            balances.put(toAccountId, toBalance);
+        } finally {
+            lock.unlock();
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, fromAccountId, amount, "Transfer successful.");
+    }
+
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "deposit", accountId, amount,
+                () -> postDeposit(accountId, amount));
+    }
+
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "withdrawal", accountId, amount,
+                () -> postWithdrawal(accountId, amount));
+    }
+
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey) {
+        return idempotencyIndex.execute(idempotencyKey, "transfer to " + toAccountId, fromAccountId, amount,
+                () -> postTransfer(fromAccountId, toAccountId, amount));
+    }
+
+    /**
+     * Forces the journal to disk, writes a final snapshot if snapshots are enabled
+     * and closes the journal. Later postings fail.
+     */
+    @Override
+    public void close() {
+        if (syncer != null) {
+            syncer.shutdown();
+        }
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!closed) {
+                snapshotQuietly();
+            }
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            force();
+            closed = true;
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the journal: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of records in the journal.
+     *
+     * @return the last sequence number written
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of records replayed when the journal was opened, which
+     * excludes those already covered by the snapshot.
+     *
+     * @return the recovered record count
+     */
+    public long getRecoveredRecords() {
+        return recoveredRecords;
+    }
+
+    /**
+     * Gets how long opening the journal took, loading the snapshot and replaying the
+     * records after it included.
+     *
+     * @return the recovery time in nanoseconds
+     */
+    public long getRecoveryNanos() {
+        return recoveryNanos;
+    }
+
+    /**
+     * Gets how long loading the snapshot took when the journal was opened.
+     *
+     * @return the snapshot load time in nanoseconds, or 0 if there was no snapshot
+     */
+    public long getSnapshotLoadNanos() {
+        return snapshotLoadNanos;
+    }
+
+    /**
+     * Gets the number of snapshots written since the journal was opened.
+     *
+     * @return the snapshot count
+     */
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * Gets the size of the last snapshot written.
+     *
+     * @return the size in bytes, or 0 if none was written
+     */
+    public long getLastSnapshotBytes() {
+        return lastSnapshotBytes;
+    }
+
+    /**
+     * Gets how long the last snapshot took to bring forward and write.
+     *
+     * @return the duration in nanoseconds, or 0 if none was written
+     */
+    public long getLastSnapshotNanos() {
+        return lastSnapshotNanos;
+    }
+
+    /**
+     * Gets the number of times the journal was forced to disk.
+     *
+     * @return the sync count
+     */
+    public long getSyncCount() {
+        lock.lock();
+        try {
+            return syncCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the time each force to disk took.
+     *
+     * @return the sync latency histogram
+     */
+    public LatencyHistogram getSyncLatency() {
+        return syncLatency;
+    }
+
+    // Amounts are kept as minor units of the system currency
+    private static long toCents(Money amount) {
+        return amount.getCurrency() == Money.SYSTEM_CURRENCY ? amount.getMinorUnits() : -1;
+    }
+
+    private static PostingResult rejected(int accountId, Money amount, long cents) {
+        return new PostingResult(PostingResult.Status.FAILED, accountId, amount, cents <= 0
+                ? "Posting failed. Amount must be a positive " + Money.SYSTEM_CURRENCY + " amount."
+                : "Posting failed. The journal is closed.");
+    }
+}
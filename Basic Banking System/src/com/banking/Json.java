@@ -0,0 +1,215 @@
+package com.banking;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Json reads and writes the flat JSON objects used by the HTTP API. Only what the
+ * API needs is supported: request bodies are single objects whose values are
+ * strings, numbers, booleans or null, and every value is returned as its text.
+ */
+final class Json {
+
+    private Json() {
+    }
+
+    /**
+     * Parses a flat JSON object.
+     *
+     * @param text the JSON text
+     * @return the members in document order; null values map to null
+     * @throws IllegalArgumentException if the text is not a flat JSON object
+     */
+    static Map<String, String> parseObject(String text) {
+        Map<String, String> members = new LinkedHashMap<>();
+        Parser parser = new Parser(text);
+        parser.expect('{');
+        if (!parser.consume('}')) {
+            do {
+                String name = parser.string();
+                parser.expect(':');
+                members.put(name, parser.value());
+            } while (parser.consume(','));
+            parser.expect('}');
+        }
+        parser.end();
+        return members;
+    }
+
+    /**
+     * Quotes and escapes a string value.
+     *
+     * @param value the value, or null
+     * @return the JSON literal
+     */
+    static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * Writes an account as a JSON object.
+     *
+     * @param account the account
+     * @return the JSON text
+     */
+    static String account(Account account) {
+        return "{\"accountId\":" + account.getAccountId()
+                + ",\"customerId\":" + account.getCustomerId()
+                + ",\"accountType\":" + quote(account.getAccountType())
+                + ",\"balance\":\"" + account.getBalance() + "\"}";
+    }
+
+    /**
+     * Writes a transaction as a JSON object.
+     *
+     * @param transaction the transaction
+     * @return the JSON text
+     */
+    static String transaction(Transaction transaction) {
+        return "{\"transactionId\":" + transaction.getTransactionId()
+                + ",\"accountId\":" + transaction.getAccountId()
+                + ",\"transactionType\":" + quote(transaction.getTransactionType().getLabel())
+                + ",\"amount\":\"" + transaction.getAmount() + "\""
+                + (transaction.getBalanceAfter() == null ? ""
+                        : ",\"balanceAfter\":\"" + transaction.getBalanceAfter() + "\""
+                        + ",\"sequenceNumber\":" + transaction.getSequenceNumber())
+                + ",\"transactionDate\":" + quote(transaction.getTransactionDate()) + "}";
+    }
+
+    /**
+     * A single pass over the JSON text.
+     */
+    private static final class Parser {
+
+        private final String text;
+        private int position;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private boolean consume(char c) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == c) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private void end() {
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("Unexpected trailing content");
+            }
+        }
+
+        private String value() {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                return string();
+            }
+            int start = position;
+            while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                throw error("Expected a string, number, boolean or null");
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder out = new StringBuilder();
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return out.toString();
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    break;
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n':
+                        out.append('\n');
+                        break;
+                    case 'r':
+                        out.append('\r');
+                        break;
+                    case 't':
+                        out.append('\t');
+                        break;
+                    case 'b':
+                        out.append('\b');
+                        break;
+                    case 'f':
+                        out.append('\f');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Truncated unicode escape");
+                        }
+                        out.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default:
+                        out.append(escaped);
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position);
+        }
+    }
+}
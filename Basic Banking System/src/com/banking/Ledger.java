@@ -0,0 +1,69 @@
+package com.banking;
+
+/**
+ * Ledger is the set of balance-moving operations offered by the banking system.
+ * {@link TransactionManagement} implements it directly against the database, and
+ * {@link InMemoryLedger} implements it in memory with write-through to the database,
+ * so callers can pick either mode without changing their code.
+ */
+public interface Ledger {
+
+    /**
+     * Deposits a specified amount into an account.
+     *
+     * @param accountId the ID of the account where funds will be deposited
+     * @param amount the amount to deposit
+     * @return the outcome of the deposit
+     */
+    PostingResult postDeposit(int accountId, Money amount);
+
+    /**
+     * Withdraws a specified amount from an account.
+     *
+     * @param accountId the ID of the account from which funds will be withdrawn
+     * @param amount the amount to withdraw
+     * @return the outcome of the withdrawal
+     */
+    PostingResult postWithdrawal(int accountId, Money amount);
+
+    /**
+     * Transfers a specified amount from one account to another.
+     *
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @return the outcome of the transfer
+     */
+    PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount);
+
+    /**
+     * Deposits a specified amount into an account at most once per idempotency key.
+     *
+     * @param accountId the ID of the account where funds will be deposited
+     * @param amount the amount to deposit
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the deposit, or of the earlier deposit with the same key
+     */
+    PostingResult postDeposit(int accountId, Money amount, String idempotencyKey);
+
+    /**
+     * Withdraws a specified amount from an account at most once per idempotency key.
+     *
+     * @param accountId the ID of the account from which funds will be withdrawn
+     * @param amount the amount to withdraw
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the withdrawal, or of the earlier withdrawal with the same key
+     */
+    PostingResult postWithdrawal(int accountId, Money amount, String idempotencyKey);
+
+    /**
+     * Transfers a specified amount from one account to another at most once per idempotency key.
+     *
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the transfer, or of the earlier transfer with the same key
+     */
+    PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey);
+}
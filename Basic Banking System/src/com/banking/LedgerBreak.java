@@ -0,0 +1,109 @@
+package com.banking;
+
+/**
+ * LedgerBreak describes one place where an account's ledger does not add up, as
+ * found by {@link LedgerReconciler}: a Transaction row whose running balance does not
+ * follow from the row before it, a missing row in the account's sequence, or an
+ * account balance that differs from its latest row.
+ */
+public class LedgerBreak {
+
+    /**
+     * What does not add up.
+     */
+    public enum Reason {
+        // The row's balance_after is not the previous row's balance_after plus or minus its amount
+        BALANCE_MISMATCH,
+        // The row the sequence number points back to, or the account's latest row, does not exist
+        SEQUENCE_GAP,
+        // Account.balance differs from the balance_after of the account's latest row
+        ACCOUNT_MISMATCH
+    }
+
+    private final Reason reason;
+    private final int accountId;
+    private final int transactionId;
+    private final long sequenceNumber;
+    private final Money expectedBalance;
+    private final Money actualBalance;
+
+    /**
+     * Creates a ledger break.
+     *
+     * @param reason what does not add up
+     * @param accountId the ID of the account
+     * @param transactionId the ID of the Transaction row concerned, or 0 if the row is missing
+     * @param sequenceNumber the sequence number concerned
+     * @param expectedBalance the balance the ledger implies, or null if it cannot be derived
+     * @param actualBalance the balance found, or null if none was found
+     */
+    public LedgerBreak(Reason reason, int accountId, int transactionId, long sequenceNumber,
+                       Money expectedBalance, Money actualBalance) {
+        this.reason = reason;
+        this.accountId = accountId;
+        this.transactionId = transactionId;
+        this.sequenceNumber = sequenceNumber;
+        this.expectedBalance = expectedBalance;
+        this.actualBalance = actualBalance;
+    }
+
+    /**
+     * Gets what does not add up.
+     *
+     * @return the reason
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the ID of the account.
+     *
+     * @return the account ID
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the ID of the Transaction row concerned.
+     *
+     * @return the transaction ID, or 0 if the row is missing
+     */
+    public int getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Gets the sequence number concerned.
+     *
+     * @return the sequence number
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Gets the balance the ledger implies.
+     *
+     * @return the expected balance, or null if it cannot be derived
+     */
+    public Money getExpectedBalance() {
+        return expectedBalance;
+    }
+
+    /**
+     * Gets the balance found.
+     *
+     * @return the actual balance, or null if none was found
+     */
+    public Money getActualBalance() {
+        return actualBalance;
+    }
+
+    @Override
+    public String toString() {
+        return "LedgerBreak [" + reason + ", accountId=" + accountId + ", transactionId=" + transactionId
+                + ", sequence=" + sequenceNumber + ", expected=" + expectedBalance + ", actual=" + actualBalance + "]";
+    }
+}
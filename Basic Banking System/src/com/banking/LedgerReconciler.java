@@ -0,0 +1,333 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * LedgerReconciler checks that Account balances agree with the Transaction table
+ * without summing any account's history. Every Transaction row carries the running
+ * balance of its account after the posting and its position in the account's
+ * history, so each row only has to agree with the row before it:
+ *
+ *   balance_after = previous balance_after + amount   (minus for withdrawals and transfers out)
+ *
+ * and each account's balance only has to equal the balance_after of its latest row.
+ *
+ * {@link #reconcile} works incrementally. It reads the rows added since the
+ * checkpoint in the Reconciliation_Checkpoint table, in chunks of {@code chunkSize}
+ * rows, and checks each row against its predecessor, found in the same chunk or by
+ * one indexed lookup. It then checks the balance of every account touched. Breaks are
+ * written to the Reconciliation_Break table, and the checkpoint is advanced in the
+ * same transaction. Rows younger than {@code settleMillis} are left for the next
+ * run, so that postings still being committed are not skipped, and so are the rows
+ * from the first striped deposit not yet merged (see {@link StripedBalances}) on.
+ * Rows written before running balances were recorded are not checked. The first
+ * recorded row of an account starts its chain.
+ *
+ * {@link #auditAccount} checks a single account with one indexed query.
+ */
+public class LedgerReconciler {
+
+    private static final String CHECKPOINT_NAME = "ledger";
+    private static final int MAX_BREAKS_KEPT = 100;
+
+    private static final String CHECKPOINT_QUERY =
+            "SELECT last_transaction_id FROM Reconciliation_Checkpoint WHERE checkpoint_name = ?";
+    private static final String SAVE_CHECKPOINT_QUERY =
+            "INSERT INTO Reconciliation_Checkpoint (checkpoint_name, last_transaction_id) VALUES (?, ?)"
+            + " ON DUPLICATE KEY UPDATE last_transaction_id = VALUES(last_transaction_id)";
+    private static final String ROWS_QUERY = "SELECT transaction_id, account_id, transaction_type, amount,"
+            + " transaction_date, balance_after, sequence_no, bucket_no FROM Transaction"
+            + " WHERE transaction_id > ? ORDER BY transaction_id LIMIT ?";
+    private static final String PREDECESSOR_QUERY =
+            "SELECT balance_after FROM Transaction WHERE account_id = ? AND sequence_no = ?";
+    private static final String ACCOUNT_QUERY = "SELECT balance, last_sequence FROM Account WHERE account_id = ?";
+    // One statement, so the account and its latest row are read from the same snapshot
+    private static final String AUDIT_QUERY = "SELECT a.balance, a.last_sequence, t.transaction_id, t.balance_after"
+            + " FROM Account a LEFT JOIN Transaction t"
+            + " ON t.account_id = a.account_id AND t.sequence_no = a.last_sequence WHERE a.account_id = ?";
+    private static final String BREAK_QUERY = "INSERT INTO Reconciliation_Break"
+            + " (account_id, transaction_id, sequence_no, expected_balance, actual_balance, reason)"
+            + " VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final int chunkSize;
+    private final long settleMillis;
+
+    /**
+     * Creates a reconciler configured from the "banking.reconcile.*" system properties:
+     * chunkSize (10000 rows) and settleMillis (5000).
+     */
+    public LedgerReconciler() {
+        this(Integer.getInteger("banking.reconcile.chunkSize", 10_000),
+             Long.getLong("banking.reconcile.settleMillis", 5_000));
+    }
+
+    /**
+     * Creates a reconciler.
+     *
+     * @param chunkSize the number of Transaction rows checked and checkpointed together
+     * @param settleMillis how old a row must be before it is checked
+     */
+    public LedgerReconciler(int chunkSize, long settleMillis) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        this.settleMillis = settleMillis;
+    }
+
+    /**
+     * Checks the Transaction rows added on every shard since the last checkpoint.
+     *
+     * @return the outcome
+     */
+    public ReconciliationReport reconcile() {
+        long start = System.nanoTime();
+        Run run = new Run(new Timestamp(System.currentTimeMillis() - settleMillis));
+        ShardMap shards = DatabaseConnection.getShardMap();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            try (Connection connection = shards.getConnection(shard)) {
+                connection.setAutoCommit(false);
+                try {
+                    reconcileShard(connection, run);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                // The chunks already committed stay checkpointed; the rest is checked next time
+                System.err.println("Error reconciling shard " + shard + ": " + e.getMessage());
+            }
+        }
+        return new ReconciliationReport(run.rowsChecked, run.accountsChecked, run.breakCount, run.breaks,
+                System.nanoTime() - start);
+    }
+
+    /**
+     * Checks that an account's balance equals the running balance of its latest Transaction row.
+     *
+     * @param accountId the ID of the account
+     * @return the break, or null if the balance agrees, the account has no recorded
+     *         history yet, or the account does not exist
+     * @throws SQLException if the account cannot be read
+     */
+    public LedgerBreak auditAccount(int accountId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId);
+             PreparedStatement audit = connection.prepareStatement(AUDIT_QUERY)) {
+            audit.setInt(1, accountId);
+            try (ResultSet rs = audit.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                Money balance = Money.read(rs, "balance");
+                long sequence = rs.getLong("last_sequence");
+                int transactionId = rs.getInt("transaction_id");
+                Money balanceAfter = Money.read(rs, "balance_after");
+                if (sequence == 0) {
+                    return null;
+                }
+                if (balanceAfter == null) {
+                    return new LedgerBreak(LedgerBreak.Reason.SEQUENCE_GAP, accountId, 0, sequence, balance, null);
+                }
+                return balanceAfter.compareTo(balance) == 0 ? null : new LedgerBreak(
+                        LedgerBreak.Reason.ACCOUNT_MISMATCH, accountId, transactionId, sequence, balanceAfter, balance);
+            }
+        }
+    }
+
+    private void reconcileShard(Connection connection, Run run) throws SQLException {
+        int checkpoint = readCheckpoint(connection);
+        try (PreparedStatement rows = connection.prepareStatement(ROWS_QUERY);
+             PreparedStatement predecessor = connection.prepareStatement(PREDECESSOR_QUERY);
+             PreparedStatement account = connection.prepareStatement(ACCOUNT_QUERY);
+             PreparedStatement saveBreak = connection.prepareStatement(BREAK_QUERY);
+             PreparedStatement saveCheckpoint = connection.prepareStatement(SAVE_CHECKPOINT_QUERY)) {
+            while (true) {
+                // The latest row checked per account in this chunk
+                Map<Integer, Tail> tails = new HashMap<>();
+                List<LedgerBreak> found = new ArrayList<>();
+                int read = 0;
+                boolean settled = true;
+                rows.setInt(1, checkpoint);
+                rows.setInt(2, chunkSize);
+                try (ResultSet rs = rows.executeQuery()) {
+                    while (rs.next()) {
+                        read++;
+                        if (!rs.getTimestamp("transaction_date").before(run.settledBefore)) {
+                            // Rows after this one may have smaller IDs still uncommitted; stop here
+                            settled = false;
+                            break;
+                        }
+                        Money balanceAfter = Money.read(rs, "balance_after");
+                        if (balanceAfter == null && rs.getObject("bucket_no") != null) {
+                            // A striped deposit not yet merged; its running balance is still to come
+                            settled = false;
+                            break;
+                        }
+                        checkpoint = rs.getInt("transaction_id");
+                        if (balanceAfter == null) {
+                            continue;
+                        }
+                        run.rowsChecked++;
+                        int accountId = rs.getInt("account_id");
+                        long sequence = rs.getLong("sequence_no");
+                        LedgerBreak broken = checkRow(predecessor, tails.get(accountId), checkpoint, accountId,
+                                sequence, TransactionType.fromCode(rs.getByte("transaction_type")),
+                                Money.read(rs, "amount"), balanceAfter);
+                        if (broken != null) {
+                            found.add(broken);
+                        }
+                        Tail tail = tails.get(accountId);
+                        if (tail == null || tail.sequence < sequence) {
+                            tails.put(accountId, new Tail(sequence, balanceAfter));
+                        }
+                    }
+                }
+                for (Map.Entry<Integer, Tail> tail : tails.entrySet()) {
+                    LedgerBreak broken = checkAccount(account, tail.getKey(), tail.getValue());
+                    if (broken != null) {
+                        found.add(broken);
+                    }
+                }
+                run.accountsChecked += tails.size();
+                for (LedgerBreak broken : found) {
+                    addBreak(saveBreak, broken);
+                    run.add(broken);
+                }
+                if (!found.isEmpty()) {
+                    saveBreak.executeBatch();
+                }
+                saveCheckpoint.setString(1, CHECKPOINT_NAME);
+                saveCheckpoint.setInt(2, checkpoint);
+                saveCheckpoint.executeUpdate();
+                connection.commit();
+                if (!settled || read < chunkSize) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int readCheckpoint(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(CHECKPOINT_QUERY)) {
+            statement.setString(1, CHECKPOINT_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Checks a row against the row before it in its account's sequence.
+     *
+     * @param tail the latest row of the account already checked in this chunk, or null
+     * @return the break, or null if the row follows from its predecessor or starts the chain
+     */
+    private static LedgerBreak checkRow(PreparedStatement predecessor, Tail tail, int transactionId, int accountId,
+                                        long sequence, TransactionType transactionType, Money amount, Money balanceAfter)
+            throws SQLException {
+        if (sequence <= 1) {
+            return null;
+        }
+        Money previous;
+        if (tail != null && tail.sequence == sequence - 1) {
+            previous = tail.balance;
+        } else {
+            predecessor.setInt(1, accountId);
+            predecessor.setLong(2, sequence - 1);
+            try (ResultSet rs = predecessor.executeQuery()) {
+                previous = rs.next() ? Money.read(rs, "balance_after") : null;
+            }
+        }
+        if (previous == null) {
+            return new LedgerBreak(LedgerBreak.Reason.SEQUENCE_GAP, accountId, transactionId, sequence - 1,
+                    null, balanceAfter);
+        }
+        Money expected = transactionType.isDebit() ? previous.minus(amount) : previous.plus(amount);
+        return expected.compareTo(balanceAfter) == 0 ? null : new LedgerBreak(
+                LedgerBreak.Reason.BALANCE_MISMATCH, accountId, transactionId, sequence, expected, balanceAfter);
+    }
+
+    /**
+     * Compares an account's balance with its latest checked row, if that row is still its latest.
+     */
+    private static LedgerBreak checkAccount(PreparedStatement account, int accountId, Tail tail) throws SQLException {
+        account.setInt(1, accountId);
+        try (ResultSet rs = account.executeQuery()) {
+            // A closed account has nothing left to compare; a later sequence is checked with its own row
+            if (!rs.next() || rs.getLong("last_sequence") != tail.sequence) {
+                return null;
+            }
+            Money balance = Money.read(rs, "balance");
+            return balance.compareTo(tail.balance) == 0 ? null : new LedgerBreak(
+                    LedgerBreak.Reason.ACCOUNT_MISMATCH, accountId, 0, tail.sequence, tail.balance, balance);
+        }
+    }
+
+    private static void addBreak(PreparedStatement statement, LedgerBreak broken) throws SQLException {
+        statement.setInt(1, broken.getAccountId());
+        if (broken.getTransactionId() == 0) {
+            statement.setNull(2, Types.INTEGER);
+        } else {
+            statement.setInt(2, broken.getTransactionId());
+        }
+        statement.setLong(3, broken.getSequenceNumber());
+        bindNullable(statement, 4, broken.getExpectedBalance());
+        bindNullable(statement, 5, broken.getActualBalance());
+        statement.setString(6, broken.getReason().name());
+        statement.addBatch();
+    }
+
+    private static void bindNullable(PreparedStatement statement, int index, Money amount) throws SQLException {
+        if (amount == null) {
+            statement.setNull(index, Types.DECIMAL);
+        } else {
+            Money.bind(statement, index, amount);
+        }
+    }
+
+    /**
+     * The sequence and running balance of an account's latest checked row.
+     */
+    private static final class Tail {
+
+        private final long sequence;
+        private final Money balance;
+
+        private Tail(long sequence, Money balance) {
+            this.sequence = sequence;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * Counters of one reconciliation run across all shards.
+     */
+    private static final class Run {
+
+        private final Timestamp settledBefore;
+        private final List<LedgerBreak> breaks = new ArrayList<>();
+        private long rowsChecked;
+        private long accountsChecked;
+        private long breakCount;
+
+        private Run(Timestamp settledBefore) {
+            this.settledBefore = settledBefore;
+        }
+
+        private void add(LedgerBreak broken) {
+            breakCount++;
+            if (breaks.size() < MAX_BREAKS_KEPT) {
+                breaks.add(broken);
+            }
+        }
+    }
+}
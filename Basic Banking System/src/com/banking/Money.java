@@ -0,0 +1,280 @@
+package com.banking;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Currency;
+
+/**
+ * Money is an exact amount of a currency, stored as a whole number of minor units
+ * (cents for USD) in a long. Unlike double it never drifts when amounts are added up,
+ * and its arithmetic is plain long arithmetic with overflow checks.
+ *
+ * The Account and Transaction tables store amounts as DECIMAL without a currency
+ * column, so every stored amount is in the system currency, set with the
+ * "banking.currency" system property (USD by default).
+ */
+public final class Money implements Comparable<Money> {
+
+    /**
+     * The currency of every amount stored in the database.
+     */
+    public static final Currency SYSTEM_CURRENCY =
+            Currency.getInstance(System.getProperty("banking.currency", "USD"));
+
+    /**
+     * Zero in the system currency.
+     */
+    public static final Money ZERO = new Money(0, SYSTEM_CURRENCY);
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000};
+
+    private final long minorUnits;
+    private final Currency currency;
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    /**
+     * Creates an amount in the system currency from minor units.
+     *
+     * @param minorUnits the amount in minor units, e.g. cents
+     * @return the amount
+     */
+    public static Money ofMinor(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(minorUnits, SYSTEM_CURRENCY);
+    }
+
+    /**
+     * Creates an amount from minor units.
+     *
+     * @param minorUnits the amount in minor units, e.g. cents
+     * @param currency the currency
+     * @return the amount
+     */
+    public static Money ofMinor(long minorUnits, Currency currency) {
+        scaleOf(currency);
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * Creates an amount in the system currency from a decimal value.
+     *
+     * @param amount the amount, e.g. 12.34
+     * @return the amount
+     * @throws ArithmeticException if the amount has more decimal places than the currency allows
+     */
+    public static Money of(BigDecimal amount) {
+        return of(amount, SYSTEM_CURRENCY);
+    }
+
+    /**
+     * Creates an amount from a decimal value.
+     *
+     * @param amount the amount, e.g. 12.34
+     * @param currency the currency
+     * @return the amount
+     * @throws ArithmeticException if the amount has more decimal places than the currency allows
+     */
+    public static Money of(BigDecimal amount, Currency currency) {
+        return new Money(amount.setScale(scaleOf(currency), RoundingMode.UNNECESSARY)
+                .unscaledValue().longValueExact(), currency);
+    }
+
+    /**
+     * Parses a decimal string such as "12.34" as an amount in the system currency.
+     *
+     * @param amount the amount text
+     * @return the amount
+     * @throws NumberFormatException if the text is not a number
+     * @throws ArithmeticException if the amount has more decimal places than the currency allows
+     */
+    public static Money parse(String amount) {
+        return of(new BigDecimal(amount.trim()));
+    }
+
+    /**
+     * Binds an amount to a DECIMAL statement parameter.
+     *
+     * @param statement the statement
+     * @param index the parameter index
+     * @param amount the amount, which must be in the system currency
+     * @throws SQLException if the parameter cannot be set
+     */
+    public static void bind(PreparedStatement statement, int index, Money amount) throws SQLException {
+        if (amount.currency != SYSTEM_CURRENCY) {
+            throw new IllegalArgumentException("Only " + SYSTEM_CURRENCY + " amounts can be stored, got " + amount.currency);
+        }
+        statement.setBigDecimal(index, BigDecimal.valueOf(amount.minorUnits, scaleOf(SYSTEM_CURRENCY)));
+    }
+
+    /**
+     * Reads a DECIMAL column as an amount in the system currency. Values with more
+     * decimal places than the currency allows are rounded half-even.
+     *
+     * @param rs the result set, positioned on a row
+     * @param column the column name
+     * @return the amount, or null if the column is SQL NULL
+     * @throws SQLException if the column cannot be read
+     */
+    public static Money read(ResultSet rs, String column) throws SQLException {
+        BigDecimal value = rs.getBigDecimal(column);
+        if (value == null) {
+            return null;
+        }
+        return ofMinor(value.setScale(scaleOf(SYSTEM_CURRENCY), RoundingMode.HALF_EVEN)
+                .unscaledValue().longValueExact());
+    }
+
+    private static int scaleOf(Currency currency) {
+        int scale = currency.getDefaultFractionDigits();
+        if (scale < 0 || scale >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported currency: " + currency);
+        }
+        return scale;
+    }
+
+    /**
+     * Gets the amount in minor units, e.g. cents.
+     *
+     * @return the minor units
+     */
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * Gets the currency.
+     *
+     * @return the currency
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Adds another amount of the same currency.
+     *
+     * @param other the amount to add
+     * @return the sum
+     * @throws ArithmeticException if the result overflows
+     */
+    public Money plus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * Subtracts another amount of the same currency.
+     *
+     * @param other the amount to subtract
+     * @return the difference
+     * @throws ArithmeticException if the result overflows
+     */
+    public Money minus(Money other) {
+        requireSameCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * Negates the amount.
+     *
+     * @return the negated amount
+     */
+    public Money negate() {
+        return new Money(Math.negateExact(minorUnits), currency);
+    }
+
+    /**
+     * Tells whether the amount is greater than zero.
+     *
+     * @return true if positive
+     */
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    /**
+     * Tells whether the amount is less than zero.
+     *
+     * @return true if negative
+     */
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    /**
+     * Converts the amount to a BigDecimal with the currency's scale.
+     *
+     * @return the decimal amount
+     */
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, scaleOf(currency));
+    }
+
+    private void requireSameCurrency(Money other) {
+        if (!currency.equals(other.currency)) {
+            throw new IllegalArgumentException("Currency mismatch: " + currency + " and " + other.currency);
+        }
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        requireSameCurrency(other);
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Money)) {
+            return false;
+        }
+        Money other = (Money) obj;
+        return minorUnits == other.minorUnits && currency.equals(other.currency);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(minorUnits) + currency.hashCode();
+    }
+
+    /**
+     * Formats the amount with the currency symbol, e.g. "$12.34".
+     *
+     * @return the formatted amount
+     */
+    public String format() {
+        String plain = toString();
+        return plain.startsWith("-") ? "-" + currency.getSymbol() + plain.substring(1) : currency.getSymbol() + plain;
+    }
+
+    /**
+     * Returns the plain decimal amount, e.g. "12.34".
+     */
+    @Override
+    public String toString() {
+        int scale = scaleOf(currency);
+        if (scale == 0) {
+            return Long.toString(minorUnits);
+        }
+        long factor = POWERS_OF_TEN[scale];
+        long whole = Math.abs(minorUnits / factor);
+        long fraction = Math.abs(minorUnits % factor);
+        StringBuilder text = new StringBuilder(24);
+        if (minorUnits < 0) {
+            text.append('-');
+        }
+        text.append(whole).append('.');
+        for (long digit = factor / 10; digit > fraction && digit > 1; digit /= 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+}
@@ -0,0 +1,184 @@
+package com.banking;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OperationMetrics counts the outcomes of one kind of banking operation and
+ * records how long each call took. Outcomes fall into three groups: successes,
+ * rejections (the request was valid but refused, such as an unknown account or
+ * insufficient funds) and failures (the database or the code went wrong).
+ * Retries are counted separately, once per extra attempt.
+ *
+ * Recording is lock-free and allocation-free, like {@link LatencyHistogram}.
+ */
+public class OperationMetrics {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * Creates the metrics for one operation.
+     *
+     * @param name the operation name used in the metrics dump, e.g. "deposit"
+     */
+    public OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records a call that succeeded.
+     *
+     * @param startNanos the System.nanoTime() at which the call started
+     */
+    public void success(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        successes.increment();
+    }
+
+    /**
+     * Records a call that was refused for a business reason.
+     *
+     * @param startNanos the System.nanoTime() at which the call started
+     */
+    public void rejected(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        rejections.increment();
+    }
+
+    /**
+     * Records a call that failed with an error.
+     *
+     * @param startNanos the System.nanoTime() at which the call started
+     */
+    public void failure(long startNanos) {
+        latency.record(System.nanoTime() - startNanos);
+        failures.increment();
+    }
+
+    /**
+     * Records one retry of a call that is still in progress.
+     */
+    public void retry() {
+        retries.increment();
+    }
+
+    /**
+     * Records a posting by its status. A DUPLICATE counts as a success, since the
+     * client's request was carried out, just not by this call.
+     *
+     * @param startNanos the System.nanoTime() at which the posting started
+     * @param result the outcome of the posting
+     * @return the result, so that callers can record and return in one step
+     */
+    public PostingResult record(long startNanos, PostingResult result) {
+        switch (result.getStatus()) {
+            case SUCCESS:
+            case DUPLICATE:
+                success(startNanos);
+                break;
+            case FAILED:
+            case UNLOGGED:
+                failure(startNanos);
+                break;
+            default:
+                rejected(startNanos);
+        }
+        return result;
+    }
+
+    /**
+     * Records an account operation by its status.
+     *
+     * @param startNanos the System.nanoTime() at which the operation started
+     * @param result the outcome of the operation
+     * @return the result, so that callers can record and return in one step
+     */
+    public AccountResult record(long startNanos, AccountResult result) {
+        switch (result.getStatus()) {
+            case SUCCESS:
+                success(startNanos);
+                break;
+            case FAILED:
+                failure(startNanos);
+                break;
+            default:
+                rejected(startNanos);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the operation name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the latency of every recorded call, whatever its outcome.
+     *
+     * @return the latency histogram
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the number of calls that succeeded.
+     *
+     * @return the success count
+     */
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    /**
+     * Gets the number of calls refused for a business reason.
+     *
+     * @return the rejection count
+     */
+    public long getRejectedCount() {
+        return rejections.sum();
+    }
+
+    /**
+     * Gets the number of calls that failed with an error.
+     *
+     * @return the failure count
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Gets the number of retries.
+     *
+     * @return the retry count
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * Clears all counters and the latency histogram.
+     */
+    public void reset() {
+        latency.reset();
+        successes.reset();
+        rejections.reset();
+        failures.reset();
+        retries.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + " [success=" + getSuccessCount() + ", rejected=" + getRejectedCount()
+                + ", failure=" + getFailureCount() + ", retries=" + getRetryCount() + ", " + latency + "]";
+    }
+}
@@ -0,0 +1,209 @@
+package com.banking;
+
+/**
+ * PoolConfig holds the tuning settings for the {@link ConnectionPool}.
+ * Every setting has a sensible default and can be overridden with a
+ * "banking.pool.*" system property.
+ */
+public class PoolConfig {
+
+    // Number of connections the pool tries to keep open at all times
+    private int minIdle = 2;
+
+    // Upper bound on the number of open connections (borrowed plus idle)
+    private int maxSize = 10;
+
+    // How long a caller waits for a free connection before giving up
+    private long acquireTimeoutMillis = 5_000;
+
+    // How long a surplus connection may sit idle before it is closed
+    private long idleTimeoutMillis = 300_000;
+
+    // How often the background evictor runs
+    private long evictionIntervalMillis = 30_000;
+
+    // Whether connections are checked with Connection.isValid before being handed out
+    private boolean validateOnBorrow = true;
+
+    // Timeout in seconds passed to Connection.isValid
+    private int validationTimeoutSeconds = 2;
+
+    // Number of prepared statements cached per connection; 0 disables the cache
+    private int statementCacheSize = 32;
+
+    /**
+     * Builds a configuration from the "banking.pool.*" system properties,
+     * falling back to the defaults for anything not set.
+     *
+     * @return the configuration
+     */
+    public static PoolConfig fromSystemProperties() {
+        PoolConfig config = new PoolConfig();
+        config.setMinIdle(Integer.getInteger("banking.pool.minIdle", config.getMinIdle()));
+        config.setMaxSize(Integer.getInteger("banking.pool.maxSize", config.getMaxSize()));
+        config.setAcquireTimeoutMillis(Long.getLong("banking.pool.acquireTimeoutMillis", config.getAcquireTimeoutMillis()));
+        config.setIdleTimeoutMillis(Long.getLong("banking.pool.idleTimeoutMillis", config.getIdleTimeoutMillis()));
+        config.setEvictionIntervalMillis(Long.getLong("banking.pool.evictionIntervalMillis", config.getEvictionIntervalMillis()));
+        config.setValidateOnBorrow(Boolean.parseBoolean(
+                System.getProperty("banking.pool.validateOnBorrow", String.valueOf(config.isValidateOnBorrow()))));
+        config.setValidationTimeoutSeconds(Integer.getInteger("banking.pool.validationTimeoutSeconds", config.getValidationTimeoutSeconds()));
+        config.setStatementCacheSize(Integer.getInteger("banking.pool.statementCacheSize", config.getStatementCacheSize()));
+        return config;
+    }
+
+    /**
+     * Gets the number of connections kept open while the pool is quiet.
+     *
+     * @return the minimum idle count
+     */
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * Sets the number of connections kept open while the pool is quiet.
+     *
+     * @param minIdle the minimum idle count
+     */
+    public void setMinIdle(int minIdle) {
+        if (minIdle < 0) {
+            throw new IllegalArgumentException("minIdle must not be negative");
+        }
+        this.minIdle = minIdle;
+    }
+
+    /**
+     * Gets the maximum number of open connections.
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum number of open connections.
+     *
+     * @param maxSize the maximum pool size
+     */
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets how long a caller waits for a connection.
+     *
+     * @return the acquire timeout in milliseconds
+     */
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a caller waits for a connection.
+     *
+     * @param acquireTimeoutMillis the acquire timeout in milliseconds
+     */
+    public void setAcquireTimeoutMillis(long acquireTimeoutMillis) {
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+    }
+
+    /**
+     * Gets how long a surplus idle connection is kept.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a surplus idle connection is kept.
+     *
+     * @param idleTimeoutMillis the idle timeout in milliseconds
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Gets how often the evictor runs.
+     *
+     * @return the eviction interval in milliseconds
+     */
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    /**
+     * Sets how often the evictor runs.
+     *
+     * @param evictionIntervalMillis the eviction interval in milliseconds
+     */
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        if (evictionIntervalMillis <= 0) {
+            throw new IllegalArgumentException("evictionIntervalMillis must be positive");
+        }
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    /**
+     * Tells whether connections are validated before being handed out.
+     *
+     * @return true if validation on borrow is enabled
+     */
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    /**
+     * Enables or disables validation on borrow.
+     *
+     * @param validateOnBorrow true to validate connections before use
+     */
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+
+    /**
+     * Gets the timeout used when validating a connection.
+     *
+     * @return the validation timeout in seconds
+     */
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    /**
+     * Sets the timeout used when validating a connection.
+     *
+     * @param validationTimeoutSeconds the validation timeout in seconds
+     */
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    /**
+     * Gets the number of prepared statements cached per connection.
+     *
+     * @return the statement cache size
+     */
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Sets the number of prepared statements cached per connection.
+     *
+     * @param statementCacheSize the statement cache size, or 0 to disable caching
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize must not be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
+    }
+}
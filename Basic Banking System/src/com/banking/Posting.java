@@ -0,0 +1,111 @@
+package com.banking;
+
+/**
+ * Posting represents one requested balance movement (a deposit, withdrawal or
+ * transfer) submitted to the {@link BatchPoster}.
+ */
+public class Posting {
+
+    /**
+     * The kinds of posting the banking system supports.
+     */
+    public enum Type {
+        DEPOSIT,
+        WITHDRAWAL,
+        TRANSFER
+    }
+
+    private final Type type;
+    private final int accountId;
+    private final int toAccountId;
+    private final Money amount;
+
+    private Posting(Type type, int accountId, int toAccountId, Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Posting amount must be positive: " + amount);
+        }
+        this.type = type;
+        this.accountId = accountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+
+    /**
+     * Creates a deposit posting.
+     *
+     * @param accountId the ID of the account to credit
+     * @param amount the amount to deposit
+     * @return the posting
+     */
+    public static Posting deposit(int accountId, Money amount) {
+        return new Posting(Type.DEPOSIT, accountId, 0, amount);
+    }
+
+    /**
+     * Creates a withdrawal posting.
+     *
+     * @param accountId the ID of the account to debit
+     * @param amount the amount to withdraw
+     * @return the posting
+     */
+    public static Posting withdrawal(int accountId, Money amount) {
+        return new Posting(Type.WITHDRAWAL, accountId, 0, amount);
+    }
+
+    /**
+     * Creates a transfer posting.
+     *
+     * @param fromAccountId the ID of the account to debit
+     * @param toAccountId the ID of the account to credit
+     * @param amount the amount to transfer
+     * @return the posting
+     */
+    public static Posting transfer(int fromAccountId, int toAccountId, Money amount) {
+        if (fromAccountId == toAccountId) {
+            throw new IllegalArgumentException("Cannot transfer an account to itself: " + fromAccountId);
+        }
+        return new Posting(Type.TRANSFER, fromAccountId, toAccountId, amount);
+    }
+
+    /**
+     * Gets the kind of posting.
+     *
+     * @return the posting type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gets the account the posting is made against; for a transfer this is the source account.
+     *
+     * @return the account ID
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the destination account of a transfer.
+     *
+     * @return the destination account ID, or 0 for deposits and withdrawals
+     */
+    public int getToAccountId() {
+        return toAccountId;
+    }
+
+    /**
+     * Gets the amount to post.
+     *
+     * @return the amount
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return "Posting [type=" + type + ", accountId=" + accountId +
+               (type == Type.TRANSFER ? ", toAccountId=" + toAccountId : "") + ", amount=" + amount + "]";
+    }
+}
@@ -0,0 +1,110 @@
+package com.banking;
+
+/**
+ * PostingResult describes the outcome of a deposit, withdrawal or transfer,
+ * so callers can react to it instead of parsing console output.
+ */
+public class PostingResult {
+
+    /**
+     * The possible outcomes of a posting.
+     */
+    public enum Status {
+        // The balance change and its ledger entry were committed
+        SUCCESS,
+        // The account (or one of the transfer accounts) does not exist
+        ACCOUNT_NOT_FOUND,
+        // The debited account does not hold enough funds
+        INSUFFICIENT_FUNDS,
+        // A database error occurred and nothing was committed
+        FAILED,
+        // The idempotency key was already used by a committed posting, so nothing was applied again
+        DUPLICATE,
+        // The debit would take the account over a velocity limit, so it was not attempted
+        LIMIT_EXCEEDED,
+        // The balance change was committed, but its ledger row could not be written
+        UNLOGGED,
+        // The idempotency key was already used for a different request, so nothing was attempted
+        KEY_MISMATCH
+    }
+
+    private final Status status;
+    private final int accountId;
+    private final Money amount;
+    private final String message;
+
+    /**
+     * Creates a posting result.
+     *
+     * @param status the outcome
+     * @param accountId the ID of the account the posting was made against
+     * @param amount the amount posted
+     * @param message a human-readable description of the outcome
+     */
+    public PostingResult(Status status, int accountId, Money amount, String message) {
+        this.status = status;
+        this.accountId = accountId;
+        this.amount = amount;
+        this.message = message;
+    }
+
+    /**
+     * Gets the outcome of the posting.
+     *
+     * @return the status
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Tells whether the posting was committed.
+     *
+     * @return true if the status is SUCCESS
+     */
+    public boolean isSuccess() {
+        return status == Status.SUCCESS;
+    }
+
+    /**
+     * Tells whether the balance change was committed, whether or not its ledger row was written.
+     *
+     * @return true if the status is SUCCESS or UNLOGGED
+     */
+    public boolean isCommitted() {
+        return status == Status.SUCCESS || status == Status.UNLOGGED;
+    }
+
+    /**
+     * Gets the ID of the account the posting was made against.
+     *
+     * @return the account ID
+     */
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * Gets the amount posted.
+     *
+     * @return the amount
+     */
+    public Money getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets a human-readable description of the outcome.
+     *
+     * @return the message
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "PostingResult [status=" + status + ", accountId=" + accountId +
+               ", amount=" + amount + ", message=" + message + "]";
+    }
+}
@@ -0,0 +1,259 @@
+package com.banking;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadThroughCache is a bounded cache that loads missing entries from the database
+ * on demand. Entries expire after a fixed time to live, and the least recently used
+ * entry is evicted when the cache is full.
+ *
+ * A load that overlaps an invalidation of its key is returned to its caller but not
+ * cached, so an invalidation can never be undone by a load that read the old row.
+ * Writes to other keys do not affect it.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ReadThroughCache<K, V> {
+
+    /**
+     * Loads the value for a key from the database.
+     *
+     * @param <K> the key type
+     * @param <V> the value type
+     */
+    public interface Loader<K, V> {
+
+        /**
+         * Loads a value.
+         *
+         * @param key the key
+         * @return the value, or null if there is none; null results are not cached
+         * @throws SQLException if a database access error occurs
+         */
+        V load(K key) throws SQLException;
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Loader<K, V> loader;
+
+    // Access-ordered so that iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The keys being loaded; a load only caches its result if its key's generation did not change meanwhile
+    private final Map<K, Loading> loading = new HashMap<>();
+
+    // Bumped by invalidateAll, which also stops every load in flight from caching
+    private long clears;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum number of entries
+     * @param ttlMillis how long an entry stays valid after it was loaded
+     * @param loader loads entries that are missing or expired
+     */
+    public ReadThroughCache(int maxSize, long ttlMillis, Loader<K, V> loader) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.loader = loader;
+    }
+
+    /**
+     * Gets the value for a key, loading it if it is not cached or has expired.
+     *
+     * @param key the key
+     * @return the value, or null if the loader found none
+     * @throws SQLException if the value had to be loaded and loading failed
+     */
+    public V get(K key) throws SQLException {
+        Loading inFlight;
+        long generation;
+        long clearsAtStart;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.loadedNanos < ttlNanos) {
+                    hits.incrementAndGet();
+                    return entry.value;
+                }
+                entries.remove(key);
+                expirations.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            inFlight = loading.computeIfAbsent(key, k -> new Loading());
+            inFlight.loaders++;
+            generation = inFlight.generation;
+            clearsAtStart = clears;
+        }
+
+        V value = null;
+        long loadedNanos = 0;
+        try {
+            long start = System.nanoTime();
+            value = loader.load(key);
+            loadedNanos = System.nanoTime();
+            loads.incrementAndGet();
+            totalLoadNanos.addAndGet(loadedNanos - start);
+        } finally {
+            synchronized (this) {
+                if (value != null && generation == inFlight.generation && clearsAtStart == clears) {
+                    entries.put(key, new Entry<>(value, loadedNanos));
+                    evictIfFull();
+                }
+                if (--inFlight.loaders == 0) {
+                    loading.remove(key);
+                }
+            }
+        }
+        return value;
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<K, Entry<V>>> leastRecentFirst = entries.entrySet().iterator();
+        while (entries.size() > maxSize && leastRecentFirst.hasNext()) {
+            leastRecentFirst.next();
+            leastRecentFirst.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes a key so that the next read loads it again.
+     *
+     * @param key the key
+     */
+    public synchronized void invalidate(K key) {
+        Loading inFlight = loading.get(key);
+        if (inFlight != null) {
+            inFlight.generation++;
+        }
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void invalidateAll() {
+        clears++;
+        entries.clear();
+    }
+
+    /**
+     * Gets the number of cached entries.
+     *
+     * @return the size
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the number of reads served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of reads that had to load.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Gets the fraction of reads served from the cache.
+     *
+     * @return the hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long total = getHitCount() + getMissCount();
+        return total == 0 ? 0.0 : (double) getHitCount() / total;
+    }
+
+    /**
+     * Gets the number of entries evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Gets the number of entries dropped because their time to live had passed.
+     *
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    /**
+     * Gets the number of loads performed.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * Gets the average time a load took.
+     *
+     * @return the average load latency in milliseconds
+     */
+    public double getAverageLoadMillis() {
+        long count = loads.get();
+        return count == 0 ? 0.0 : totalLoadNanos.get() / (count * 1_000_000.0);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadThroughCache [size=" + size() + ", hitRate=" + String.format("%.3f", getHitRate())
+                + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+                + ", avgLoadMs=" + String.format("%.3f", getAverageLoadMillis()) + "]";
+    }
+
+    /**
+     * The loads of one key in flight, and how often the key was invalidated while they ran.
+     */
+    private static final class Loading {
+
+        private int loaders;
+        private long generation;
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long loadedNanos;
+
+        private Entry(V value, long loadedNanos) {
+            this.value = value;
+            this.loadedNanos = loadedNanos;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.banking;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ReconciliationReport summarises one run of {@link LedgerReconciler#reconcile}:
+ * how many new Transaction rows and accounts were checked since the previous
+ * checkpoint, and the breaks found.
+ */
+public class ReconciliationReport {
+
+    private final long rowsChecked;
+    private final long accountsChecked;
+    private final long breakCount;
+    private final List<LedgerBreak> breaks;
+    private final long elapsedNanos;
+
+    /**
+     * Creates a reconciliation report.
+     *
+     * @param rowsChecked the number of Transaction rows checked
+     * @param accountsChecked the number of account balances compared with their latest row
+     * @param breakCount the number of breaks found
+     * @param breaks the first breaks found, at most a hundred
+     * @param elapsedNanos the wall-clock duration of the run
+     */
+    public ReconciliationReport(long rowsChecked, long accountsChecked, long breakCount, List<LedgerBreak> breaks,
+                                long elapsedNanos) {
+        this.rowsChecked = rowsChecked;
+        this.accountsChecked = accountsChecked;
+        this.breakCount = breakCount;
+        this.breaks = Collections.unmodifiableList(breaks);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of Transaction rows checked.
+     *
+     * @return the checked row count
+     */
+    public long getRowsChecked() {
+        return rowsChecked;
+    }
+
+    /**
+     * Gets the number of account balances compared with their latest Transaction row.
+     *
+     * @return the checked account count
+     */
+    public long getAccountsChecked() {
+        return accountsChecked;
+    }
+
+    /**
+     * Gets the number of breaks found. All of them are recorded in the Reconciliation_Break table.
+     *
+     * @return the break count
+     */
+    public long getBreakCount() {
+        return breakCount;
+    }
+
+    /**
+     * Gets the first breaks found.
+     *
+     * @return at most a hundred breaks
+     */
+    public List<LedgerBreak> getBreaks() {
+        return breaks;
+    }
+
+    /**
+     * Gets the wall-clock duration of the run.
+     *
+     * @return the elapsed time in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the checking rate.
+     *
+     * @return Transaction rows checked per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : rowsChecked / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Tells whether the checked part of the ledger adds up.
+     *
+     * @return true if no break was found
+     */
+    public boolean isClean() {
+        return breakCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ReconciliationReport [rows=" + rowsChecked + ", accounts=" + accountsChecked
+                + ", breaks=" + breakCount + ", seconds=" + String.format("%.2f", elapsedNanos / 1e9)
+                + ", rowsPerSecond=" + String.format("%.0f", getRowsPerSecond()) + "]";
+    }
+}
@@ -0,0 +1,162 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ShardMap spreads accounts over several databases, each with its own
+ * {@link ConnectionPool}. An account lives on shard (accountId - 1) mod N, and a
+ * customer on shard (customerId - 1) mod N, so routing needs no lookup table and
+ * any node can compute it.
+ *
+ * New accounts are inserted on their customer's shard. For the generated account ID
+ * to map back to that shard, every shard's MySQL server must hand out IDs in its own
+ * residue class:
+ *
+ *   auto_increment_increment = N
+ *   auto_increment_offset    = shard index + 1
+ *
+ * The same setting keeps customer IDs on the right shard. {@link AccountManagement}
+ * refuses to create an account whose ID comes back on the wrong shard.
+ *
+ * The shards are configured with "banking.shards", a comma-separated list of JDBC
+ * URLs in shard order; each may have its own credentials in "banking.shard.&lt;index&gt;.user"
+ * and ".password". Without it there is a single shard at "banking.db.url", and the
+ * application behaves exactly as it does unsharded. For local testing, several
+ * embedded databases or several schemas on one server can serve as shards.
+ */
+public class ShardMap implements AutoCloseable {
+
+    private final String[] urls;
+    private final ConnectionPool[] pools;
+
+    /**
+     * Creates a shard map with one connection pool per shard.
+     *
+     * @param urls the JDBC URLs of the shards, in shard order
+     * @param users the database user of each shard
+     * @param passwords the database password of each shard
+     * @param config the settings used for every shard's pool
+     */
+    public ShardMap(List<String> urls, List<String> users, List<String> passwords, PoolConfig config) {
+        if (urls.isEmpty() || users.size() != urls.size() || passwords.size() != urls.size()) {
+            throw new IllegalArgumentException("Every shard needs a URL, a user and a password");
+        }
+        this.urls = urls.toArray(new String[0]);
+        this.pools = new ConnectionPool[urls.size()];
+        for (int shard = 0; shard < pools.length; shard++) {
+            pools[shard] = new ConnectionPool(urls.get(shard), users.get(shard), passwords.get(shard), config);
+        }
+    }
+
+    /**
+     * Creates the shard map described by the "banking.shards" system properties.
+     *
+     * @param defaultUrl the URL of the only shard when banking.shards is not set
+     * @param defaultUser the user for shards without their own
+     * @param defaultPassword the password for shards without their own
+     * @return the shard map
+     */
+    public static ShardMap fromSystemProperties(String defaultUrl, String defaultUser, String defaultPassword) {
+        List<String> urls = new ArrayList<>();
+        String shards = System.getProperty("banking.shards");
+        if (shards == null || shards.isBlank()) {
+            urls.add(defaultUrl);
+        } else {
+            for (String url : shards.split(",")) {
+                urls.add(url.trim());
+            }
+        }
+        List<String> users = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
+        for (int shard = 0; shard < urls.size(); shard++) {
+            users.add(System.getProperty("banking.shard." + shard + ".user", defaultUser));
+            passwords.add(System.getProperty("banking.shard." + shard + ".password", defaultPassword));
+        }
+        return new ShardMap(urls, users, passwords, PoolConfig.fromSystemProperties());
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the shard count
+     */
+    public int getShardCount() {
+        return pools.length;
+    }
+
+    /**
+     * Gets the shard an account lives on.
+     *
+     * @param accountId the account ID
+     * @return the shard index
+     */
+    public int shardOf(int accountId) {
+        return Math.floorMod(accountId - 1, pools.length);
+    }
+
+    /**
+     * Gets the shard a customer, and every new account of that customer, lives on.
+     *
+     * @param customerId the customer ID
+     * @return the shard index
+     */
+    public int shardOfCustomer(int customerId) {
+        return Math.floorMod(customerId - 1, pools.length);
+    }
+
+    /**
+     * Borrows a connection to a shard.
+     *
+     * @param shard the shard index
+     * @return a pooled connection
+     * @throws SQLException if no connection becomes available
+     */
+    public Connection getConnection(int shard) throws SQLException {
+        return pools[shard].getConnection();
+    }
+
+    /**
+     * Gets the connection pool of a shard, e.g. to read its metrics.
+     *
+     * @param shard the shard index
+     * @return the connection pool
+     */
+    public ConnectionPool getPool(int shard) {
+        return pools[shard];
+    }
+
+    /**
+     * Gets the most connections open at once across all shards.
+     *
+     * @return the sum of the pools' maximum sizes
+     */
+    public int getMaxConnections() {
+        int total = 0;
+        for (ConnectionPool pool : pools) {
+            total += pool.getMaxSize();
+        }
+        return total;
+    }
+
+    /**
+     * Closes every shard's pool.
+     */
+    @Override
+    public void close() {
+        for (ConnectionPool pool : pools) {
+            pool.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("ShardMap [");
+        for (int shard = 0; shard < pools.length; shard++) {
+            text.append(shard == 0 ? "" : ", ").append(shard).append('=').append(urls[shard]);
+        }
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,265 @@
+package com.banking;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StatementCache keeps the prepared statements of one pooled connection, keyed by
+ * SQL text, so the fixed banking queries are parsed and prepared once per connection
+ * and reused by every later borrower. The least recently used statement is closed
+ * when the cache is full.
+ *
+ * A cache belongs to a single physical connection, and a pooled connection is only
+ * ever used by one borrower at a time, so the cache itself is not synchronized.
+ */
+public class StatementCache {
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Stats stats;
+
+    // Access-ordered so that iteration starts at the least recently used statement
+    private final LinkedHashMap<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Creates a cache for one physical connection.
+     *
+     * @param physical the connection that prepares the statements
+     * @param maxSize the maximum number of statements kept open
+     * @param stats the counters shared by every cache in the pool
+     */
+    public StatementCache(Connection physical, int maxSize, Stats stats) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.stats = stats;
+    }
+
+    /**
+     * Returns a prepared statement for the SQL text, reusing the cached one when it
+     * is free. Closing the returned statement closes its open result set, clears its
+     * parameters, restores the row limit, fetch size and query timeout it was prepared
+     * with, and hands it back to the cache instead of closing it.
+     *
+     * @param sql the SQL text
+     * @param owner the connection handle the statement should report as its connection
+     * @return a prepared statement
+     * @throws SQLException if the statement cannot be prepared
+     */
+    public PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            stats.hits.incrementAndGet();
+            return cached.checkOut(owner);
+        }
+        stats.misses.incrementAndGet();
+        if (cached != null) {
+            // The same SQL is already open on this connection; give this caller a private copy
+            return physical.prepareStatement(sql);
+        }
+        cached = new CachedStatement(physical.prepareStatement(sql));
+        statements.put(sql, cached);
+        evictIfFull();
+        return cached.checkOut(owner);
+    }
+
+    private void evictIfFull() {
+        Iterator<Map.Entry<String, CachedStatement>> leastRecentFirst = statements.entrySet().iterator();
+        while (statements.size() > maxSize && leastRecentFirst.hasNext()) {
+            CachedStatement eldest = leastRecentFirst.next().getValue();
+            leastRecentFirst.remove();
+            stats.evictions.incrementAndGet();
+            eldest.evicted = true;
+            if (!eldest.inUse) {
+                eldest.closeQuietly();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of statements currently cached.
+     *
+     * @return the cached statement count
+     */
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Hit, miss and eviction counters aggregated over every cache in a pool.
+     */
+    public static class Stats {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        /**
+         * Gets the number of prepares served from a cache.
+         *
+         * @return the hit count
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * Gets the number of prepares that went to the driver.
+         *
+         * @return the miss count
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * Gets the number of statements closed to make room for newer ones.
+         *
+         * @return the eviction count
+         */
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        /**
+         * Gets the fraction of prepares served from a cache.
+         *
+         * @return the hit ratio between 0 and 1
+         */
+        public double getHitRatio() {
+            long total = getHits() + getMisses();
+            return total == 0 ? 0.0 : (double) getHits() / total;
+        }
+    }
+
+    /**
+     * A physical prepared statement owned by the cache.
+     */
+    private static final class CachedStatement {
+
+        private final PreparedStatement physical;
+        private boolean inUse;
+        private boolean evicted;
+
+        // The driver's settings, restored on check-in so a borrower never inherits another's
+        private final int defaultMaxRows;
+        private final int defaultFetchSize;
+        private final int defaultQueryTimeout;
+
+        private CachedStatement(PreparedStatement physical) throws SQLException {
+            this.physical = physical;
+            try {
+                this.defaultMaxRows = physical.getMaxRows();
+                this.defaultFetchSize = physical.getFetchSize();
+                this.defaultQueryTimeout = physical.getQueryTimeout();
+            } catch (SQLException e) {
+                physical.close();
+                throw e;
+            }
+        }
+
+        private PreparedStatement checkOut(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new Handle(this, owner));
+        }
+
+        private void checkIn() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                ResultSet open = physical.getResultSet();
+                if (open != null) {
+                    open.close();
+                }
+                physical.clearParameters();
+                physical.clearBatch();
+                if (physical.getMaxRows() != defaultMaxRows) {
+                    physical.setMaxRows(defaultMaxRows);
+                }
+                if (physical.getFetchSize() != defaultFetchSize) {
+                    physical.setFetchSize(defaultFetchSize);
+                }
+                if (physical.getQueryTimeout() != defaultQueryTimeout) {
+                    physical.setQueryTimeout(defaultQueryTimeout);
+                }
+            } catch (SQLException e) {
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                System.err.println("Error closing cached statement: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The statement handle given to one caller. Closing it returns the statement to the cache.
+     */
+    private static final class Handle implements InvocationHandler {
+
+        private final CachedStatement cached;
+        private final Connection owner;
+        private boolean closed;
+
+        private Handle(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cached.checkIn();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            boolean timed = method.getName().startsWith("execute");
+            long start = timed ? System.nanoTime() : 0;
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (timed) {
+                    BankingMetrics.SQL_EXECUTE.record(System.nanoTime() - start);
+                }
+            }
+        }
+    }
+}
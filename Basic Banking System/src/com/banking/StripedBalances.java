@@ -0,0 +1,275 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * StripedBalances relieves lock contention on hot accounts, such as merchant
+ * settlement or fee collection accounts that receive most of the deposits. A plain
+ * deposit updates the account row, so concurrent deposits to one account queue on its
+ * row lock. Deposits to a striped account instead add to one of {@code buckets} rows
+ * of the Account_Bucket table, picked at random, so they only contend when they hit
+ * the same bucket. Their Transaction rows are written pending, without a running
+ * balance or sequence.
+ *
+ * {@link #compact} merges the buckets into the account: it adds their sum to the
+ * balance, gives the pending rows their running balances and sequence numbers in ID
+ * order, and empties the buckets, all in one transaction. Compaction runs periodically
+ * (see BankingSystem), before every withdrawal or transfer out of a striped account,
+ * and before end-of-day processing. Between compactions, reads through
+ * {@link AccountCache} add the buckets to the balance.
+ *
+ * A deposit takes a shared lock on the account row before its bucket, and compaction
+ * an exclusive one, so compaction waits for the deposits in flight and the two always
+ * lock in the same order. Striped accounts are listed in the "banking.striped.accounts"
+ * system property as comma-separated IDs; "banking.striped.buckets" sets the number
+ * of buckets per account (16).
+ */
+public final class StripedBalances {
+
+    private static final String SHARE_ACCOUNT_QUERY =
+            "SELECT account_id FROM Account WHERE account_id = ? LOCK IN SHARE MODE";
+    private static final String CREDIT_BUCKET_QUERY =
+            "INSERT INTO Account_Bucket (account_id, bucket_no, amount, postings) VALUES (?, ?, ?, 1)"
+            + " ON DUPLICATE KEY UPDATE amount = amount + VALUES(amount), postings = postings + 1";
+    private static final String PENDING_LOG_QUERY = "INSERT INTO Transaction"
+            + " (account_id, transaction_type, amount, idempotency_key, bucket_no) VALUES (?, "
+            + TransactionType.DEPOSIT.getCode() + ", ?, ?, ?)";
+
+    private static final String LOCK_ACCOUNT_QUERY =
+            "SELECT balance, last_sequence FROM Account WHERE account_id = ? FOR UPDATE";
+    private static final String BUCKETS_QUERY =
+            "SELECT amount, postings FROM Account_Bucket WHERE account_id = ? FOR UPDATE";
+    private static final String PENDING_QUERY = "SELECT transaction_id, amount FROM Transaction"
+            + " WHERE account_id = ? AND sequence_no IS NULL AND bucket_no IS NOT NULL ORDER BY transaction_id";
+    private static final String SEQUENCE_QUERY =
+            "UPDATE Transaction SET balance_after = ?, sequence_no = ? WHERE transaction_id = ?";
+    private static final String MERGE_QUERY =
+            "UPDATE Account SET balance = balance + ?, last_sequence = last_sequence + ? WHERE account_id = ?";
+    private static final String EMPTY_BUCKETS_QUERY =
+            "UPDATE Account_Bucket SET amount = 0, postings = 0 WHERE account_id = ?";
+
+    private static final Set<Integer> ACCOUNTS = parseAccounts(System.getProperty("banking.striped.accounts", ""));
+    private static final int BUCKETS = Integer.getInteger("banking.striped.buckets", 16);
+
+    private StripedBalances() {
+    }
+
+    /**
+     * Tells whether deposits to an account are spread over bucket rows.
+     *
+     * @param accountId the ID of the account
+     * @return true if the account is striped
+     */
+    public static boolean isStriped(int accountId) {
+        return ACCOUNTS.contains(accountId);
+    }
+
+    /**
+     * Gets the IDs of the striped accounts.
+     *
+     * @return the account IDs, in ascending order
+     */
+    public static Set<Integer> getAccounts() {
+        return ACCOUNTS;
+    }
+
+    /**
+     * Deposits into one of a striped account's buckets and writes the pending Transaction row.
+     *
+     * @param accountId the ID of the striped account
+     * @param amount the amount to deposit
+     * @param idempotencyKey the client's key, stored on the Transaction row, or null for none
+     * @return the outcome of the deposit
+     */
+    static PostingResult deposit(int accountId, Money amount, String idempotencyKey) {
+        if (!amount.isPositive()) {
+            return TransactionManagement.nonPositive(accountId, amount, "Deposit");
+        }
+        int bucket = ThreadLocalRandom.current().nextInt(BUCKETS);
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement share = connection.prepareStatement(SHARE_ACCOUNT_QUERY);
+                 PreparedStatement credit = connection.prepareStatement(CREDIT_BUCKET_QUERY);
+                 PreparedStatement log = connection.prepareStatement(PENDING_LOG_QUERY)) {
+                share.setInt(1, accountId);
+                try (ResultSet rs = share.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.rollback();
+                        return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount,
+                                "Deposit failed. Account ID may not exist.");
+                    }
+                }
+                credit.setInt(1, accountId);
+                credit.setInt(2, bucket);
+                Money.bind(credit, 3, amount);
+                credit.executeUpdate();
+                log.setInt(1, accountId);
+                Money.bind(log, 2, amount);
+                if (idempotencyKey == null) {
+                    log.setNull(3, Types.VARCHAR);
+                } else {
+                    log.setString(3, idempotencyKey);
+                }
+                log.setInt(4, bucket);
+                log.executeUpdate();
+                connection.commit();
+                AccountCache.invalidate(accountId);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            if (idempotencyKey != null && IdempotencyIndex.isDuplicateIdempotencyKey(e)) {
+                return new PostingResult(PostingResult.Status.DUPLICATE, accountId, amount,
+                        "Deposit already posted with idempotency key " + idempotencyKey + ".");
+            }
+            return new PostingResult(PostingResult.Status.FAILED, accountId, amount,
+                    "Error depositing funds: " + e.getMessage());
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, "Deposit successful.");
+    }
+
+    /**
+     * Merges a striped account's buckets into its balance and sequences its pending
+     * Transaction rows.
+     *
+     * @param accountId the ID of the account
+     * @return the number of deposits merged
+     * @throws SQLException if the merge fails; nothing has been changed
+     */
+    public static int compact(int accountId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId)) {
+            connection.setAutoCommit(false);
+            try {
+                int merged = compact(connection, accountId);
+                connection.commit();
+                return merged;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                AccountCache.invalidate(accountId);
+            }
+        }
+    }
+
+    /**
+     * Merges a striped account's buckets inside the caller's transaction, leaving the
+     * account row locked until the caller commits or rolls back. Lets a change that
+     * sets the balance outright, such as an account update, start from the merged one.
+     *
+     * @param connection the connection, with auto-commit off
+     * @param accountId the ID of the account
+     * @return the number of deposits merged
+     * @throws SQLException if the merge fails; the caller must roll back
+     */
+    static int compact(Connection connection, int accountId) throws SQLException {
+        try (PreparedStatement lock = connection.prepareStatement(LOCK_ACCOUNT_QUERY);
+             PreparedStatement buckets = connection.prepareStatement(BUCKETS_QUERY);
+             PreparedStatement pending = connection.prepareStatement(PENDING_QUERY);
+             PreparedStatement sequence = connection.prepareStatement(SEQUENCE_QUERY);
+             PreparedStatement merge = connection.prepareStatement(MERGE_QUERY);
+             PreparedStatement empty = connection.prepareStatement(EMPTY_BUCKETS_QUERY)) {
+            lock.setInt(1, accountId);
+            Money balance;
+            long lastSequence;
+            try (ResultSet rs = lock.executeQuery()) {
+                if (!rs.next()) {
+                    return 0;
+                }
+                balance = Money.read(rs, "balance");
+                lastSequence = rs.getLong("last_sequence");
+            }
+            Money bucketTotal = Money.ZERO;
+            long bucketPostings = 0;
+            buckets.setInt(1, accountId);
+            try (ResultSet rs = buckets.executeQuery()) {
+                while (rs.next()) {
+                    bucketTotal = bucketTotal.plus(Money.read(rs, "amount"));
+                    bucketPostings += rs.getLong("postings");
+                }
+            }
+            if (bucketPostings == 0) {
+                return 0;
+            }
+            Money running = balance;
+            int merged = 0;
+            pending.setInt(1, accountId);
+            try (ResultSet rs = pending.executeQuery()) {
+                while (rs.next()) {
+                    running = running.plus(Money.read(rs, "amount"));
+                    merged++;
+                    Money.bind(sequence, 1, running);
+                    sequence.setLong(2, lastSequence + merged);
+                    sequence.setInt(3, rs.getInt("transaction_id"));
+                    sequence.addBatch();
+                }
+            }
+            // Each deposit writes its bucket and its row in one transaction, so they must agree
+            if (merged != bucketPostings || running.minus(balance).compareTo(bucketTotal) != 0) {
+                throw new SQLException("Buckets of account " + accountId + " hold " + bucketPostings
+                        + " deposits of " + bucketTotal + " but " + merged + " pending rows add up to "
+                        + running.minus(balance));
+            }
+            sequence.executeBatch();
+            Money.bind(merge, 1, bucketTotal);
+            merge.setInt(2, merged);
+            merge.setInt(3, accountId);
+            merge.executeUpdate();
+            empty.setInt(1, accountId);
+            empty.executeUpdate();
+            return merged;
+        }
+    }
+
+    /**
+     * Merges the buckets of every striped account, reporting failures on System.err.
+     *
+     * @return the number of deposits merged
+     */
+    public static int compactAll() {
+        int merged = 0;
+        for (int accountId : ACCOUNTS) {
+            merged += compactQuietly(accountId);
+        }
+        return merged;
+    }
+
+    /**
+     * Merges an account's buckets if it is striped, so that a debit sees every deposit
+     * and is sequenced after them. A failure is reported and the debit goes ahead
+     * against the balance merged so far.
+     *
+     * @param accountId the ID of the account
+     * @return the number of deposits merged
+     */
+    static int compactQuietly(int accountId) {
+        if (!isStriped(accountId)) {
+            return 0;
+        }
+        try {
+            return compact(accountId);
+        } catch (SQLException e) {
+            System.err.println("Error merging balance buckets of account " + accountId + ": " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static Set<Integer> parseAccounts(String accounts) {
+        Set<Integer> ids = new TreeSet<>();
+        for (String id : accounts.split(",")) {
+            if (!id.isBlank()) {
+                ids.add(Integer.parseInt(id.trim()));
+            }
+        }
+        return Collections.unmodifiableSet(ids);
+    }
+}
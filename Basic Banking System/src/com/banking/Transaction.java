@@ -1,8 +1,13 @@
 package com.banking;
 
+import java.sql.Timestamp;
+
 /**
  * Transaction class represents a financial transaction in the banking system.
  * It contains details about a transaction such as its ID, associated account, type, amount, and date.
+ * The type is an enum constant and the date is kept as epoch microseconds, so a
+ * Transaction read from the database holds no strings of its own. For bulk reads,
+ * {@link TransactionBlock} keeps many rows in primitive arrays instead of objects.
  */
 public class Transaction {
     // Unique identifier for the transaction
@@ -11,14 +16,20 @@ public class Transaction {
     // Account ID associated with the transaction
     private int accountId;
     
-    // Type of transaction (e.g., Deposit, Withdrawal, Transfer)
-    private String transactionType;
+    // Type of transaction (e.g., Deposit, Withdrawal, Transfer Out)
+    private TransactionType transactionType;
     
     // Amount involved in the transaction
-    private double amount;
+    private Money amount;
     
-    // Date and time when the transaction occurred
-    private String transactionDate;
+    // Date and time when the transaction occurred, in microseconds since the epoch
+    private long transactionTimeMicros;
+
+    // Balance of the account right after the transaction; null for rows written before it was recorded
+    private Money balanceAfter;
+
+    // Position of the transaction in its account's history, starting at 1; 0 when not recorded
+    private long sequenceNumber;
 
     // Getter and setter methods for each field
 
@@ -63,7 +74,7 @@ public class Transaction {
      * 
      * @return the transaction type
      */
-    public String getTransactionType() {
+    public TransactionType getTransactionType() {
         return transactionType;
     }
 
@@ -72,7 +83,7 @@ public class Transaction {
      * 
      * @param transactionType the transaction type to set
      */
-    public void setTransactionType(String transactionType) {
+    public void setTransactionType(TransactionType transactionType) {
         this.transactionType = transactionType;
     }
 
@@ -81,7 +92,7 @@ public class Transaction {
      * 
      * @return the transaction amount
      */
-    public double getAmount() {
+    public Money getAmount() {
         return amount;
     }
 
@@ -90,25 +101,103 @@ public class Transaction {
      * 
      * @param amount the amount to set
      */
-    public void setAmount(double amount) {
+    public void setAmount(Money amount) {
         this.amount = amount;
     }
 
     /**
      * Gets the date and time of the transaction.
      * 
+     * @return the transaction time in microseconds since the epoch
+     */
+    public long getTransactionTimeMicros() {
+        return transactionTimeMicros;
+    }
+
+    /**
+     * Sets the date and time of the transaction.
+     * 
+     * @param transactionTimeMicros the transaction time in microseconds since the epoch
+     */
+    public void setTransactionTimeMicros(long transactionTimeMicros) {
+        this.transactionTimeMicros = transactionTimeMicros;
+    }
+
+    /**
+     * Gets the date and time of the transaction in JDBC timestamp format
+     * (yyyy-mm-dd hh:mm:ss.f), in the local time zone. The string is built on each call.
+     * 
      * @return the transaction date
      */
     public String getTransactionDate() {
-        return transactionDate;
+        return toTimestamp(transactionTimeMicros).toString();
     }
 
     /**
-     * Sets the date and time of the transaction.
+     * Sets the date and time of the transaction from JDBC timestamp format.
      * 
-     * @param transactionDate the transaction date to set
+     * @param transactionDate the transaction date to set, as yyyy-mm-dd hh:mm:ss[.f...]
+     * @throws IllegalArgumentException if the date is not in that format
      */
     public void setTransactionDate(String transactionDate) {
-        this.transactionDate = transactionDate;
+        this.transactionTimeMicros = toMicros(Timestamp.valueOf(transactionDate));
+    }
+
+    /**
+     * Gets the balance of the account right after the transaction.
+     * 
+     * @return the running balance, or null if it was not recorded
+     */
+    public Money getBalanceAfter() {
+        return balanceAfter;
+    }
+
+    /**
+     * Sets the balance of the account right after the transaction.
+     * 
+     * @param balanceAfter the running balance to set
+     */
+    public void setBalanceAfter(Money balanceAfter) {
+        this.balanceAfter = balanceAfter;
+    }
+
+    /**
+     * Gets the position of the transaction in its account's history.
+     * 
+     * @return the sequence number, starting at 1, or 0 if it was not recorded
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Sets the position of the transaction in its account's history.
+     * 
+     * @param sequenceNumber the sequence number to set
+     */
+    public void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Converts a timestamp to microseconds since the epoch, dropping any nanoseconds.
+     * 
+     * @param timestamp the timestamp
+     * @return the microseconds since the epoch
+     */
+    public static long toMicros(Timestamp timestamp) {
+        return Math.floorDiv(timestamp.getTime(), 1_000L) * 1_000_000L + timestamp.getNanos() / 1_000;
+    }
+
+    /**
+     * Converts microseconds since the epoch to a timestamp.
+     * 
+     * @param micros the microseconds since the epoch
+     * @return the timestamp
+     */
+    public static Timestamp toTimestamp(long micros) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1_000_000L) * 1_000L);
+        timestamp.setNanos((int) Math.floorMod(micros, 1_000_000L) * 1_000);
+        return timestamp;
     }
 }
@@ -0,0 +1,243 @@
+package com.banking;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * TransactionBlock holds many Transaction rows in parallel primitive arrays, one
+ * array per column, for bulk history reads. A row costs 41 bytes of array space,
+ * against roughly a hundred bytes for a Transaction object and its two Money objects,
+ * and the garbage collector sees a handful of arrays rather than millions of objects.
+ *
+ * Amounts are kept as minor units of the system currency and times as epoch
+ * microseconds; the getters build Money objects only when asked. {@link #get}
+ * materializes a single row as a Transaction. A block is not thread-safe.
+ */
+public final class TransactionBlock {
+
+    // Marks a row whose running balance was not recorded
+    private static final long NO_BALANCE = Long.MIN_VALUE;
+
+    // Array bytes per row: two ints, one byte, four longs
+    private static final int BYTES_PER_ROW = 2 * Integer.BYTES + Byte.BYTES + 4 * Long.BYTES;
+
+    private int size;
+    private int[] transactionIds;
+    private int[] accountIds;
+    private byte[] typeCodes;
+    private long[] amounts;
+    private long[] timesMicros;
+    private long[] balancesAfter;
+    private long[] sequenceNumbers;
+
+    /**
+     * Creates an empty block.
+     */
+    public TransactionBlock() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty block with room for the given number of rows before it grows.
+     *
+     * @param initialCapacity the number of rows to allocate for
+     */
+    public TransactionBlock(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity must not be negative");
+        }
+        transactionIds = new int[initialCapacity];
+        accountIds = new int[initialCapacity];
+        typeCodes = new byte[initialCapacity];
+        amounts = new long[initialCapacity];
+        timesMicros = new long[initialCapacity];
+        balancesAfter = new long[initialCapacity];
+        sequenceNumbers = new long[initialCapacity];
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @param transaction the transaction to copy
+     */
+    public void add(Transaction transaction) {
+        Money balanceAfter = transaction.getBalanceAfter();
+        add(transaction.getTransactionId(), transaction.getAccountId(), transaction.getTransactionType().getCode(),
+                transaction.getAmount().getMinorUnits(), transaction.getTransactionTimeMicros(),
+                balanceAfter == null ? NO_BALANCE : balanceAfter.getMinorUnits(), transaction.getSequenceNumber());
+    }
+
+    /**
+     * Appends the current row of a history query, which must select transaction_id,
+     * account_id, transaction_type, amount, transaction_date, balance_after and sequence_no.
+     *
+     * @param rs the result set, positioned on a row
+     * @throws SQLException if a column cannot be read
+     */
+    void add(ResultSet rs) throws SQLException {
+        Money balanceAfter = Money.read(rs, "balance_after");
+        add(rs.getInt("transaction_id"), rs.getInt("account_id"), rs.getByte("transaction_type"),
+                Money.read(rs, "amount").getMinorUnits(), Transaction.toMicros(rs.getTimestamp("transaction_date")),
+                balanceAfter == null ? NO_BALANCE : balanceAfter.getMinorUnits(), rs.getLong("sequence_no"));
+    }
+
+    private void add(int transactionId, int accountId, byte typeCode, long amount, long timeMicros,
+                     long balanceAfter, long sequenceNumber) {
+        if (size == transactionIds.length) {
+            grow();
+        }
+        transactionIds[size] = transactionId;
+        accountIds[size] = accountId;
+        typeCodes[size] = typeCode;
+        amounts[size] = amount;
+        timesMicros[size] = timeMicros;
+        balancesAfter[size] = balanceAfter;
+        sequenceNumbers[size] = sequenceNumber;
+        size++;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return the row count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the transaction ID of a row.
+     *
+     * @param index the row index
+     * @return the transaction ID
+     */
+    public int getTransactionId(int index) {
+        return transactionIds[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Gets the account ID of a row.
+     *
+     * @param index the row index
+     * @return the account ID
+     */
+    public int getAccountId(int index) {
+        return accountIds[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Gets the type of a row.
+     *
+     * @param index the row index
+     * @return the transaction type
+     */
+    public TransactionType getTransactionType(int index) {
+        return TransactionType.fromCode(typeCodes[Objects.checkIndex(index, size)]);
+    }
+
+    /**
+     * Gets the amount of a row without creating a Money object.
+     *
+     * @param index the row index
+     * @return the amount in minor units of the system currency
+     */
+    public long getAmountMinorUnits(int index) {
+        return amounts[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Gets the amount of a row.
+     *
+     * @param index the row index
+     * @return the amount
+     */
+    public Money getAmount(int index) {
+        return Money.ofMinor(getAmountMinorUnits(index));
+    }
+
+    /**
+     * Gets the date and time of a row.
+     *
+     * @param index the row index
+     * @return the transaction time in microseconds since the epoch
+     */
+    public long getTransactionTimeMicros(int index) {
+        return timesMicros[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Gets the balance of the account right after a row's transaction.
+     *
+     * @param index the row index
+     * @return the running balance, or null if it was not recorded
+     */
+    public Money getBalanceAfter(int index) {
+        long balanceAfter = balancesAfter[Objects.checkIndex(index, size)];
+        return balanceAfter == NO_BALANCE ? null : Money.ofMinor(balanceAfter);
+    }
+
+    /**
+     * Gets the position of a row in its account's history.
+     *
+     * @param index the row index
+     * @return the sequence number, starting at 1, or 0 if it was not recorded
+     */
+    public long getSequenceNumber(int index) {
+        return sequenceNumbers[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Copies a row into a new Transaction.
+     *
+     * @param index the row index
+     * @return the transaction
+     */
+    public Transaction get(int index) {
+        Transaction transaction = new Transaction();
+        transaction.setTransactionId(getTransactionId(index));
+        transaction.setAccountId(getAccountId(index));
+        transaction.setTransactionType(getTransactionType(index));
+        transaction.setAmount(getAmount(index));
+        transaction.setTransactionTimeMicros(getTransactionTimeMicros(index));
+        transaction.setBalanceAfter(getBalanceAfter(index));
+        transaction.setSequenceNumber(getSequenceNumber(index));
+        return transaction;
+    }
+
+    /**
+     * Shrinks the arrays to the number of rows, e.g. once a bulk read has finished.
+     */
+    public void trimToSize() {
+        resize(size);
+    }
+
+    /**
+     * Gets the bytes taken by the column arrays, excluding array headers.
+     *
+     * @return the allocated array bytes
+     */
+    public long getAllocatedBytes() {
+        return (long) transactionIds.length * BYTES_PER_ROW;
+    }
+
+    private void grow() {
+        int capacity = transactionIds.length;
+        int grown = capacity + Math.max(capacity >> 1, 16);
+        if (grown < 0) {
+            throw new IllegalStateException("TransactionBlock cannot hold more than " + capacity + " rows");
+        }
+        resize(grown);
+    }
+
+    private void resize(int capacity) {
+        transactionIds = Arrays.copyOf(transactionIds, capacity);
+        accountIds = Arrays.copyOf(accountIds, capacity);
+        typeCodes = Arrays.copyOf(typeCodes, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        timesMicros = Arrays.copyOf(timesMicros, capacity);
+        balancesAfter = Arrays.copyOf(balancesAfter, capacity);
+        sequenceNumbers = Arrays.copyOf(sequenceNumbers, capacity);
+    }
+}
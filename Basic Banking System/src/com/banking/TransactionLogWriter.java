@@ -0,0 +1,416 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TransactionLogWriter takes Transaction log entries off the posting threads and
+ * writes them from a single background thread. Entries wait in a bounded queue;
+ * the writer drains them into multi-row INSERT statements and commits each group
+ * of up to {@code flushSize} rows at once, waiting no longer than
+ * {@code maxLatencyMillis} for a group to fill.
+ *
+ * When the queue is full, posting threads wait up to {@code enqueueTimeoutMillis}
+ * for room, which slows producers down to the speed of the database. In
+ * {@link Durability#SYNC} mode {@link #append(Transaction...)} also waits until the
+ * entries' groups have committed; in {@link Durability#ASYNC} mode it returns as soon
+ * as the entries are queued, failing only if one could not be queued. A SYNC caller
+ * waits at most {@code commitTimeoutMillis} for the commit.
+ *
+ * With several shards each group is split by the shard of its accounts, and each
+ * part is written and committed on its own shard.
+ */
+public class TransactionLogWriter implements AutoCloseable {
+
+    /**
+     * How long a caller of {@link TransactionLogWriter#append(Transaction...)} waits.
+     */
+    public enum Durability {
+        // Return once the entry is queued
+        ASYNC,
+        // Return once the entry is committed
+        SYNC
+    }
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO Transaction (account_id, transaction_type, amount, balance_after, sequence_no) VALUES ";
+
+    private final int flushSize;
+    private final long maxLatencyNanos;
+    private final long enqueueTimeoutMillis;
+    private final long commitTimeoutMillis;
+    private final Durability durability;
+
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+
+    /**
+     * Creates a writer configured from the "banking.log.*" system properties.
+     */
+    public TransactionLogWriter() {
+        this(Integer.getInteger("banking.log.flushSize", 256),
+             Long.getLong("banking.log.maxLatencyMillis", 5),
+             Integer.getInteger("banking.log.queueCapacity", 65_536),
+             Long.getLong("banking.log.enqueueTimeoutMillis", 5_000),
+             Long.getLong("banking.log.commitTimeoutMillis", 30_000),
+             Durability.valueOf(System.getProperty("banking.log.durability", Durability.SYNC.name())));
+    }
+
+    /**
+     * Creates a writer whose SYNC callers wait up to 30 seconds for the commit.
+     *
+     * @param flushSize the maximum number of rows written and committed together
+     * @param maxLatencyMillis how long the writer waits for a group to fill before flushing it
+     * @param queueCapacity the number of entries that may wait to be written
+     * @param enqueueTimeoutMillis how long a caller waits for room in a full queue
+     * @param durability whether append waits for the commit
+     */
+    public TransactionLogWriter(int flushSize, long maxLatencyMillis, int queueCapacity,
+                                long enqueueTimeoutMillis, Durability durability) {
+        this(flushSize, maxLatencyMillis, queueCapacity, enqueueTimeoutMillis, 30_000, durability);
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param flushSize the maximum number of rows written and committed together
+     * @param maxLatencyMillis how long the writer waits for a group to fill before flushing it
+     * @param queueCapacity the number of entries that may wait to be written
+     * @param enqueueTimeoutMillis how long a caller waits for room in a full queue
+     * @param commitTimeoutMillis how long a SYNC caller waits for its entries to be committed
+     * @param durability whether append waits for the commit
+     */
+    public TransactionLogWriter(int flushSize, long maxLatencyMillis, int queueCapacity,
+                                long enqueueTimeoutMillis, long commitTimeoutMillis, Durability durability) {
+        if (flushSize < 1 || queueCapacity < 1) {
+            throw new IllegalArgumentException("flushSize and queueCapacity must be at least 1");
+        }
+        this.flushSize = flushSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+        this.commitTimeoutMillis = commitTimeoutMillis;
+        this.durability = durability;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::run, "banking-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues log entries and, in SYNC mode, waits for all of them to be committed.
+     * All entries are queued before waiting, so they can share a group.
+     *
+     * @param entries the entries; their account IDs, transaction types, amounts, running
+     *        balances and sequence numbers are written
+     * @throws SQLException if an entry could not be queued or, in SYNC mode, written
+     */
+    public void append(Transaction... entries) throws SQLException {
+        CompletableFuture<?>[] pending = new CompletableFuture<?>[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            pending[i] = submit(entries[i]);
+        }
+        if (durability == Durability.SYNC) {
+            await(CompletableFuture.allOf(pending));
+            return;
+        }
+        // Only an entry that could not be queued is known to have failed by now
+        for (CompletableFuture<?> done : pending) {
+            if (done.isCompletedExceptionally()) {
+                await(done);
+            }
+        }
+    }
+
+    private void await(CompletableFuture<?> done) throws SQLException {
+        try {
+            done.get(commitTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new SQLException("Transaction log not committed after waiting " + commitTimeoutMillis
+                    + " ms; the entries may still be written", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the transaction log", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                    : new SQLException("Error writing transaction log", e.getCause());
+        }
+    }
+
+    /**
+     * Queues a log entry for an account and, in SYNC mode, waits for it to be committed.
+     *
+     * @param accountId the ID of the account associated with the transaction
+     * @param transactionType the type of the transaction
+     * @param amount the amount involved in the transaction
+     * @param balanceAfter the balance of the account right after the transaction
+     * @param sequenceNumber the position of the transaction in the account's history
+     * @throws SQLException if the entry could not be queued or, in SYNC mode, written
+     */
+    public void append(int accountId, TransactionType transactionType, Money amount, Money balanceAfter,
+                       long sequenceNumber) throws SQLException {
+        Transaction entry = new Transaction();
+        entry.setAccountId(accountId);
+        entry.setTransactionType(transactionType);
+        entry.setAmount(amount);
+        entry.setBalanceAfter(balanceAfter);
+        entry.setSequenceNumber(sequenceNumber);
+        append(entry);
+    }
+
+    /**
+     * Queues a log entry without waiting for it to be written.
+     *
+     * @param entry the entry; its account ID, transaction type, amount, running balance
+     *        and sequence number are written
+     * @return a future that completes when the entry's group has committed
+     */
+    public CompletableFuture<Void> submit(Transaction entry) {
+        Pending pending = new Pending(entry);
+        try {
+            if (closed || !queue.offer(pending, enqueueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                failed.incrementAndGet();
+                pending.done.completeExceptionally(new RejectedExecutionException(closed
+                        ? "Transaction log writer is closed"
+                        : "Transaction log queue is full after waiting " + enqueueTimeoutMillis + " ms"));
+            } else {
+                appended.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.done.completeExceptionally(e);
+        }
+        return pending.done;
+    }
+
+    private void run() {
+        List<Pending> group = new ArrayList<>(flushSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (group.size() < flushSize) {
+                    if (queue.drainTo(group, flushSize - group.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                }
+                flushByShard(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(group, e);
+                return;
+            } catch (RuntimeException e) {
+                // E.g. no pooled connection in time; the group fails, the writer carries on
+                System.err.println("Error writing transaction log: " + e.getMessage());
+                fail(group, e);
+            }
+            group.clear();
+        }
+    }
+
+    private void flushByShard(List<Pending> group) {
+        ShardMap shards = DatabaseConnection.getShardMap();
+        if (shards.getShardCount() == 1) {
+            flush(0, group);
+            return;
+        }
+        List<List<Pending>> parts = new ArrayList<>(shards.getShardCount());
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Pending pending : group) {
+            parts.get(shards.shardOf(pending.entry.getAccountId())).add(pending);
+        }
+        for (int shard = 0; shard < parts.size(); shard++) {
+            if (!parts.get(shard).isEmpty()) {
+                flush(shard, parts.get(shard));
+            }
+        }
+    }
+
+    /**
+     * Writes one group of a shard's rows with as few multi-row INSERTs as possible and commits it once.
+     */
+    private void flush(int shard, List<Pending> group) {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseConnection.getShardMap().getConnection(shard)) {
+            connection.setAutoCommit(false);
+            try {
+                int offset = 0;
+                while (offset < group.size()) {
+                    // Full groups use one statement; the tail is split into power-of-two chunks
+                    // so that only a handful of distinct statements reach the statement cache
+                    int remaining = group.size() - offset;
+                    int rows = remaining == flushSize ? flushSize : Integer.highestOneBit(remaining);
+                    insert(connection, group, offset, rows);
+                    offset += rows;
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error writing transaction log: " + e.getMessage());
+            fail(group, e);
+            return;
+        }
+        flushLatency.record(System.nanoTime() - start);
+        flushes.incrementAndGet();
+        written.addAndGet(group.size());
+        for (Pending pending : group) {
+            pending.done.complete(null);
+        }
+    }
+
+    private void insert(Connection connection, List<Pending> group, int offset, int rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + rows * 17).append(INSERT_PREFIX);
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+        }
+        try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (int i = offset; i < offset + rows; i++) {
+                Transaction entry = group.get(i).entry;
+                statement.setInt(index++, entry.getAccountId());
+                statement.setByte(index++, entry.getTransactionType().getCode());
+                Money.bind(statement, index++, entry.getAmount());
+                if (entry.getBalanceAfter() == null) {
+                    // Not recorded by the caller; the reconciler skips such rows
+                    statement.setNull(index++, Types.DECIMAL);
+                    statement.setNull(index++, Types.BIGINT);
+                } else {
+                    Money.bind(statement, index++, entry.getBalanceAfter());
+                    statement.setLong(index++, entry.getSequenceNumber());
+                }
+            }
+            statement.executeUpdate();
+        }
+    }
+
+    // Entries of the group already committed on another shard keep their result
+    private void fail(List<Pending> group, Exception cause) {
+        for (Pending pending : group) {
+            if (pending.done.completeExceptionally(cause)) {
+                failed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting entries, writes out everything already queued and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the durability mode.
+     *
+     * @return the durability
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Gets the number of entries waiting to be written.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Gets the number of entries accepted into the queue.
+     *
+     * @return the appended count
+     */
+    public long getAppendedCount() {
+        return appended.get();
+    }
+
+    /**
+     * Gets the number of entries committed to the Transaction table.
+     *
+     * @return the written count
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Gets the number of entries rejected or lost to a failed flush.
+     *
+     * @return the failed count
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Gets the number of groups committed.
+     *
+     * @return the flush count
+     */
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    /**
+     * Gets the time each group took to write and commit.
+     *
+     * @return the flush latency histogram
+     */
+    public LatencyHistogram getFlushLatency() {
+        return flushLatency;
+    }
+
+    /**
+     * A queued entry and the future its caller may be waiting on.
+     */
+    private static final class Pending {
+
+        private final Transaction entry;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Pending(Transaction entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -4,12 +4,77 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * TransactionManagement class handles financial transactions in the banking system,
  * including deposit, withdrawal, fund transfer, and transaction history management.
  */
-public class TransactionManagement {
+public class TransactionManagement implements Ledger {
+
+    // Every balance change also advances the account's sequence, which numbers its Transaction rows
+    static final String DEPOSIT_QUERY =
+            "UPDATE Account SET balance = balance + ?, last_sequence = last_sequence + 1 WHERE account_id = ?";
+    static final String WITHDRAW_QUERY =
+            "UPDATE Account SET balance = balance - ?, last_sequence = last_sequence + 1 WHERE account_id = ?";
+
+    // The ledger row copies the running balance and sequence from the account row
+    // updated earlier in the same transaction; bind with bindLog
+    static final String LOG_QUERY =
+            "INSERT INTO Transaction (account_id, transaction_type, amount, balance_after, sequence_no)"
+            + " SELECT account_id, ?, ?, balance, last_sequence FROM Account WHERE account_id = ?";
+    static final String KEYED_LOG_QUERY =
+            "INSERT INTO Transaction (account_id, transaction_type, amount, idempotency_key, balance_after, sequence_no)"
+            + " SELECT account_id, ?, ?, ?, balance, last_sequence FROM Account WHERE account_id = ?";
+
+    // Reads back the running balance and sequence of an account updated in the current transaction
+    static final String POSTED_QUERY = "SELECT balance, last_sequence FROM Account WHERE account_id = ?";
+
+    private final TransferEngine transferEngine;
+
+    // When set, ledger rows are written by this writer after the balance update commits
+    private final TransactionLogWriter logWriter;
+
+    // Outcomes of recent keyed postings, so client retries are answered without reposting
+    private final IdempotencyIndex idempotencyIndex = new IdempotencyIndex();
+
+    // Per-account limits on how often and how much withdrawals and transfers may debit
+    private final VelocityLimiter velocityLimiter = new VelocityLimiter();
+
+    /**
+     * Creates a TransactionManagement that uses a default {@link TransferEngine} and
+     * writes each ledger row in the same database transaction as its balance update.
+     */
+    public TransactionManagement() {
+        this(new TransferEngine());
+    }
+
+    /**
+     * Creates a TransactionManagement that uses the given engine for transfers.
+     * 
+     * @param transferEngine the transfer engine
+     */
+    public TransactionManagement(TransferEngine transferEngine) {
+        this(transferEngine, null);
+    }
+
+    /**
+     * Creates a TransactionManagement whose deposits and withdrawals hand their ledger
+     * rows to a {@link TransactionLogWriter} instead of inserting them in the posting
+     * transaction. This shortens each posting to one UPDATE and one commit; in ASYNC mode
+     * the ledger row is persisted shortly after the balance change rather than with it.
+     * 
+     * @param transferEngine the transfer engine
+     * @param logWriter the log writer, or null to write ledger rows in the posting transaction
+     */
+    public TransactionManagement(TransferEngine transferEngine, TransactionLogWriter logWriter) {
+        this.transferEngine = transferEngine;
+        this.logWriter = logWriter;
+    }
 
     /**
      * Deposits a specified amount into the account with the given ID.
@@ -17,22 +82,8 @@ public class TransactionManagement {
      * @param accountId the ID of the account where funds will be deposited
      * @param amount the amount to deposit
      */
-    public void deposit(int accountId, double amount) {
-        String query = "UPDATE Account SET balance = balance + ? WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setDouble(1, amount);
-            statement.setInt(2, accountId);
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Deposit successful.");
-                logTransaction(accountId, "Deposit", amount);
-            } else {
-                System.out.println("Deposit failed. Account ID may not exist.");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error depositing funds: " + e.getMessage());
-        }
+    public void deposit(int accountId, Money amount) {
+        print(postDeposit(accountId, amount));
     }
 
     /**
@@ -41,129 +92,512 @@ public class TransactionManagement {
      * @param accountId the ID of the account from which funds will be withdrawn
      * @param amount the amount to withdraw
      */
-    public void withdraw(int accountId, double amount) {
-        String query = "UPDATE Account SET balance = balance - ? WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setDouble(1, amount);
-            statement.setInt(2, accountId);
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected > 0) {
-                System.out.println("Withdrawal successful.");
-                logTransaction(accountId, "Withdrawal", amount);
-            } else {
-                System.out.println("Withdrawal failed. Account ID may not exist.");
-            }
-        } catch (SQLException e) {
-            System.err.println("Error withdrawing funds: " + e.getMessage());
-        }
+    public void withdraw(int accountId, Money amount) {
+        print(postWithdrawal(accountId, amount));
     }
-    
+
     /**
-     * Transfers a specified amount from one account to another.
-     * This method handles both the withdrawal from the source account and the deposit to the destination account.
-     * It uses a transaction to ensure that both operations succeed or fail together.
+     * Deposits a specified amount and records it in the transaction log as one
+     * unit of work on a single connection.
      * 
-     * @param fromAccountId the ID of the account to withdraw funds from
-     * @param toAccountId the ID of the account to deposit funds into
-     * @param amount the amount to transfer
+     * @param accountId the ID of the account where funds will be deposited
+     * @param amount the amount to deposit
+     * @return the outcome of the deposit
      */
-    public void transferFunds(int fromAccountId, int toAccountId, double amount) {
-        Connection connection = null;
-        PreparedStatement withdrawStatement = null;
-        PreparedStatement depositStatement = null;
-        
-        try {
-            connection = DatabaseConnection.getConnection();
-            connection.setAutoCommit(false);  // Start transaction
-
-            String withdrawQuery = "UPDATE Account SET balance = balance - ? WHERE account_id = ?";
-            withdrawStatement = connection.prepareStatement(withdrawQuery);
-            withdrawStatement.setDouble(1, amount);
-            withdrawStatement.setInt(2, fromAccountId);
-            int withdrawRowsAffected = withdrawStatement.executeUpdate();
-
-            if (withdrawRowsAffected > 0) {
-                String depositQuery = "UPDATE Account SET balance = balance + ? WHERE account_id = ?";
-                depositStatement = connection.prepareStatement(depositQuery);
-                depositStatement.setDouble(1, amount);
-                depositStatement.setInt(2, toAccountId);
-                int depositRowsAffected = depositStatement.executeUpdate();
-
-                if (depositRowsAffected > 0) {
-                    connection.commit();  // Commit transaction if both succeed
-                    System.out.println("Transfer successful.");
-                    logTransaction(fromAccountId, "Transfer Out", amount);
-                    logTransaction(toAccountId, "Transfer In", amount);
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount) {
+        return postDeposit(accountId, amount, null);
+    }
+
+    /**
+     * Deposits a specified amount at most once per idempotency key. A retry with the
+     * same key is answered with the first result and does not touch the balance again.
+     * Deposits to a striped account go to one of its balance buckets; see {@link StripedBalances}.
+     * 
+     * @param accountId the ID of the account where funds will be deposited
+     * @param amount the amount to deposit
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the deposit, or of the earlier deposit with the same key
+     */
+    @Override
+    public PostingResult postDeposit(int accountId, Money amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        return BankingMetrics.DEPOSIT.record(start, idempotencyIndex.execute(idempotencyKey,
+                "deposit", accountId, amount, () -> StripedBalances.isStriped(accountId)
+                        ? StripedBalances.deposit(accountId, amount, idempotencyKey)
+                        : post(accountId, amount, idempotencyKey, DEPOSIT_QUERY, TransactionType.DEPOSIT,
+                                "Deposit successful.", "Deposit failed. Account ID may not exist.",
+                                "Error depositing funds: ")));
+    }
+
+    /**
+     * Withdraws a specified amount and records it in the transaction log as one
+     * unit of work on a single connection.
+     * 
+     * @param accountId the ID of the account from which funds will be withdrawn
+     * @param amount the amount to withdraw
+     * @return the outcome of the withdrawal
+     */
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount) {
+        return postWithdrawal(accountId, amount, null);
+    }
+
+    /**
+     * Withdraws a specified amount at most once per idempotency key. A retry with the
+     * same key is answered with the first result and does not touch the balance again.
+     * The buckets of a striped account are merged into its balance first, and the
+     * withdrawal is refused with LIMIT_EXCEEDED if it would break a velocity limit.
+     * 
+     * @param accountId the ID of the account from which funds will be withdrawn
+     * @param amount the amount to withdraw
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the withdrawal, or of the earlier withdrawal with the same key
+     */
+    @Override
+    public PostingResult postWithdrawal(int accountId, Money amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        return BankingMetrics.WITHDRAWAL.record(start, idempotencyIndex.execute(idempotencyKey,
+                "withdrawal", accountId, amount, () -> {
+            StripedBalances.compactQuietly(accountId);
+            return velocityLimiter.debit(accountId, amount, () -> post(accountId, amount, idempotencyKey,
+                    WITHDRAW_QUERY, TransactionType.WITHDRAWAL, "Withdrawal successful.",
+                    "Withdrawal failed. Account ID may not exist.", "Error withdrawing funds: "));
+        }));
+    }
+
+    /**
+     * Applies a balance update and inserts the matching Transaction row inside one
+     * database transaction, so the balance and the ledger can never disagree. With a
+     * log writer configured, the row is handed to the writer once the update commits,
+     * except for keyed postings: their row carries the idempotency key and must be
+     * inserted with the update, so that a repeated key rolls the whole posting back.
+     * A row handed to the writer carries the running balance and sequence read back
+     * before the commit.
+     */
+    private PostingResult post(int accountId, Money amount, String idempotencyKey, String updateQuery,
+                               TransactionType transactionType, String successMessage, String notFoundMessage,
+                               String errorPrefix) {
+        if (!amount.isPositive()) {
+            return nonPositive(accountId, amount, transactionType.getLabel());
+        }
+        boolean logInTransaction = logWriter == null || idempotencyKey != null;
+        Transaction entry = null;
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement update = connection.prepareStatement(updateQuery);
+                 PreparedStatement log = connection.prepareStatement(
+                         idempotencyKey == null ? LOG_QUERY : KEYED_LOG_QUERY)) {
+                Money.bind(update, 1, amount);
+                update.setInt(2, accountId);
+                if (update.executeUpdate() == 0) {
+                    connection.rollback();
+                    return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, accountId, amount, notFoundMessage);
+                }
+                if (logInTransaction) {
+                    bindLog(log, accountId, transactionType, amount, idempotencyKey);
+                    log.executeUpdate();
                 } else {
-                    connection.rollback();  // Rollback transaction on failure
-                    System.out.println("Transfer failed. Destination Account ID may not exist.");
+                    entry = posted(connection, accountId, transactionType, amount);
                 }
-            } else {
-                connection.rollback();  // Rollback transaction on failure
-                System.out.println("Transfer failed. Source Account ID may not exist.");
+                connection.commit();
+                AccountCache.invalidate(accountId);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
             }
-
         } catch (SQLException e) {
-            try {
-                if (connection != null) connection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Error during transaction rollback: " + ex.getMessage());
+            if (idempotencyKey != null && IdempotencyIndex.isDuplicateIdempotencyKey(e)) {
+                return new PostingResult(PostingResult.Status.DUPLICATE, accountId, amount,
+                        transactionType.getLabel() + " already posted with idempotency key " + idempotencyKey + ".");
             }
-            System.err.println("Error transferring funds: " + e.getMessage());
-        } finally {
+            return new PostingResult(PostingResult.Status.FAILED, accountId, amount, errorPrefix + e.getMessage());
+        }
+
+        if (!logInTransaction) {
             try {
-                if (withdrawStatement != null) withdrawStatement.close();
-                if (depositStatement != null) depositStatement.close();
-                if (connection != null) connection.close();
+                logWriter.append(entry);
             } catch (SQLException e) {
-                System.err.println("Error closing resources: " + e.getMessage());
+                // The balance change has committed; report the missing ledger row without undoing it
+                return unlogged(accountId, amount, successMessage, e);
+            }
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, accountId, amount, successMessage);
+    }
+
+    /**
+     * Rejects a posting whose amount is zero or negative before it reaches the database.
+     * Without this a negative deposit would act as a withdrawal, and a negative transfer
+     * would move funds back from the destination, both without a funds check.
+     *
+     * @param accountId the ID of the account the posting was made against
+     * @param amount the rejected amount
+     * @param operation the kind of posting, for the message
+     * @return a FAILED result
+     */
+    static PostingResult nonPositive(int accountId, Money amount, String operation) {
+        return new PostingResult(PostingResult.Status.FAILED, accountId, amount,
+                operation + " failed. Amount must be positive.");
+    }
+
+    /**
+     * Reports a committed posting whose ledger row the log writer failed to write.
+     *
+     * @param accountId the ID of the account the posting was made against
+     * @param amount the amount posted
+     * @param successMessage the message the posting would otherwise have returned
+     * @param e the log writer's error
+     * @return an UNLOGGED result
+     */
+    static PostingResult unlogged(int accountId, Money amount, String successMessage, SQLException e) {
+        return new PostingResult(PostingResult.Status.UNLOGGED, accountId, amount,
+                successMessage + " Error logging transaction: " + e.getMessage());
+    }
+
+    /**
+     * Binds a {@link #LOG_QUERY} or, when an idempotency key is given, a {@link #KEYED_LOG_QUERY}.
+     *
+     * @param log the statement
+     * @param accountId the ID of the account whose balance was just updated
+     * @param transactionType the type of the transaction
+     * @param amount the amount involved in the transaction
+     * @param idempotencyKey the client's key, or null for a LOG_QUERY
+     * @throws SQLException if a parameter cannot be set
+     */
+    static void bindLog(PreparedStatement log, int accountId, TransactionType transactionType, Money amount,
+                        String idempotencyKey) throws SQLException {
+        int index = 1;
+        log.setByte(index++, transactionType.getCode());
+        Money.bind(log, index++, amount);
+        if (idempotencyKey != null) {
+            log.setString(index++, idempotencyKey);
+        }
+        log.setInt(index, accountId);
+    }
+
+    /**
+     * Builds the ledger row of a balance update made earlier in the connection's
+     * transaction, with the running balance and sequence read back from the account.
+     *
+     * @param connection the connection holding the uncommitted update
+     * @param accountId the ID of the account
+     * @param transactionType the type of the transaction
+     * @param amount the amount involved in the transaction
+     * @return the ledger row, ready for a {@link TransactionLogWriter}
+     * @throws SQLException if the account cannot be read
+     */
+    static Transaction posted(Connection connection, int accountId, TransactionType transactionType, Money amount)
+            throws SQLException {
+        Transaction entry = new Transaction();
+        entry.setAccountId(accountId);
+        entry.setTransactionType(transactionType);
+        entry.setAmount(amount);
+        try (PreparedStatement statement = connection.prepareStatement(POSTED_QUERY)) {
+            statement.setInt(1, accountId);
+            try (ResultSet rs = statement.executeQuery()) {
+                if (rs.next()) {
+                    entry.setBalanceAfter(Money.read(rs, "balance"));
+                    entry.setSequenceNumber(rs.getLong("last_sequence"));
+                }
             }
         }
+        return entry;
+    }
+
+    private void print(PostingResult result) {
+        if (result.getStatus() == PostingResult.Status.FAILED || result.getStatus() == PostingResult.Status.UNLOGGED) {
+            System.err.println(result.getMessage());
+        } else {
+            System.out.println(result.getMessage());
+        }
     }
     
     /**
-     * Displays the transaction history for the account with the given ID.
+     * Transfers a specified amount from one account to another.
+     * The source balance is checked and both accounts are updated in a single database
+     * transaction; see {@link TransferEngine} for the locking and retry behaviour.
+     * 
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     */
+    public void transferFunds(int fromAccountId, int toAccountId, Money amount) {
+        print(postTransfer(fromAccountId, toAccountId, amount));
+    }
+
+    /**
+     * Transfers a specified amount from one account to another and records both
+     * ledger entries in the same database transaction.
+     * 
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @return the outcome of the transfer
+     */
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount) {
+        return postTransfer(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * Transfers a specified amount at most once per idempotency key. A retry with the
+     * same key is answered with the first result and does not move funds again.
+     * The buckets of a striped source account are merged into its balance first, and
+     * the transfer is refused with LIMIT_EXCEEDED if it would break a velocity limit of
+     * the source account.
+     * 
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the transfer, or of the earlier transfer with the same key
+     */
+    @Override
+    public PostingResult postTransfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey) {
+        long start = System.nanoTime();
+        return BankingMetrics.TRANSFER.record(start, idempotencyIndex.execute(idempotencyKey,
+                "transfer to " + toAccountId, fromAccountId, amount, () -> {
+            StripedBalances.compactQuietly(fromAccountId);
+            return velocityLimiter.debit(fromAccountId, amount,
+                    () -> transferEngine.transfer(fromAccountId, toAccountId, amount, idempotencyKey));
+        }));
+    }
+
+    /**
+     * Gets the index of recent idempotency keys, e.g. to read its hit counters.
+     * 
+     * @return the idempotency index
+     */
+    public IdempotencyIndex getIdempotencyIndex() {
+        return idempotencyIndex;
+    }
+
+    /**
+     * Gets the velocity limits applied to withdrawals and transfers, e.g. to rebuild
+     * them at startup or read their rejection counters.
+     * 
+     * @return the velocity limiter
+     */
+    public VelocityLimiter getVelocityLimiter() {
+        return velocityLimiter;
+    }
+
+    /**
+     * Gets the engine used for transfers, e.g. to read its retry and abort counters.
+     * 
+     * @return the transfer engine
+     */
+    public TransferEngine getTransferEngine() {
+        return transferEngine;
+    }
+    
+    /**
+     * Displays the transaction history for the account with the given ID, newest first.
+     * Rows are streamed from the database rather than read into memory all at once.
      * 
      * @param accountId the ID of the account whose transaction history is to be viewed
      */
     public void viewTransactionHistory(int accountId) {
-        String query = "SELECT * FROM Transaction WHERE account_id = ?";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, accountId);
-            ResultSet rs = statement.executeQuery();
-            System.out.println("Transaction History for Account ID: " + accountId);
-            while (rs.next()) {
-                System.out.println("Transaction ID: " + rs.getInt("transaction_id"));
-                System.out.println("Transaction Type: " + rs.getString("transaction_type"));
-                System.out.println("Amount: " + rs.getDouble("amount"));
-                System.out.println("Date: " + rs.getTimestamp("transaction_date"));
+        System.out.println("Transaction History for Account ID: " + accountId);
+        try (Stream<Transaction> history = streamTransactionHistory(new HistoryQuery(accountId))) {
+            history.forEach(transaction -> {
+                System.out.println("Transaction ID: " + transaction.getTransactionId());
+                System.out.println("Transaction Type: " + transaction.getTransactionType().getLabel());
+                System.out.println("Amount: " + transaction.getAmount());
+                if (transaction.getBalanceAfter() != null) {
+                    System.out.println("Balance After: " + transaction.getBalanceAfter());
+                }
+                System.out.println("Date: " + transaction.getTransactionDate());
                 System.out.println("------------------------------------------------");
-            }
-        } catch (SQLException e) {
+            });
+        } catch (SQLException | IllegalStateException e) {
             System.err.println("Error viewing transaction history: " + e.getMessage());
         }
     }
 
     /**
-     * Logs a transaction to the database.
+     * Reads part of an account's transaction history as a lazily populated stream,
+     * newest first. Rows are fetched from the database as the stream is consumed.
+     * The stream holds a pooled connection until it is exhausted or closed, so it
+     * should be used in a try-with-resources block.
      * 
-     * @param accountId the ID of the account associated with the transaction
-     * @param transactionType the type of the transaction (e.g., Deposit, Withdrawal, Transfer)
-     * @param amount the amount involved in the transaction
+     * @param query the account, date range, cursor and page size to read
+     * @return the matching transactions
+     * @throws SQLException if the query cannot be started
      */
-    private void logTransaction(int accountId, String transactionType, double amount) {
-        String query = "INSERT INTO Transaction (account_id, transaction_type, amount) VALUES (?, ?, ?)";
-        try (Connection connection = DatabaseConnection.getConnection();
-             PreparedStatement statement = connection.prepareStatement(query)) {
-            statement.setInt(1, accountId);
-            statement.setString(2, transactionType);
-            statement.setDouble(3, amount);
-            statement.executeUpdate();
-            System.out.println("Transaction logged successfully.");
+    public Stream<Transaction> streamTransactionHistory(HistoryQuery query) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = DatabaseConnection.getConnectionForAccount(query.getAccountId());
         } catch (SQLException e) {
-            System.err.println("Error logging transaction: " + e.getMessage());
+            BankingMetrics.HISTORY.failure(start);
+            throw e;
+        }
+        PreparedStatement statement = null;
+        try {
+            statement = prepareHistory(connection, query);
+            ResultSet rs = statement.executeQuery();
+            TransactionSpliterator rows = new TransactionSpliterator(rs, statement, connection, start);
+            return StreamSupport.stream(rows, false).onClose(rows::close);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(null, statement, connection);
+            BankingMetrics.HISTORY.failure(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads part of an account's transaction history into a {@link TransactionBlock},
+     * newest first. Meant for bulk reads: the rows are kept in primitive arrays rather
+     * than as one Transaction object each.
+     * 
+     * @param query the account, date range, cursor and page size to read
+     * @return the matching transactions
+     * @throws SQLException if the history cannot be read
+     */
+    public TransactionBlock readTransactionHistory(HistoryQuery query) throws SQLException {
+        long start = System.nanoTime();
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(query.getAccountId());
+             PreparedStatement statement = prepareHistory(connection, query);
+             ResultSet rs = statement.executeQuery()) {
+            int expected = query.getLimit() > 0 ? Math.min(query.getLimit(), 1024) : 1024;
+            TransactionBlock block = new TransactionBlock(expected);
+            while (rs.next()) {
+                block.add(rs);
+            }
+            block.trimToSize();
+            BankingMetrics.HISTORY.success(start);
+            return block;
+        } catch (SQLException e) {
+            BankingMetrics.HISTORY.failure(start);
+            throw e;
+        }
+    }
+
+    private static PreparedStatement prepareHistory(Connection connection, HistoryQuery query) throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT transaction_id, account_id, transaction_type, amount, transaction_date,"
+                + " balance_after, sequence_no FROM Transaction WHERE account_id = ?");
+        if (query.getFrom() != null) {
+            sql.append(" AND transaction_date >= ?");
+        }
+        if (query.getTo() != null) {
+            sql.append(" AND transaction_date < ?");
+        }
+        if (query.getAfterDate() != null) {
+            // Expanded form of (transaction_date, transaction_id) < (?, ?) so MySQL can range-scan the index
+            sql.append(" AND (transaction_date < ? OR (transaction_date = ? AND transaction_id < ?))");
+        }
+        sql.append(" ORDER BY transaction_date DESC, transaction_id DESC");
+        if (query.getLimit() > 0) {
+            sql.append(" LIMIT ?");
+        }
+
+        PreparedStatement statement = connection.prepareStatement(sql.toString());
+        try {
+            int index = 1;
+            statement.setInt(index++, query.getAccountId());
+            if (query.getFrom() != null) {
+                statement.setTimestamp(index++, query.getFrom());
+            }
+            if (query.getTo() != null) {
+                statement.setTimestamp(index++, query.getTo());
+            }
+            if (query.getAfterDate() != null) {
+                statement.setTimestamp(index++, query.getAfterDate());
+                statement.setTimestamp(index++, query.getAfterDate());
+                statement.setInt(index++, query.getAfterTransactionId());
+            }
+            if (query.getLimit() > 0) {
+                statement.setInt(index, query.getLimit());
+            }
+            statement.setFetchSize(query.getFetchSize());
+            return statement;
+        } catch (SQLException e) {
+            statement.close();
+            throw e;
+        }
+    }
+
+    // Each resource is closed on its own, so a failure to close one never leaks the pooled connection
+    private static void closeQuietly(ResultSet rs, PreparedStatement statement, Connection connection) {
+        closeQuietly(rs);
+        closeQuietly(statement);
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            System.err.println("Error closing resources: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Turns the rows of a history query into Transaction objects one at a time,
+     * releasing the connection as soon as the last row has been read. The query is
+     * timed from its start until the rows are exhausted or the stream is closed.
+     */
+    private static final class TransactionSpliterator extends Spliterators.AbstractSpliterator<Transaction> {
+
+        private final ResultSet rs;
+        private final PreparedStatement statement;
+        private final Connection connection;
+        private final long startNanos;
+        private boolean closed;
+
+        private TransactionSpliterator(ResultSet rs, PreparedStatement statement, Connection connection,
+                                       long startNanos) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.rs = rs;
+            this.statement = statement;
+            this.connection = connection;
+            this.startNanos = startNanos;
+        }
+
+        private void close() {
+            close(true);
+        }
+
+        private void close(boolean succeeded) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            closeQuietly(rs, statement, connection);
+            if (succeeded) {
+                BankingMetrics.HISTORY.success(startNanos);
+            } else {
+                BankingMetrics.HISTORY.failure(startNanos);
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Transaction> action) {
+            try {
+                if (rs.isClosed() || !rs.next()) {
+                    close();
+                    return false;
+                }
+                Transaction transaction = new Transaction();
+                transaction.setTransactionId(rs.getInt("transaction_id"));
+                transaction.setAccountId(rs.getInt("account_id"));
+                transaction.setTransactionType(TransactionType.fromCode(rs.getByte("transaction_type")));
+                transaction.setAmount(Money.read(rs, "amount"));
+                transaction.setTransactionTimeMicros(Transaction.toMicros(rs.getTimestamp("transaction_date")));
+                transaction.setBalanceAfter(Money.read(rs, "balance_after"));
+                transaction.setSequenceNumber(rs.getLong("sequence_no"));
+                action.accept(transaction);
+                return true;
+            } catch (SQLException e) {
+                close(false);
+                throw new IllegalStateException("Error reading transaction history: " + e.getMessage(), e);
+            }
         }
     }
 }
@@ -0,0 +1,81 @@
+package com.banking;
+
+/**
+ * TransactionType lists the kinds of Transaction rows. The database stores a type as
+ * its one-byte code in Transaction.transaction_type; the Transaction_Type table maps
+ * the codes to their names. Codes are persisted, so they must never be changed or
+ * reused.
+ */
+public enum TransactionType {
+
+    DEPOSIT(1, "Deposit", false),
+    WITHDRAWAL(2, "Withdrawal", true),
+    TRANSFER_OUT(3, "Transfer Out", true),
+    TRANSFER_IN(4, "Transfer In", false),
+    // Refund of a cross-shard transfer whose destination has disappeared; see TransferSaga
+    TRANSFER_REVERSAL(5, "Transfer Reversal", false),
+    INTEREST(6, "Interest", false),
+    // A manual balance change; the amount is the signed difference
+    ADJUSTMENT(7, "Adjustment", false);
+
+    // Indexed by code, so decoding a row does not search
+    private static final TransactionType[] BY_CODE = new TransactionType[8];
+
+    static {
+        for (TransactionType type : values()) {
+            BY_CODE[type.code] = type;
+        }
+    }
+
+    private final byte code;
+    private final String label;
+    private final boolean debit;
+
+    TransactionType(int code, String label, boolean debit) {
+        this.code = (byte) code;
+        this.label = label;
+        this.debit = debit;
+    }
+
+    /**
+     * Gets the code stored in the database.
+     *
+     * @return the type code
+     */
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the name shown to users and written to exports (e.g., Deposit, Transfer Out).
+     *
+     * @return the type name
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * Tells whether the amount is taken off the balance rather than added to it.
+     *
+     * @return true for withdrawals and transfers out
+     */
+    public boolean isDebit() {
+        return debit;
+    }
+
+    /**
+     * Gets the type with the given database code.
+     *
+     * @param code the type code
+     * @return the type
+     * @throws IllegalArgumentException if no type has the code
+     */
+    public static TransactionType fromCode(int code) {
+        TransactionType type = code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown transaction type code: " + code);
+        }
+        return type;
+    }
+}
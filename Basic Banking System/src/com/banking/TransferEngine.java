@@ -0,0 +1,343 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TransferEngine moves funds between two accounts safely under concurrency.
+ *
+ * Both account rows are locked with a single SELECT ... FOR UPDATE that always
+ * takes the locks in ascending account ID order, so transfers A to B and B to A
+ * can no longer lock the rows in opposite orders and deadlock each other. The
+ * balance is checked while the rows are locked, and the two balance updates and
+ * both ledger rows commit together. If the database still reports a deadlock,
+ * lock wait timeout or serialization failure, the whole transfer is retried with
+ * exponential backoff.
+ *
+ * When the two accounts live on different shards (see {@link ShardMap}) no single
+ * transaction can lock both rows, and the transfer runs as a {@link TransferSaga}
+ * instead: the debit commits on the source shard, then the credit on the
+ * destination shard. A credit that could not be applied is finished later by
+ * {@link #recoverPendingTransfers}.
+ */
+public class TransferEngine {
+
+    private static final String LOCK_QUERY =
+            "SELECT account_id, balance, last_sequence FROM Account WHERE account_id IN (?, ?)"
+            + " ORDER BY account_id FOR UPDATE";
+
+    // MySQL error codes for a deadlock and for a lock wait timeout
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    // How long a cross-shard transfer may wait for its credit before recovery takes it over
+    private static final long SAGA_RECOVERY_AGE_MILLIS = Long.getLong("banking.saga.recoveryAgeMillis", 30_000);
+
+    private final int maxAttempts;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    // When set, both ledger rows are handed to this writer after the transfer commits
+    private final TransactionLogWriter logWriter;
+
+    private final AtomicLong transfers = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong aborts = new AtomicLong();
+    private final AtomicLong insufficientFunds = new AtomicLong();
+
+    /**
+     * Creates an engine that tries each transfer up to 5 times, backing off from 5 ms up to 200 ms.
+     */
+    public TransferEngine() {
+        this(5, 5, 200);
+    }
+
+    /**
+     * Creates a transfer engine.
+     *
+     * @param maxAttempts the number of times a transfer is tried before it is aborted
+     * @param baseBackoffMillis the delay before the first retry; doubled for each further retry
+     * @param maxBackoffMillis the upper bound on the delay between retries
+     */
+    public TransferEngine(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis) {
+        this(maxAttempts, baseBackoffMillis, maxBackoffMillis, null);
+    }
+
+    /**
+     * Creates a transfer engine that writes its ledger rows through a {@link TransactionLogWriter}.
+     *
+     * @param maxAttempts the number of times a transfer is tried before it is aborted
+     * @param baseBackoffMillis the delay before the first retry; doubled for each further retry
+     * @param maxBackoffMillis the upper bound on the delay between retries
+     * @param logWriter the log writer, or null to write ledger rows in the transfer transaction
+     */
+    public TransferEngine(int maxAttempts, long baseBackoffMillis, long maxBackoffMillis,
+                          TransactionLogWriter logWriter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.logWriter = logWriter;
+    }
+
+    /**
+     * Transfers a specified amount from one account to another.
+     *
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @return the outcome of the transfer
+     */
+    public PostingResult transfer(int fromAccountId, int toAccountId, Money amount) {
+        return transfer(fromAccountId, toAccountId, amount, null);
+    }
+
+    /**
+     * Transfers a specified amount from one account to another, recording the client's
+     * idempotency key on the "Transfer Out" ledger row. The keyed row is always inserted
+     * in the transfer transaction, so a key that was already used rolls the transfer back.
+     *
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account to deposit funds into
+     * @param amount the amount to transfer
+     * @param idempotencyKey the client's key for this request, or null for none
+     * @return the outcome of the transfer; DUPLICATE if the key was already used, FAILED if
+     *         the amount is not positive
+     */
+    public PostingResult transfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey) {
+        if (!amount.isPositive()) {
+            return TransactionManagement.nonPositive(fromAccountId, amount, "Transfer");
+        }
+        if (fromAccountId == toAccountId) {
+            return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                    "Transfer failed. Source and destination accounts are the same.");
+        }
+        ShardMap shards = DatabaseConnection.getShardMap();
+        boolean crossShard = shards.shardOf(fromAccountId) != shards.shardOf(toAccountId);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Transaction[] deferredLog = new Transaction[2];
+                PostingResult result = crossShard
+                        ? TransferSaga.transfer(fromAccountId, toAccountId, amount, idempotencyKey)
+                        : attempt(fromAccountId, toAccountId, amount, idempotencyKey, deferredLog);
+                transfers.incrementAndGet();
+                if (result.isSuccess() && deferredLog[0] != null) {
+                    // Logged after the connection is back in the pool, which the writer may need
+                    result = logAfterCommit(result, deferredLog);
+                }
+                if (result.getStatus() == PostingResult.Status.INSUFFICIENT_FUNDS) {
+                    insufficientFunds.incrementAndGet();
+                }
+                return result;
+            } catch (SQLException e) {
+                if (idempotencyKey != null && IdempotencyIndex.isDuplicateIdempotencyKey(e)) {
+                    return new PostingResult(PostingResult.Status.DUPLICATE, fromAccountId, amount,
+                            "Transfer already posted with idempotency key " + idempotencyKey + ".");
+                }
+                if (!isRetryable(e)) {
+                    return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                            "Error transferring funds: " + e.getMessage());
+                }
+                if (attempt >= maxAttempts) {
+                    aborts.incrementAndGet();
+                    return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                            "Transfer aborted after " + attempt + " attempts: " + e.getMessage());
+                }
+                retries.incrementAndGet();
+                BankingMetrics.TRANSFER.retry();
+                if (!backOff(attempt)) {
+                    return new PostingResult(PostingResult.Status.FAILED, fromAccountId, amount,
+                            "Transfer interrupted while waiting to retry.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one attempt of a same-shard transfer. When the ledger rows are left to the log
+     * writer, they are returned in deferredLog with their running balances and sequences.
+     */
+    private PostingResult attempt(int fromAccountId, int toAccountId, Money amount, String idempotencyKey,
+                                  Transaction[] deferredLog) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(fromAccountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement(LOCK_QUERY);
+                 PreparedStatement debit = connection.prepareStatement(TransactionManagement.WITHDRAW_QUERY);
+                 PreparedStatement credit = connection.prepareStatement(TransactionManagement.DEPOSIT_QUERY);
+                 PreparedStatement outLog = connection.prepareStatement(idempotencyKey == null
+                         ? TransactionManagement.LOG_QUERY : TransactionManagement.KEYED_LOG_QUERY);
+                 PreparedStatement inLog = connection.prepareStatement(TransactionManagement.LOG_QUERY)) {
+                lock.setInt(1, Math.min(fromAccountId, toAccountId));
+                lock.setInt(2, Math.max(fromAccountId, toAccountId));
+                boolean sourceFound = false;
+                boolean destinationFound = false;
+                Money sourceBalance = Money.ZERO;
+                Money destinationBalance = Money.ZERO;
+                long sourceSequence = 0;
+                long destinationSequence = 0;
+                try (ResultSet rs = lock.executeQuery()) {
+                    while (rs.next()) {
+                        if (rs.getInt("account_id") == fromAccountId) {
+                            sourceFound = true;
+                            sourceBalance = Money.read(rs, "balance");
+                            sourceSequence = rs.getLong("last_sequence");
+                        } else {
+                            destinationFound = true;
+                            destinationBalance = Money.read(rs, "balance");
+                            destinationSequence = rs.getLong("last_sequence");
+                        }
+                    }
+                }
+
+                if (!sourceFound || !destinationFound) {
+                    connection.rollback();
+                    return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                            sourceFound ? "Transfer failed. Destination Account ID may not exist."
+                                        : "Transfer failed. Source Account ID may not exist.");
+                }
+                if (sourceBalance.compareTo(amount) < 0) {
+                    connection.rollback();
+                    return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, fromAccountId, amount,
+                            "Transfer failed. Insufficient funds in Account ID: " + fromAccountId);
+                }
+
+                Money.bind(debit, 1, amount);
+                debit.setInt(2, fromAccountId);
+                debit.executeUpdate();
+                Money.bind(credit, 1, amount);
+                credit.setInt(2, toAccountId);
+                credit.executeUpdate();
+
+                if (logWriter == null || idempotencyKey != null) {
+                    TransactionManagement.bindLog(outLog, fromAccountId, TransactionType.TRANSFER_OUT, amount,
+                            idempotencyKey);
+                    outLog.executeUpdate();
+                    TransactionManagement.bindLog(inLog, toAccountId, TransactionType.TRANSFER_IN, amount, null);
+                    inLog.executeUpdate();
+                } else {
+                    // The rows are locked, so the balances and sequences after the updates are known
+                    deferredLog[0] = entry(fromAccountId, TransactionType.TRANSFER_OUT, amount,
+                            sourceBalance.minus(amount), sourceSequence + 1);
+                    deferredLog[1] = entry(toAccountId, TransactionType.TRANSFER_IN, amount,
+                            destinationBalance.plus(amount), destinationSequence + 1);
+                }
+
+                connection.commit();
+                AccountCache.invalidate(fromAccountId);
+                AccountCache.invalidate(toAccountId);
+                return new PostingResult(PostingResult.Status.SUCCESS, fromAccountId, amount, "Transfer successful.");
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Finishes the cross-shard transfers whose debit has committed but whose credit has
+     * not, because the destination shard failed or the process stopped in between. Only
+     * transfers older than "banking.saga.recoveryAgeMillis" (30 seconds) are touched,
+     * so transfers still in progress are left to their own thread. Does nothing useful
+     * with a single shard, where every transfer is one transaction.
+     *
+     * @return the number of transfers completed, or reversed because the destination no longer exists
+     */
+    public int recoverPendingTransfers() {
+        if (DatabaseConnection.getShardMap().getShardCount() < 2) {
+            return 0;
+        }
+        return TransferSaga.recoverPending(SAGA_RECOVERY_AGE_MILLIS);
+    }
+
+    private static Transaction entry(int accountId, TransactionType transactionType, Money amount, Money balanceAfter,
+                                     long sequenceNumber) {
+        Transaction entry = new Transaction();
+        entry.setAccountId(accountId);
+        entry.setTransactionType(transactionType);
+        entry.setAmount(amount);
+        entry.setBalanceAfter(balanceAfter);
+        entry.setSequenceNumber(sequenceNumber);
+        return entry;
+    }
+
+    private PostingResult logAfterCommit(PostingResult result, Transaction[] entries) {
+        try {
+            logWriter.append(entries);
+            return result;
+        } catch (SQLException e) {
+            // The transfer has committed; report the missing ledger rows without undoing it
+            return TransactionManagement.unlogged(result.getAccountId(), result.getAmount(), result.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tells whether a failure was caused by lock contention, in which case the
+     * rolled-back transfer can safely be tried again.
+     */
+    private static boolean isRetryable(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if ("40001".equals(state) || "40P01".equals(state)
+                    || current.getErrorCode() == ER_LOCK_DEADLOCK || current.getErrorCode() == ER_LOCK_WAIT_TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean backOff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, baseBackoffMillis << Math.min(attempt - 1, 20));
+        // Full jitter so that transfers which collided do not retry in lock step
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of transfers that completed, successfully or with a business failure.
+     *
+     * @return the completed transfer count
+     */
+    public long getTransferCount() {
+        return transfers.get();
+    }
+
+    /**
+     * Gets the number of times a transfer was retried after a deadlock or serialization failure.
+     *
+     * @return the retry count
+     */
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * Gets the number of transfers given up after exhausting their attempts.
+     *
+     * @return the abort count
+     */
+    public long getAbortCount() {
+        return aborts.get();
+    }
+
+    /**
+     * Gets the number of transfers rejected for insufficient funds.
+     *
+     * @return the insufficient funds count
+     */
+    public long getInsufficientFundsCount() {
+        return insufficientFunds.get();
+    }
+}
@@ -0,0 +1,319 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * TransferSaga moves funds between accounts on different shards, where no single
+ * database transaction can cover both rows. The transfer runs as a saga of local
+ * transactions, each committed on its own:
+ *
+ *   1. On the source shard: lock and check the source balance, debit it, write the
+ *      "Transfer Out" row and a Transfer_Saga row in state DEBITED.
+ *   2. On the destination shard: credit the destination, write the "Transfer In" row
+ *      and a Transfer_Saga_Credit row keyed by the saga ID, so the credit lands once
+ *      however often it is retried.
+ *   3. On the source shard: mark the saga COMPLETED.
+ *
+ * If the destination account has disappeared by step 2, the debit is reversed with a
+ * "Transfer Reversal" row and the saga marked COMPENSATED. If the source account has
+ * disappeared as well, nothing is refunded: the saga is marked FAILED and reported, and
+ * an operator has to place the debited funds. If step 2 or 3 fails for any other
+ * reason, the saga stays DEBITED and {@link #recoverPending} finishes it later. Step 3
+ * and the compensation only act on sagas still DEBITED, so the caller and a recovery
+ * run can safely race on the same saga.
+ */
+final class TransferSaga {
+
+    static final String DEBITED = "DEBITED";
+    static final String COMPLETED = "COMPLETED";
+    static final String COMPENSATED = "COMPENSATED";
+    static final String FAILED = "FAILED";
+
+    private static final String EXISTS_QUERY = "SELECT account_id FROM Account WHERE account_id = ?";
+    private static final String LOCK_QUERY = "SELECT balance FROM Account WHERE account_id = ? FOR UPDATE";
+    private static final String START_QUERY = "INSERT INTO Transfer_Saga"
+            + " (saga_id, from_account_id, to_account_id, amount, state) VALUES (?, ?, ?, ?, '" + DEBITED + "')";
+    private static final String CREDITED_QUERY = "INSERT INTO Transfer_Saga_Credit (saga_id) VALUES (?)";
+    private static final String FINISH_QUERY =
+            "UPDATE Transfer_Saga SET state = ? WHERE saga_id = ? AND state = '" + DEBITED + "'";
+    private static final String PENDING_QUERY = "SELECT saga_id, from_account_id, to_account_id, amount"
+            + " FROM Transfer_Saga WHERE state = '" + DEBITED + "' AND created_at < ?";
+
+    private TransferSaga() {
+    }
+
+    /**
+     * Runs a cross-shard transfer.
+     *
+     * @param fromAccountId the ID of the account to withdraw funds from
+     * @param toAccountId the ID of the account on another shard to deposit funds into
+     * @param amount the amount to transfer
+     * @param idempotencyKey the client's key, stored on the "Transfer Out" row, or null for none
+     * @return the outcome; SUCCESS once the debit has committed, even if the credit is still pending
+     * @throws SQLException if the debit fails; nothing has been committed and the transfer may be retried
+     */
+    static PostingResult transfer(int fromAccountId, int toAccountId, Money amount, String idempotencyKey)
+            throws SQLException {
+        if (!amount.isPositive()) {
+            return TransactionManagement.nonPositive(fromAccountId, amount, "Transfer");
+        }
+        if (!exists(toAccountId)) {
+            return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                    "Transfer failed. Destination Account ID may not exist.");
+        }
+        String sagaId = UUID.randomUUID().toString();
+        PostingResult rejected = debit(sagaId, fromAccountId, toAccountId, amount, idempotencyKey);
+        if (rejected != null) {
+            return rejected;
+        }
+        String state = complete(sagaId, fromAccountId, toAccountId, amount);
+        if (FAILED.equals(state)) {
+            return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                    "Transfer failed. Neither account exists any more, so the debit could not be reversed;"
+                    + " transfer " + sagaId + " needs attention.");
+        }
+        if (COMPENSATED.equals(state)) {
+            return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                    "Transfer failed. Destination Account ID may not exist; the debit was reversed.");
+        }
+        return new PostingResult(PostingResult.Status.SUCCESS, fromAccountId, amount, COMPLETED.equals(state)
+                ? "Transfer successful."
+                : "Transfer accepted. The credit to Account ID " + toAccountId + " will be retried.");
+    }
+
+    private static boolean exists(int accountId) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(accountId);
+             PreparedStatement statement = connection.prepareStatement(EXISTS_QUERY)) {
+            statement.setInt(1, accountId);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Step 1: debits the source and records the saga in one source-shard transaction.
+     *
+     * @return null once the debit has committed, or the result of a rejected transfer
+     */
+    private static PostingResult debit(String sagaId, int fromAccountId, int toAccountId, Money amount,
+                                       String idempotencyKey) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(fromAccountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement lock = connection.prepareStatement(LOCK_QUERY);
+                 PreparedStatement update = connection.prepareStatement(TransactionManagement.WITHDRAW_QUERY);
+                 PreparedStatement log = connection.prepareStatement(
+                         idempotencyKey == null ? TransactionManagement.LOG_QUERY
+                                                : TransactionManagement.KEYED_LOG_QUERY);
+                 PreparedStatement start = connection.prepareStatement(START_QUERY)) {
+                lock.setInt(1, fromAccountId);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next()) {
+                        connection.rollback();
+                        return new PostingResult(PostingResult.Status.ACCOUNT_NOT_FOUND, fromAccountId, amount,
+                                "Transfer failed. Source Account ID may not exist.");
+                    }
+                    if (Money.read(rs, "balance").compareTo(amount) < 0) {
+                        connection.rollback();
+                        return new PostingResult(PostingResult.Status.INSUFFICIENT_FUNDS, fromAccountId, amount,
+                                "Transfer failed. Insufficient funds in Account ID: " + fromAccountId);
+                    }
+                }
+                Money.bind(update, 1, amount);
+                update.setInt(2, fromAccountId);
+                update.executeUpdate();
+                TransactionManagement.bindLog(log, fromAccountId, TransactionType.TRANSFER_OUT, amount, idempotencyKey);
+                log.executeUpdate();
+                start.setString(1, sagaId);
+                start.setInt(2, fromAccountId);
+                start.setInt(3, toAccountId);
+                Money.bind(start, 4, amount);
+                start.executeUpdate();
+                connection.commit();
+                AccountCache.invalidate(fromAccountId);
+                return null;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Steps 2 and 3, or the compensation.
+     *
+     * @return COMPLETED, COMPENSATED, FAILED, or null if the saga is still pending
+     */
+    private static String complete(String sagaId, int fromAccountId, int toAccountId, Money amount) {
+        try {
+            if (credit(sagaId, toAccountId, amount)) {
+                return finish(sagaId, fromAccountId, COMPLETED, null);
+            }
+            return finish(sagaId, fromAccountId, COMPENSATED, amount);
+        } catch (SQLException e) {
+            System.err.println("Error completing transfer " + sagaId + ", will retry: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Step 2: credits the destination once per saga.
+     *
+     * @return true if the destination has been credited, now or earlier; false if it does not exist
+     */
+    private static boolean credit(String sagaId, int toAccountId, Money amount) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(toAccountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement credited = connection.prepareStatement(CREDITED_QUERY);
+                 PreparedStatement update = connection.prepareStatement(TransactionManagement.DEPOSIT_QUERY);
+                 PreparedStatement log = connection.prepareStatement(TransactionManagement.LOG_QUERY)) {
+                credited.setString(1, sagaId);
+                try {
+                    credited.executeUpdate();
+                } catch (SQLException e) {
+                    // The saga ID is the only unique key of Transfer_Saga_Credit
+                    if (IdempotencyIndex.isDuplicateKey(e)) {
+                        connection.rollback();
+                        return true;
+                    }
+                    throw e;
+                }
+                Money.bind(update, 1, amount);
+                update.setInt(2, toAccountId);
+                if (update.executeUpdate() == 0) {
+                    connection.rollback();
+                    return false;
+                }
+                TransactionManagement.bindLog(log, toAccountId, TransactionType.TRANSFER_IN, amount, null);
+                log.executeUpdate();
+                connection.commit();
+                AccountCache.invalidate(toAccountId);
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Step 3, or the compensation when a refund amount is given. Does nothing if
+     * another caller has already finished the saga.
+     *
+     * @return the state given, or FAILED if the refund found no source account to credit
+     */
+    private static String finish(String sagaId, int fromAccountId, String state, Money refund) throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnectionForAccount(fromAccountId)) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement finish = connection.prepareStatement(FINISH_QUERY)) {
+                finish.setString(1, state);
+                finish.setString(2, sagaId);
+                if (finish.executeUpdate() == 0) {
+                    connection.rollback();
+                    return state;
+                }
+                if (refund != null) {
+                    try (PreparedStatement update = connection.prepareStatement(TransactionManagement.DEPOSIT_QUERY);
+                         PreparedStatement log = connection.prepareStatement(TransactionManagement.LOG_QUERY)) {
+                        Money.bind(update, 1, refund);
+                        update.setInt(2, fromAccountId);
+                        if (update.executeUpdate() == 0) {
+                            // The source account was closed meanwhile; record no reversal that credits nobody
+                            connection.rollback();
+                            return fail(connection, finish, sagaId, fromAccountId, refund);
+                        }
+                        TransactionManagement.bindLog(log, fromAccountId, TransactionType.TRANSFER_REVERSAL,
+                                refund, null);
+                        log.executeUpdate();
+                    }
+                }
+                connection.commit();
+                if (refund != null) {
+                    AccountCache.invalidate(fromAccountId);
+                }
+                return state;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Marks a saga FAILED when neither of its accounts can take the debited funds back.
+     */
+    private static String fail(Connection connection, PreparedStatement finish, String sagaId, int fromAccountId,
+                               Money amount) throws SQLException {
+        finish.setString(1, FAILED);
+        finish.setString(2, sagaId);
+        if (finish.executeUpdate() == 0) {
+            connection.rollback();
+            return FAILED;
+        }
+        connection.commit();
+        System.err.println("Transfer " + sagaId + " could not be reversed: source Account ID " + fromAccountId
+                + " no longer exists. " + amount + " needs to be placed by hand.");
+        return FAILED;
+    }
+
+    /**
+     * Finishes the sagas on every shard that have been DEBITED for longer than the given age.
+     *
+     * @param minAgeMillis how old a pending saga must be, so that transfers still in progress are left alone
+     * @return the number of sagas completed, compensated or failed
+     */
+    static int recoverPending(long minAgeMillis) {
+        ShardMap shards = DatabaseConnection.getShardMap();
+        Timestamp cutoff = new Timestamp(System.currentTimeMillis() - minAgeMillis);
+        int finished = 0;
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            // Read the whole list first: completing a saga borrows connections from the same
+            // pools, so holding this one meanwhile could exhaust a small pool
+            List<PendingSaga> sagas = new ArrayList<>();
+            try (Connection connection = shards.getConnection(shard);
+                 PreparedStatement pending = connection.prepareStatement(PENDING_QUERY)) {
+                pending.setTimestamp(1, cutoff);
+                try (ResultSet rs = pending.executeQuery()) {
+                    while (rs.next()) {
+                        sagas.add(new PendingSaga(rs.getString("saga_id"), rs.getInt("from_account_id"),
+                                rs.getInt("to_account_id"), Money.read(rs, "amount")));
+                    }
+                }
+            } catch (SQLException e) {
+                System.err.println("Error recovering transfers on shard " + shard + ": " + e.getMessage());
+                continue;
+            }
+            for (PendingSaga saga : sagas) {
+                if (complete(saga.sagaId, saga.fromAccountId, saga.toAccountId, saga.amount) != null) {
+                    finished++;
+                }
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * A DEBITED saga read by {@link #recoverPending}.
+     */
+    private static final class PendingSaga {
+
+        private final String sagaId;
+        private final int fromAccountId;
+        private final int toAccountId;
+        private final Money amount;
+
+        private PendingSaga(String sagaId, int fromAccountId, int toAccountId, Money amount) {
+            this.sagaId = sagaId;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,504 @@
+package com.banking;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * VelocityLimiter refuses withdrawals and transfers out that would take an account
+ * over its velocity limits: at most so many debits, and so much money, per minute,
+ * per hour and per day. The check runs in-process before the debit reaches the
+ * database, so a refused debit costs no connection.
+ *
+ * Each window is an approximate sliding window: the debits of the current fixed
+ * window plus those of the previous one, weighted by how much of it the sliding
+ * window still covers. That takes five numbers per window however busy the account
+ * is, and is exact when the previous window's debits were evenly spread. An account's
+ * counters are an immutable array swapped by compare-and-set, so concurrent debits
+ * never lock and never lose an update. A debit reserves its count and amount before
+ * it runs and gives them back if it does not succeed.
+ *
+ * Limits are set per window with the "banking.velocity.perMinute", "perHour" and
+ * "perDay" system properties as "count/amount", e.g. "5/2000.00"; 0 or a missing
+ * property means no limit, and with no limits at all debits are not tracked. At most
+ * "banking.velocity.maxAccounts" (100000) accounts are tracked, about 250 bytes each.
+ * Beyond that, accounts idle for two days are dropped, which forgets nothing, and then
+ * if need be those idle for a day, an hour and a minute, which forgets their debits;
+ * accounts debited within the last minute are always kept.
+ * {@link #rebuild} reloads the counters from recent Transaction rows after a restart.
+ */
+public class VelocityLimiter {
+
+    /**
+     * A limit on the debits of one window.
+     */
+    public static final class Limit {
+
+        /**
+         * No limit.
+         */
+        public static final Limit NONE = new Limit(0, Money.ZERO);
+
+        private final long maxCount;
+        private final Money maxAmount;
+
+        /**
+         * Creates a limit.
+         *
+         * @param maxCount the most debits allowed, or 0 for no count limit
+         * @param maxAmount the most money debited, or zero for no amount limit
+         */
+        public Limit(long maxCount, Money maxAmount) {
+            if (maxCount < 0 || maxAmount.isNegative()) {
+                throw new IllegalArgumentException("Velocity limits must not be negative");
+            }
+            this.maxCount = maxCount;
+            this.maxAmount = maxAmount;
+        }
+
+        /**
+         * Parses a limit written as "count/amount", e.g. "5/2000.00".
+         *
+         * @param limit the limit text, or null for no limit
+         * @return the limit
+         * @throws IllegalArgumentException if the text is not a count and an amount
+         */
+        public static Limit parse(String limit) {
+            if (limit == null || limit.isBlank()) {
+                return NONE;
+            }
+            String[] parts = limit.split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Velocity limit must be count/amount: " + limit);
+            }
+            return new Limit(Long.parseLong(parts[0].trim()), Money.parse(parts[1]));
+        }
+
+        /**
+         * Gets the most debits allowed.
+         *
+         * @return the count limit, or 0 for none
+         */
+        public long getMaxCount() {
+            return maxCount;
+        }
+
+        /**
+         * Gets the most money that may be debited.
+         *
+         * @return the amount limit, or zero for none
+         */
+        public Money getMaxAmount() {
+            return maxAmount;
+        }
+
+        @Override
+        public String toString() {
+            return maxCount + "/" + maxAmount;
+        }
+    }
+
+    // Newest first by primary key, so the scan stops once it is past the day windows
+    private static final String RECENT_QUERY = "SELECT transaction_id, account_id, transaction_type, amount,"
+            + " transaction_date FROM Transaction WHERE transaction_id < ? ORDER BY transaction_id DESC LIMIT ?";
+
+    private static final int REBUILD_CHUNK = 10_000;
+
+    private static final long[] WINDOW_MILLIS = {
+            TimeUnit.MINUTES.toMillis(1), TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1)};
+    private static final String[] WINDOW_NAMES = {"minute", "hour", "day"};
+
+    // Layout of an account's counters: five per window, then the time of its last debit
+    private static final int START = 0;
+    private static final int PREVIOUS_COUNT = 1;
+    private static final int PREVIOUS_AMOUNT = 2;
+    private static final int CURRENT_COUNT = 3;
+    private static final int CURRENT_AMOUNT = 4;
+    private static final int FIELDS = 5;
+    private static final int LAST_DEBIT = WINDOW_MILLIS.length * FIELDS;
+
+    // Idle times past which a sweep drops accounts, tried in turn until enough are dropped
+    private static final long[] EVICTION_IDLE_MILLIS = {
+            2 * WINDOW_MILLIS[2], WINDOW_MILLIS[2], WINDOW_MILLIS[1], WINDOW_MILLIS[0]};
+    // Swapped into a holder as a sweep drops it; an update that finds it starts afresh
+    private static final long[] DROPPED = new long[0];
+
+    private final long[] maxCounts = new long[WINDOW_MILLIS.length];
+    private final long[] maxAmounts = new long[WINDOW_MILLIS.length];
+    private final boolean enabled;
+    private final int maxAccounts;
+
+    // The arrays are never changed once published; an update swaps in a new one
+    private final Map<Integer, AtomicReference<long[]>> accounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a limiter configured from the "banking.velocity.*" system properties.
+     */
+    public VelocityLimiter() {
+        this(Limit.parse(System.getProperty("banking.velocity.perMinute")),
+             Limit.parse(System.getProperty("banking.velocity.perHour")),
+             Limit.parse(System.getProperty("banking.velocity.perDay")),
+             Integer.getInteger("banking.velocity.maxAccounts", 100_000));
+    }
+
+    /**
+     * Creates a limiter.
+     *
+     * @param perMinute the limit over any minute
+     * @param perHour the limit over any hour
+     * @param perDay the limit over any day
+     * @param maxAccounts the most accounts tracked at once
+     */
+    public VelocityLimiter(Limit perMinute, Limit perHour, Limit perDay, int maxAccounts) {
+        if (maxAccounts < 1) {
+            throw new IllegalArgumentException("maxAccounts must be at least 1");
+        }
+        Limit[] limits = {perMinute, perHour, perDay};
+        boolean any = false;
+        for (int w = 0; w < limits.length; w++) {
+            maxCounts[w] = limits[w].getMaxCount();
+            maxAmounts[w] = limits[w].getMaxAmount().getMinorUnits();
+            any |= maxCounts[w] > 0 || maxAmounts[w] > 0;
+        }
+        this.enabled = any;
+        this.maxAccounts = maxAccounts;
+    }
+
+    /**
+     * Tells whether any limit is set.
+     *
+     * @return true if debits are checked
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs a debit if it keeps the account within its limits. The debit is counted
+     * before it runs, so concurrent debits cannot slip past a limit together, and
+     * uncounted again if it does not succeed. A debit of an amount that is not positive
+     * is passed through uncounted, since counting it would lower the account's totals
+     * and raise its headroom; the posting itself refuses such an amount.
+     *
+     * @param accountId the ID of the debited account
+     * @param amount the amount debited
+     * @param debit the posting that debits the account
+     * @return the outcome of the debit, or LIMIT_EXCEEDED if it was refused
+     */
+    PostingResult debit(int accountId, Money amount, Supplier<PostingResult> debit) {
+        if (!enabled || !amount.isPositive()) {
+            return debit.get();
+        }
+        long now = System.currentTimeMillis();
+        String violation = reserve(accountId, amount.getMinorUnits(), now);
+        if (violation != null) {
+            rejections.incrementAndGet();
+            return new PostingResult(PostingResult.Status.LIMIT_EXCEEDED, accountId, amount, violation);
+        }
+        PostingResult result;
+        try {
+            result = debit.get();
+        } catch (RuntimeException e) {
+            release(accountId, amount.getMinorUnits(), now);
+            throw e;
+        }
+        if (!result.isCommitted()) {
+            release(accountId, amount.getMinorUnits(), now);
+        }
+        return result;
+    }
+
+    /**
+     * Reloads the counters from the withdrawals and transfers out of the last two days
+     * on every shard, e.g. at startup, so a restart does not reset the limits. The
+     * Transaction rows are read newest first, a chunk at a time.
+     *
+     * @return the number of debits counted
+     */
+    public int rebuild() {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        long day = WINDOW_MILLIS[2];
+        // The oldest debit a day window can still weigh: the start of the previous day window
+        Timestamp since = new Timestamp(now - now % day - day);
+        int counted = 0;
+        ShardMap shards = DatabaseConnection.getShardMap();
+        for (int shard = 0; shard < shards.getShardCount(); shard++) {
+            try (Connection connection = shards.getConnection(shard);
+                 PreparedStatement recent = connection.prepareStatement(RECENT_QUERY)) {
+                long before = Long.MAX_VALUE;
+                boolean more = true;
+                while (more) {
+                    recent.setLong(1, before);
+                    recent.setInt(2, REBUILD_CHUNK);
+                    boolean anyRecent = false;
+                    int rows = 0;
+                    try (ResultSet rs = recent.executeQuery()) {
+                        while (rs.next()) {
+                            rows++;
+                            before = rs.getLong("transaction_id");
+                            Timestamp date = rs.getTimestamp("transaction_date");
+                            // IDs and dates are not in exactly the same order; stop after a whole chunk is too old
+                            if (date.before(since)) {
+                                continue;
+                            }
+                            anyRecent = true;
+                            if (TransactionType.fromCode(rs.getByte("transaction_type")).isDebit()) {
+                                record(rs.getInt("account_id"), Money.read(rs, "amount").getMinorUnits(),
+                                        date.getTime(), now);
+                                counted++;
+                            }
+                        }
+                    }
+                    more = anyRecent && rows == REBUILD_CHUNK;
+                }
+            } catch (SQLException e) {
+                System.err.println("Error rebuilding velocity counters from shard " + shard + ": " + e.getMessage());
+            }
+        }
+        return counted;
+    }
+
+    /**
+     * Gets the number of accounts currently tracked.
+     *
+     * @return the size
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * Gets the number of debits refused.
+     *
+     * @return the rejection count
+     */
+    public long getRejectionCount() {
+        return rejections.get();
+    }
+
+    /**
+     * Gets the number of accounts dropped to stay within maxAccounts.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "VelocityLimiter [size=" + accounts.size() + ", rejections=" + rejections.get()
+                + ", evictions=" + evictions.get() + "]";
+    }
+
+    /**
+     * Counts a debit against an account unless it would break a limit.
+     *
+     * @return the reason the debit breaks a limit, or null if it was counted
+     */
+    private String reserve(int accountId, long amount, long now) {
+        AtomicReference<long[]> counters = counters(accountId, now, now);
+        while (true) {
+            long[] current = counters.get();
+            if (current == DROPPED) {
+                counters = counters(accountId, now, now);
+                continue;
+            }
+            long[] rolled = roll(current, now);
+            String violation = check(rolled, accountId, amount, now);
+            if (violation != null) {
+                if (rolled != current) {
+                    counters.compareAndSet(current, rolled);
+                }
+                return violation;
+            }
+            if (counters.compareAndSet(current, add(rolled, 1, amount, now))) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Takes back a debit counted at the given time.
+     */
+    private void release(int accountId, long amount, long reservedAt) {
+        AtomicReference<long[]> counters = accounts.get(accountId);
+        if (counters == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        while (true) {
+            long[] current = counters.get();
+            if (current == DROPPED) {
+                return;
+            }
+            if (counters.compareAndSet(current, add(roll(current, now), -1, -amount, reservedAt))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts a debit made at the given time, without checking the limits.
+     */
+    private void record(int accountId, long amount, long at, long now) {
+        AtomicReference<long[]> counters = counters(accountId, now, at);
+        while (true) {
+            long[] current = counters.get();
+            if (current == DROPPED) {
+                counters = counters(accountId, now, at);
+                continue;
+            }
+            if (counters.compareAndSet(current, add(roll(current, now), 1, amount, at))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets an account's counters, starting them if the account is not tracked yet.
+     * A new account starts out as last debited at the given time, so that a sweep
+     * does not drop it before its first debit is counted. Counters a sweep is dropping
+     * are replaced the same way.
+     */
+    private AtomicReference<long[]> counters(int accountId, long now, long at) {
+        AtomicReference<long[]> counters = accounts.get(accountId);
+        if (counters == null || counters.get() == DROPPED) {
+            if (accounts.size() >= maxAccounts) {
+                evict(now);
+            }
+            counters = accounts.compute(accountId, (id, held) -> held == null || held.get() == DROPPED
+                    ? new AtomicReference<>(empty(now, at)) : held);
+        }
+        return counters;
+    }
+
+    /**
+     * Drops idle accounts until a tenth of maxAccounts is free, so the next sweep is
+     * some way off. One thread sweeps at a time; the others go ahead meanwhile. An
+     * account's counters are marked dropped before they are removed, so a debit counted
+     * against them meanwhile either lands first, keeping the account, or sees the mark
+     * and is counted afresh.
+     */
+    private void evict(long now) {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (long idle : EVICTION_IDLE_MILLIS) {
+                for (Map.Entry<Integer, AtomicReference<long[]>> entry : accounts.entrySet()) {
+                    AtomicReference<long[]> counters = entry.getValue();
+                    long[] current = counters.get();
+                    if (current != DROPPED && now - current[LAST_DEBIT] >= idle
+                            && counters.compareAndSet(current, DROPPED)) {
+                        accounts.remove(entry.getKey(), counters);
+                        evictions.incrementAndGet();
+                    }
+                }
+                if (accounts.size() <= maxAccounts - maxAccounts / 10) {
+                    return;
+                }
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Tells which limit, if any, one more debit of the given amount would break.
+     */
+    private String check(long[] counters, int accountId, long amount, long now) {
+        for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+            int base = w * FIELDS;
+            // The share of the previous window still inside the sliding window
+            double overlap = 1.0 - (double) (now - counters[base + START]) / WINDOW_MILLIS[w];
+            if (maxCounts[w] > 0 && counters[base + PREVIOUS_COUNT] * overlap + counters[base + CURRENT_COUNT] + 1
+                    > maxCounts[w]) {
+                return "Debit refused. Account ID " + accountId + " is limited to " + maxCounts[w]
+                        + " withdrawals and transfers per " + WINDOW_NAMES[w] + ".";
+            }
+            if (maxAmounts[w] > 0 && counters[base + PREVIOUS_AMOUNT] * overlap + counters[base + CURRENT_AMOUNT]
+                    + amount > maxAmounts[w]) {
+                return "Debit refused. Account ID " + accountId + " is limited to " + Money.ofMinor(maxAmounts[w])
+                        + " in withdrawals and transfers per " + WINDOW_NAMES[w] + ".";
+            }
+        }
+        return null;
+    }
+
+    private static long[] empty(long now, long lastDebit) {
+        long[] counters = new long[LAST_DEBIT + 1];
+        for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+            counters[w * FIELDS + START] = now - now % WINDOW_MILLIS[w];
+        }
+        counters[LAST_DEBIT] = lastDebit;
+        return counters;
+    }
+
+    /**
+     * Moves each window on to the one containing the given time, if it has ended.
+     *
+     * @return the given counters if no window has ended, otherwise a moved copy
+     */
+    private static long[] roll(long[] counters, long now) {
+        long[] rolled = counters;
+        for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+            int base = w * FIELDS;
+            long length = WINDOW_MILLIS[w];
+            long elapsed = now - counters[base + START];
+            if (elapsed < length) {
+                continue;
+            }
+            if (rolled == counters) {
+                rolled = counters.clone();
+            }
+            // A window that ended more than a window ago no longer overlaps the sliding window
+            boolean adjacent = elapsed < 2 * length;
+            rolled[base + PREVIOUS_COUNT] = adjacent ? counters[base + CURRENT_COUNT] : 0;
+            rolled[base + PREVIOUS_AMOUNT] = adjacent ? counters[base + CURRENT_AMOUNT] : 0;
+            rolled[base + CURRENT_COUNT] = 0;
+            rolled[base + CURRENT_AMOUNT] = 0;
+            rolled[base + START] = now - now % length;
+        }
+        return rolled;
+    }
+
+    /**
+     * Adds to the window that holds the given time, in a copy of counters already
+     * rolled forward. Debits older than the previous window are ignored.
+     */
+    private static long[] add(long[] counters, long count, long amount, long at) {
+        long[] added = counters.clone();
+        for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+            int base = w * FIELDS;
+            long start = counters[base + START];
+            if (at >= start) {
+                added[base + CURRENT_COUNT] = Math.max(0, added[base + CURRENT_COUNT] + count);
+                added[base + CURRENT_AMOUNT] = Math.max(0, added[base + CURRENT_AMOUNT] + amount);
+            } else if (at >= start - WINDOW_MILLIS[w]) {
+                added[base + PREVIOUS_COUNT] = Math.max(0, added[base + PREVIOUS_COUNT] + count);
+                added[base + PREVIOUS_AMOUNT] = Math.max(0, added[base + PREVIOUS_AMOUNT] + amount);
+            }
+        }
+        if (count > 0) {
+            added[LAST_DEBIT] = Math.max(added[LAST_DEBIT], at);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,96 @@
+package com.banking.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.banking.BatchPoster;
+import com.banking.DatabaseConnection;
+import com.banking.Money;
+import com.banking.Posting;
+import com.banking.PostingResult;
+import com.banking.TransactionManagement;
+
+/**
+ * Compares the throughput of posting deposits one call at a time through
+ * {@link TransactionManagement} with posting them through the {@link BatchPoster}.
+ *
+ * Run it against a test database (see the banking.db.* system properties); it
+ * credits real rows in the Account table.
+ *
+ * Usage: BatchPostingBenchmark [postings] [batchSize] [commitInterval]
+ */
+public class BatchPostingBenchmark {
+
+    public static void main(String[] args) throws SQLException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int commitInterval = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+        List<Integer> accountIds = loadAccountIds(1_000);
+        if (accountIds.isEmpty()) {
+            System.err.println("The Account table is empty; add some accounts before benchmarking.");
+            return;
+        }
+
+        Random random = new Random(42);
+        List<Posting> postings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            postings.add(Posting.deposit(accountIds.get(random.nextInt(accountIds.size())), Money.ofMinor(100)));
+        }
+
+        // Warm up the pool, the statement caches and the JIT
+        TransactionManagement transactionManagement = new TransactionManagement();
+        BatchPoster batchPoster = new BatchPoster(batchSize, commitInterval);
+        for (Posting posting : postings.subList(0, Math.min(500, count))) {
+            transactionManagement.postDeposit(posting.getAccountId(), posting.getAmount());
+        }
+        batchPoster.postAll(postings.subList(0, Math.min(500, count)));
+
+        long start = System.nanoTime();
+        int perCallOk = 0;
+        for (Posting posting : postings) {
+            if (transactionManagement.postDeposit(posting.getAccountId(), posting.getAmount()).isSuccess()) {
+                perCallOk++;
+            }
+        }
+        long perCallNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int batchOk = 0;
+        for (PostingResult result : batchPoster.postAll(postings)) {
+            if (result.isSuccess()) {
+                batchOk++;
+            }
+        }
+        long batchNanos = System.nanoTime() - start;
+
+        System.out.printf("postings=%d batchSize=%d commitInterval=%d%n", count, batchSize, commitInterval);
+        report("per-call", perCallOk, perCallNanos);
+        report("batched", batchOk, batchNanos);
+        System.out.printf("speed-up: %.1fx%n", (double) perCallNanos / batchNanos);
+        System.out.println(DatabaseConnection.getPool());
+    }
+
+    private static void report(String label, int succeeded, long nanos) {
+        System.out.printf("%-9s %8d ok in %8.1f ms  -> %10.0f postings/s%n",
+                label, succeeded, nanos / 1e6, succeeded / (nanos / 1e9));
+    }
+
+    private static List<Integer> loadAccountIds(int limit) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT account_id FROM Account")) {
+            statement.setMaxRows(limit);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,214 @@
+package com.banking.bench;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.banking.HistoryQuery;
+import com.banking.Money;
+import com.banking.Transaction;
+import com.banking.TransactionBlock;
+import com.banking.TransactionManagement;
+import com.banking.TransactionType;
+
+/**
+ * Measures the heap retained by a bulk history read in three layouts:
+ *
+ *   legacy  one object per row with the type and date as strings, as Transaction was
+ *           before types became enum codes and dates epoch microseconds
+ *   object  one Transaction per row
+ *   block   one TransactionBlock with a primitive array per column
+ *
+ * By default each layout is filled with generated rows, built the way a history read
+ * builds them: a new string per row for the legacy type and date, Money objects for
+ * the amounts. With -Dbanking.bench.account=ID the rows are instead read from that
+ * account's history in the database configured by the banking.db.* properties.
+ *
+ * Retained heap is the used heap after a full GC with the rows held, minus the used
+ * heap before. Ten million legacy rows retain about 2 GB, so run with -Xmx4g or more.
+ *
+ * Usage: HistoryMemoryBenchmark [rows] [layouts]
+ */
+public class HistoryMemoryBenchmark {
+
+    /**
+     * A history row as Transaction held it before: strings for the type and the date.
+     */
+    private static final class LegacyRow {
+        int transactionId;
+        int accountId;
+        String transactionType;
+        Money amount;
+        String transactionDate;
+        Money balanceAfter;
+        long sequenceNumber;
+    }
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        String[] layouts = (args.length > 1 ? args[1] : "legacy,object,block").split(",");
+        Integer account = Integer.getInteger("banking.bench.account");
+
+        System.out.printf("%-8s %12s %12s %12s %10s%n", "layout", "rows", "retained(MB)", "bytes/row", "load(s)");
+        for (String layout : layouts) {
+            Supplier<Object> load;
+            switch (layout.trim()) {
+                case "legacy":
+                    load = () -> account == null ? generateLegacy(rows) : readLegacy(account, rows);
+                    break;
+                case "object":
+                    load = () -> account == null ? generateObjects(rows) : readObjects(account, rows);
+                    break;
+                case "block":
+                    load = () -> account == null ? generateBlock(rows) : readBlock(account, rows);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown layout: " + layout);
+            }
+            long before = usedHeap();
+            long start = System.nanoTime();
+            Object loaded = load.get();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long retained = usedHeap() - before;
+            int loadedRows = loaded instanceof TransactionBlock
+                    ? ((TransactionBlock) loaded).size() : ((List<?>) loaded).size();
+            System.out.printf("%-8s %12d %12.1f %12.1f %10.2f%n", layout.trim(), loadedRows, retained / 1e6,
+                    loadedRows == 0 ? 0.0 : retained / (double) loadedRows, seconds);
+        }
+    }
+
+    private static List<LegacyRow> generateLegacy(int rows) {
+        List<LegacyRow> history = new ArrayList<>(rows);
+        Generator generator = new Generator();
+        for (int i = 0; i < rows; i++) {
+            generator.next();
+            LegacyRow row = new LegacyRow();
+            row.transactionId = generator.transactionId;
+            row.accountId = generator.accountId;
+            // A JDBC driver decodes a new string for every row it reads
+            row.transactionType = new String(generator.type.getLabel());
+            row.amount = Money.ofMinor(generator.amount);
+            row.transactionDate = String.valueOf(Transaction.toTimestamp(generator.timeMicros));
+            row.balanceAfter = Money.ofMinor(generator.balanceAfter);
+            row.sequenceNumber = generator.sequenceNumber;
+            history.add(row);
+        }
+        return history;
+    }
+
+    private static List<Transaction> generateObjects(int rows) {
+        List<Transaction> history = new ArrayList<>(rows);
+        Generator generator = new Generator();
+        for (int i = 0; i < rows; i++) {
+            generator.next();
+            history.add(generator.toTransaction());
+        }
+        return history;
+    }
+
+    private static TransactionBlock generateBlock(int rows) {
+        TransactionBlock history = new TransactionBlock(rows);
+        Generator generator = new Generator();
+        for (int i = 0; i < rows; i++) {
+            generator.next();
+            history.add(generator.toTransaction());
+        }
+        return history;
+    }
+
+    private static List<LegacyRow> readLegacy(int accountId, int rows) {
+        return read(accountId, rows, history -> history.map(transaction -> {
+            LegacyRow row = new LegacyRow();
+            row.transactionId = transaction.getTransactionId();
+            row.accountId = transaction.getAccountId();
+            row.transactionType = new String(transaction.getTransactionType().getLabel());
+            row.amount = transaction.getAmount();
+            row.transactionDate = transaction.getTransactionDate();
+            row.balanceAfter = transaction.getBalanceAfter();
+            row.sequenceNumber = transaction.getSequenceNumber();
+            return row;
+        }).collect(Collectors.toCollection(ArrayList::new)));
+    }
+
+    private static List<Transaction> readObjects(int accountId, int rows) {
+        return read(accountId, rows, history -> history.collect(Collectors.toCollection(ArrayList::new)));
+    }
+
+    private static TransactionBlock readBlock(int accountId, int rows) {
+        try {
+            return new TransactionManagement().readTransactionHistory(query(accountId, rows));
+        } catch (Exception e) {
+            throw new IllegalStateException("Error reading transaction history: " + e.getMessage(), e);
+        }
+    }
+
+    private static <T> List<T> read(int accountId, int rows,
+                                    Function<Stream<Transaction>, List<T>> collect) {
+        try (Stream<Transaction> history = new TransactionManagement().streamTransactionHistory(
+                query(accountId, rows))) {
+            return collect.apply(history);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error reading transaction history: " + e.getMessage(), e);
+        }
+    }
+
+    private static HistoryQuery query(int accountId, int rows) {
+        HistoryQuery query = new HistoryQuery(accountId);
+        query.setLimit(rows);
+        return query;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Produces plausible history rows: all transaction types, random amounts, a running
+     * balance and one row per millisecond.
+     */
+    private static final class Generator {
+
+        private final ThreadLocalRandom random = ThreadLocalRandom.current();
+        private final long startMicros = Transaction.toMicros(new Timestamp(System.currentTimeMillis()));
+        private int transactionId;
+        private int accountId;
+        private TransactionType type;
+        private long amount;
+        private long timeMicros;
+        private long balanceAfter = 1_000_000_00L;
+        private long sequenceNumber;
+
+        private void next() {
+            transactionId++;
+            accountId = 1 + random.nextInt(1_000);
+            type = TYPES[random.nextInt(TYPES.length)];
+            amount = 1 + random.nextInt(100_000);
+            timeMicros = startMicros + transactionId * 1_000L;
+            balanceAfter += type.isDebit() ? -amount : amount;
+            sequenceNumber++;
+        }
+
+        private Transaction toTransaction() {
+            Transaction transaction = new Transaction();
+            transaction.setTransactionId(transactionId);
+            transaction.setAccountId(accountId);
+            transaction.setTransactionType(type);
+            transaction.setAmount(Money.ofMinor(amount));
+            transaction.setTransactionTimeMicros(timeMicros);
+            transaction.setBalanceAfter(Money.ofMinor(balanceAfter));
+            transaction.setSequenceNumber(sequenceNumber);
+            return transaction;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.banking.bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.banking.AccountCache;
+import com.banking.DatabaseConnection;
+import com.banking.LatencyHistogram;
+import com.banking.Money;
+import com.banking.PostingResult;
+import com.banking.StripedBalances;
+import com.banking.TransactionManagement;
+
+/**
+ * Measures deposit throughput on a single hot account as the number of depositing
+ * threads grows, once with every deposit updating the account row and once with the
+ * account striped over balance buckets (see StripedBalances), while a background
+ * thread merges the buckets as BankingSystem does when serving.
+ *
+ * Row-lock contention is what it measures, so run it against MySQL, loaded with
+ * schema.sql or with -Dbanking.bench.init=true. The lowest account ID is the plain
+ * hot account and the next one is striped, unless -Dbanking.striped.accounts names
+ * the striped account; -Dbanking.striped.buckets sets its bucket count (16).
+ * At the end the striped account is merged and its balance checked against the
+ * deposits made.
+ *
+ * Usage: HotAccountBenchmark [threadCounts] [secondsPerRun]
+ */
+public class HotAccountBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,2,4,8,16,32").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        if (Boolean.getBoolean("banking.bench.init")) {
+            OperationsBenchmark.initSchema();
+        }
+        int plainAccount = firstAccount();
+        if (System.getProperty("banking.striped.accounts") == null) {
+            System.setProperty("banking.striped.accounts", String.valueOf(plainAccount + 1));
+        }
+        int stripedAccount = StripedBalances.getAccounts().iterator().next();
+        long compactInterval = Long.getLong("banking.striped.compactIntervalMillis", 1_000);
+
+        TransactionManagement transactionManagement = new TransactionManagement();
+        Money amount = Money.ofMinor(100);
+        Money startingBalance = balance(stripedAccount);
+        LongAdder stripedDeposits = new LongAdder();
+
+        PrintStream console = System.out;
+        console.printf("%-8s %7s %12s %10s %10s %10s %10s%n",
+                "mode", "threads", "deposits/s", "p50(us)", "p99(us)", "p999(us)", "failed");
+        ScheduledExecutorService compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bench-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compaction.scheduleWithFixedDelay(StripedBalances::compactAll, compactInterval, compactInterval,
+                TimeUnit.MILLISECONDS);
+        try {
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                for (int accountId : new int[] {plainAccount, stripedAccount}) {
+                    String mode = accountId == stripedAccount ? "striped" : "row";
+                    LongAdder deposits = accountId == stripedAccount ? stripedDeposits : new LongAdder();
+                    LongAdder failed = new LongAdder();
+                    // The management classes report on System.out; keep that out of the measurement
+                    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                    LatencyHistogram histogram = new LatencyHistogram();
+                    long completed;
+                    try {
+                        run(transactionManagement, accountId, amount, threads, Math.max(1, seconds / 3),
+                                null, deposits, failed);
+                        failed.reset();
+                        completed = run(transactionManagement, accountId, amount, threads, seconds,
+                                histogram, deposits, failed);
+                    } finally {
+                        System.setOut(console);
+                    }
+                    console.printf("%-8s %7d %12.0f %10.1f %10.1f %10.1f %10d%n", mode, threads,
+                            completed / (double) seconds, histogram.getValueAtPercentile(50) / 1e3,
+                            histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                            failed.sum());
+                }
+            }
+        } finally {
+            compaction.shutdownNow();
+            compaction.awaitTermination(seconds, TimeUnit.SECONDS);
+        }
+
+        long start = System.nanoTime();
+        int merged = StripedBalances.compact(stripedAccount);
+        console.printf("final merge: %d deposits in %.1f ms%n", merged, (System.nanoTime() - start) / 1e6);
+        Money expected = startingBalance.plus(Money.ofMinor(amount.getMinorUnits() * stripedDeposits.sum()));
+        Money actual = balance(stripedAccount);
+        console.println("striped account " + stripedAccount + ": balance " + actual + ", expected " + expected
+                + (actual.compareTo(expected) == 0 ? " (ok)" : " (MISMATCH)"));
+        console.println(DatabaseConnection.getPool());
+    }
+
+    /**
+     * Deposits into one account on the given number of threads for a fixed time.
+     *
+     * @return the number of deposits attempted
+     */
+    private static long run(TransactionManagement transactionManagement, int accountId, Money amount, int threads,
+                            int seconds, LatencyHistogram histogram, LongAdder deposits, LongAdder failed)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long[] completed = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            Thread worker = new Thread(() -> {
+                long done = 0;
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    PostingResult result = transactionManagement.postDeposit(accountId, amount);
+                    if (result.isSuccess()) {
+                        deposits.increment();
+                    } else {
+                        failed.increment();
+                    }
+                    if (histogram != null) {
+                        histogram.record(System.nanoTime() - now);
+                    }
+                    done++;
+                }
+                completed[slot] = done;
+            }, "bench-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            total += completed[t];
+        }
+        return total;
+    }
+
+    private static int firstAccount() throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT MIN(account_id) FROM Account");
+             ResultSet rs = statement.executeQuery()) {
+            if (!rs.next() || rs.getInt(1) == 0) {
+                throw new IllegalStateException("No accounts to benchmark; run with -Dbanking.bench.init=true");
+            }
+            return rs.getInt(1);
+        }
+    }
+
+    private static Money balance(int accountId) throws SQLException {
+        AccountCache.invalidate(accountId);
+        return AccountCache.getAccount(accountId).getBalance();
+    }
+}
@@ -0,0 +1,190 @@
+package com.banking.bench;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.banking.BankingHttpServer;
+import com.banking.BankingService;
+import com.banking.DatabaseConnection;
+import com.banking.LatencyHistogram;
+
+/**
+ * Drives the HTTP API with a fixed number of concurrent clients and reports
+ * requests per second and latency percentiles, overall and per endpoint.
+ *
+ * Each client sends its next request as soon as the previous response arrives, so
+ * the concurrency stays constant. Requests are sent asynchronously, which means
+ * thousands of clients need no more than a handful of threads.
+ *
+ * With "embedded" as the base URL the server is started inside this process, on
+ * whatever database the banking.db.* properties point at. Together with H2 and
+ * -Dbanking.bench.init=true that needs no external setup at all:
+ *
+ *   java -cp bin:h2.jar -Dbanking.db.url="jdbc:h2:mem:bank;MODE=MySQL;DB_CLOSE_DELAY=-1"
+ *        -Dbanking.db.user=sa -Dbanking.db.password= -Dbanking.history.fetchSize=100
+ *        -Dbanking.bench.init=true com.banking.bench.HttpLoadGenerator embedded 256 30
+ *
+ * Usage: HttpLoadGenerator [baseUrl|embedded] [clients] [seconds] [firstAccountId-lastAccountId]
+ */
+public class HttpLoadGenerator {
+
+    private static final String[] OPERATIONS = {"viewAccount", "deposit", "withdraw", "transfer", "history"};
+    // Cumulative percentages of the request mix, in the order of OPERATIONS
+    private static final int[] MIX = {50, 70, 80, 90, 100};
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "embedded";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String[] range = (args.length > 3 ? args[3] : "1-1000").split("-");
+        int firstAccount = Integer.parseInt(range[0]);
+        int lastAccount = Integer.parseInt(range[1]);
+
+        BankingService service = null;
+        BankingHttpServer server = null;
+        if ("embedded".equals(baseUrl)) {
+            if (Boolean.getBoolean("banking.bench.init")) {
+                OperationsBenchmark.initSchema();
+            }
+            service = new BankingService();
+            server = new BankingHttpServer(0, service);
+            server.start();
+            baseUrl = "http://localhost:" + server.getPort();
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        for (String operation : OPERATIONS) {
+            histograms.put(operation, new LatencyHistogram());
+        }
+        LatencyHistogram overall = new LatencyHistogram();
+        AtomicLong errors = new AtomicLong();
+        Generator generator = new Generator(client, baseUrl, firstAccount, lastAccount);
+
+        // Warm up, then measure
+        generator.run(clients, Math.max(1, seconds / 3), null, null, new AtomicLong());
+        long start = System.nanoTime();
+        generator.run(clients, seconds, histograms, overall, errors);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-12s %10s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "req/s", "p50(us)", "p99(us)", "p999(us)", "max(us)");
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            print(entry.getKey(), entry.getValue(), elapsedSeconds);
+        }
+        print("all", overall, elapsedSeconds);
+        System.out.println("errors: " + errors.get() + " (non-2xx/404/409 responses and failed requests)");
+
+        if (server != null) {
+            server.close();
+            service.close();
+            System.out.println(DatabaseConnection.getPool());
+        }
+    }
+
+    private static void print(String name, LatencyHistogram histogram, double elapsedSeconds) {
+        System.out.printf("%-12s %10d %10.0f %10.1f %10.1f %10.1f %10.1f%n", name, histogram.getCount(),
+                histogram.getCount() / elapsedSeconds, histogram.getValueAtPercentile(50) / 1e3,
+                histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                histogram.getMaxNanos() / 1e3);
+    }
+
+    /**
+     * Builds requests from the mix and keeps each client busy until the deadline.
+     */
+    private static final class Generator {
+
+        private final HttpClient client;
+        private final String baseUrl;
+        private final int firstAccount;
+        private final int lastAccount;
+
+        private Generator(HttpClient client, String baseUrl, int firstAccount, int lastAccount) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+            this.firstAccount = firstAccount;
+            this.lastAccount = lastAccount;
+        }
+
+        private void run(int clients, int seconds, Map<String, LatencyHistogram> histograms,
+                         LatencyHistogram overall, AtomicLong errors) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            CountDownLatch finished = new CountDownLatch(clients);
+            for (int i = 0; i < clients; i++) {
+                next(deadline, finished, histograms, overall, errors);
+            }
+            finished.await();
+        }
+
+        private void next(long deadline, CountDownLatch finished, Map<String, LatencyHistogram> histograms,
+                          LatencyHistogram overall, AtomicLong errors) {
+            if (System.nanoTime() >= deadline) {
+                finished.countDown();
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int pick = random.nextInt(100);
+            int operation = 0;
+            while (pick >= MIX[operation]) {
+                operation++;
+            }
+            String name = OPERATIONS[operation];
+            HttpRequest request = request(name, random);
+            long start = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long elapsed = System.nanoTime() - start;
+                if (histograms != null) {
+                    histograms.get(name).record(elapsed);
+                    overall.record(elapsed);
+                }
+                // 404 and 409 are business outcomes (unknown account, insufficient funds), not failures
+                if (error != null || (response.statusCode() >= 300
+                        && response.statusCode() != 404 && response.statusCode() != 409)) {
+                    errors.incrementAndGet();
+                }
+                next(deadline, finished, histograms, overall, errors);
+            });
+        }
+
+        private HttpRequest request(String operation, ThreadLocalRandom random) {
+            int account = random.nextInt(firstAccount, lastAccount + 1);
+            switch (operation) {
+                case "viewAccount":
+                    return get("/accounts/" + account);
+                case "deposit":
+                    return post("/accounts/" + account + "/deposit", "{\"amount\":\"1.00\"}");
+                case "withdraw":
+                    return post("/accounts/" + account + "/withdraw", "{\"amount\":\"1.00\"}");
+                case "transfer":
+                    int to = account == lastAccount ? firstAccount : account + 1;
+                    return post("/transfers", "{\"fromAccountId\":" + account + ",\"toAccountId\":" + to
+                            + ",\"amount\":\"1.00\"}");
+                default:
+                    return get("/accounts/" + account + "/transactions?limit=20");
+            }
+        }
+
+        private HttpRequest get(String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+        }
+
+        private HttpRequest post(String path, String body) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+        }
+    }
+}
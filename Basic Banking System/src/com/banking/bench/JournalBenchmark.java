@@ -0,0 +1,108 @@
+package com.banking.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.banking.JournalLedger;
+import com.banking.LatencyHistogram;
+import com.banking.Money;
+import com.banking.PostingResult;
+
+/**
+ * Measures how fast the JournalLedger appends postings under a given fsync batch
+ * size, and how long it takes to rebuild balances from the journal afterwards.
+ *
+ * The run opens a set of accounts, appends the requested number of deposits,
+ * withdrawals and transfers from one thread, closes the journal and reopens it.
+ * Recovery time is reported per million records. It then writes a balance
+ * snapshot and reopens the journal once more, to compare recovery from the
+ * snapshot with a full replay. The journal and snapshot files are deleted at the
+ * end unless -Dbanking.bench.keep=true.
+ *
+ * Usage: JournalBenchmark [records] [syncEveryRecords] [journalFile]
+ */
+public class JournalBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int syncEvery = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        Path file = Paths.get(args.length > 2 ? args[2] : "bench.journal");
+        Path snapshot = file.resolveSibling(file.getFileName() + ".snapshot");
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(snapshot);
+
+        LatencyHistogram appendLatency = new LatencyHistogram();
+        long appendNanos;
+        long syncs;
+        try (JournalLedger journal = new JournalLedger(file, syncEvery, 0, 1 << 20)) {
+            for (int id = 1; id <= ACCOUNTS; id++) {
+                journal.openAccount(id, Money.ofMinor(1_000_000_00L));
+            }
+            Money amount = Money.ofMinor(100);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long start = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                int account = 1 + random.nextInt(ACCOUNTS);
+                long begin = System.nanoTime();
+                PostingResult result;
+                switch (i % 3) {
+                    case 0:
+                        result = journal.postDeposit(account, amount);
+                        break;
+                    case 1:
+                        result = journal.postWithdrawal(account, amount);
+                        break;
+                    default:
+                        result = journal.postTransfer(account, account % ACCOUNTS + 1, amount);
+                }
+                appendLatency.record(System.nanoTime() - begin);
+                if (!result.isSuccess()) {
+                    throw new IllegalStateException("Posting failed: " + result.getMessage());
+                }
+            }
+            appendNanos = System.nanoTime() - start;
+            syncs = journal.getSyncCount();
+        }
+
+        long totalRecords;
+        long recoveryNanos;
+        try (JournalLedger recovered = new JournalLedger(file, syncEvery, 0, 1 << 20)) {
+            totalRecords = recovered.getRecoveredRecords();
+            recoveryNanos = recovered.getRecoveryNanos();
+        }
+
+        long snapshotBytes;
+        long snapshotNanos;
+        try (JournalLedger journal = new JournalLedger(file, syncEvery, 0, 1 << 20, Long.MAX_VALUE)) {
+            journal.snapshot();
+            snapshotBytes = journal.getLastSnapshotBytes();
+            snapshotNanos = journal.getLastSnapshotNanos();
+        }
+        long snapshotRecoveryNanos;
+        long snapshotLoadNanos;
+        try (JournalLedger recovered = new JournalLedger(file, syncEvery, 0, 1 << 20)) {
+            snapshotRecoveryNanos = recovered.getRecoveryNanos();
+            snapshotLoadNanos = recovered.getSnapshotLoadNanos();
+        }
+
+        System.out.printf("appends:   %d records in %.2f s = %.0f records/s (syncEvery=%d, %d syncs)%n",
+                records, appendNanos / 1e9, records / (appendNanos / 1e9), syncEvery, syncs);
+        System.out.println("latency:   " + appendLatency);
+        System.out.printf("recovery:  %d records in %.1f ms = %.1f ms per million records%n",
+                totalRecords, recoveryNanos / 1e6, recoveryNanos / 1e6 / (totalRecords / 1e6));
+        System.out.printf("file size: %.1f MB%n", Files.size(file) / 1e6);
+        System.out.printf("snapshot:  %d accounts, %.1f KB, written in %.1f ms%n",
+                ACCOUNTS, snapshotBytes / 1e3, snapshotNanos / 1e6);
+        System.out.printf("recovery from snapshot: %.1f ms (snapshot load %.1f ms)%n",
+                snapshotRecoveryNanos / 1e6, snapshotLoadNanos / 1e6);
+
+        if (!Boolean.getBoolean("banking.bench.keep")) {
+            Files.delete(file);
+            Files.delete(snapshot);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.banking.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.banking.InMemoryLedger;
+import com.banking.Money;
+import com.banking.PostingResult;
+
+/**
+ * Hammers an {@link InMemoryLedger} from many threads with random deposits,
+ * withdrawals and transfers, then checks that money was conserved: the final total
+ * of all balances must equal the starting total plus everything deposited minus
+ * everything withdrawn, no balance may be negative, and every accepted posting must
+ * have reached the write-through exactly once.
+ *
+ * The write-through is replaced by a counter, so no database is needed.
+ *
+ * Usage: LedgerStressCheck [threads] [accounts] [seconds]
+ */
+public class LedgerStressCheck {
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        long startingCents = 100_000;
+
+        AtomicLong writtenThrough = new AtomicLong();
+        InMemoryLedger ledger = new InMemoryLedger(16, 100_000, batch -> {
+            writtenThrough.addAndGet(batch.size());
+            return 0;
+        });
+        for (int id = 1; id <= accounts; id++) {
+            ledger.registerAccount(id, startingCents);
+        }
+
+        AtomicLong deposited = new AtomicLong();
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    int from = 1 + random.nextInt(accounts);
+                    int to = 1 + random.nextInt(accounts);
+                    long cents = 1 + random.nextInt(5_000);
+                    Money amount = Money.ofMinor(cents);
+                    PostingResult result;
+                    int operation = random.nextInt(10);
+                    if (operation == 0) {
+                        result = ledger.postDeposit(from, amount);
+                        if (result.isSuccess()) {
+                            deposited.addAndGet(cents);
+                        }
+                    } else if (operation == 1) {
+                        result = ledger.postWithdrawal(from, amount);
+                        if (result.isSuccess()) {
+                            withdrawn.addAndGet(cents);
+                        }
+                    } else {
+                        if (from == to) {
+                            continue;
+                        }
+                        result = ledger.postTransfer(from, to, amount);
+                    }
+                    (result.isSuccess() ? accepted : rejected).incrementAndGet();
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        ledger.flush();
+
+        long total = 0;
+        boolean negative = false;
+        for (int id = 1; id <= accounts; id++) {
+            long balance = ledger.getBalanceCents(id);
+            negative |= balance < 0;
+            total += balance;
+        }
+        ledger.close();
+
+        long expected = accounts * startingCents + deposited.get() - withdrawn.get();
+        System.out.printf("threads=%d accounts=%d seconds=%d%n", threads, accounts, seconds);
+        System.out.printf("accepted=%d rejected=%d (%.0f postings/s)%n",
+                accepted.get(), rejected.get(), accepted.get() / (double) seconds);
+        System.out.printf("total=%d expected=%d writtenThrough=%d%n", total, expected, writtenThrough.get());
+
+        boolean conserved = total == expected && !negative && writtenThrough.get() == accepted.get();
+        System.out.println(conserved ? "PASS: money conserved" : "FAIL: money not conserved");
+        if (!conserved) {
+            System.exit(1);
+        }
+    }
+}
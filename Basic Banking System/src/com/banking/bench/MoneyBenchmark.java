@@ -0,0 +1,93 @@
+package com.banking.bench;
+
+import java.util.Random;
+
+import com.banking.Money;
+
+/**
+ * Compares aggregating amounts as double (the old representation of balances)
+ * with aggregating them as {@link Money} minor units, both on the allocation-free
+ * long path and through Money objects. It reports the time per addition and the
+ * rounding drift each representation accumulates.
+ *
+ * Usage: MoneyBenchmark [amounts] [iterations]
+ */
+public class MoneyBenchmark {
+
+    // Written by every benchmark so the JIT cannot discard the loops
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Random random = new Random(42);
+        long[] cents = new long[count];
+        double[] doubles = new double[count];
+        Money[] monies = new Money[count];
+        long exact = 0;
+        for (int i = 0; i < count; i++) {
+            cents[i] = 1 + random.nextInt(100_000);
+            doubles[i] = cents[i] / 100.0;
+            monies[i] = Money.ofMinor(cents[i]);
+            exact += cents[i];
+        }
+
+        double doubleSum = 0;
+        long longSum = 0;
+        Money moneySum = Money.ZERO;
+        long doubleNanos = Long.MAX_VALUE;
+        long longNanos = Long.MAX_VALUE;
+        long moneyNanos = Long.MAX_VALUE;
+
+        // The first iterations are warm-up; the best of the rest is reported
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            long start = System.nanoTime();
+            doubleSum = sumDoubles(doubles);
+            doubleNanos = Math.min(doubleNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            longSum = sumMinorUnits(cents);
+            longNanos = Math.min(longNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            moneySum = sumMoney(monies);
+            moneyNanos = Math.min(moneyNanos, System.nanoTime() - start);
+        }
+
+        System.out.printf("amounts=%d exact total=%s%n", count, Money.ofMinor(exact));
+        System.out.printf("double          %6.3f ns/add  total=%.2f  drift=%.6f%n",
+                doubleNanos / (double) count, doubleSum, doubleSum - exact / 100.0);
+        System.out.printf("Money (long)    %6.3f ns/add  total=%s  drift=%d%n",
+                longNanos / (double) count, Money.ofMinor(longSum), longSum - exact);
+        System.out.printf("Money (object)  %6.3f ns/add  total=%s  drift=%d%n",
+                moneyNanos / (double) count, moneySum, moneySum.getMinorUnits() - exact);
+    }
+
+    private static double sumDoubles(double[] amounts) {
+        double total = 0;
+        for (double amount : amounts) {
+            total += amount;
+        }
+        sink = (long) total;
+        return total;
+    }
+
+    private static long sumMinorUnits(long[] amounts) {
+        long total = 0;
+        for (long amount : amounts) {
+            total = Math.addExact(total, amount);
+        }
+        sink = total;
+        return total;
+    }
+
+    private static Money sumMoney(Money[] amounts) {
+        Money total = Money.ZERO;
+        for (Money amount : amounts) {
+            total = total.plus(amount);
+        }
+        sink = total.getMinorUnits();
+        return total;
+    }
+}
@@ -0,0 +1,242 @@
+package com.banking.bench;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.banking.AccountManagement;
+import com.banking.BankingMetrics;
+import com.banking.DatabaseConnection;
+import com.banking.HistoryQuery;
+import com.banking.LatencyHistogram;
+import com.banking.Money;
+import com.banking.Transaction;
+import com.banking.TransactionManagement;
+
+/**
+ * Measures throughput and latency percentiles of every TransactionManagement and
+ * AccountManagement operation at several thread counts, so releases can be compared
+ * against a stored baseline.
+ *
+ * It runs against whatever database the banking.db.* system properties point at.
+ * For a self-contained run, put H2 on the class path and use an in-memory database
+ * in MySQL mode; -Dbanking.bench.init=true then creates and seeds the tables:
+ *
+ *   java -cp bin:h2.jar -Dbanking.db.url="jdbc:h2:mem:bank;MODE=MySQL;DB_CLOSE_DELAY=-1"
+ *        -Dbanking.db.user=sa -Dbanking.db.password= -Dbanking.history.fetchSize=100
+ *        -Dbanking.bench.init=true com.banking.bench.OperationsBenchmark 1,4,16 10
+ *
+ * Results are also appended as CSV to the file named by -Dbanking.bench.csv, if set.
+ *
+ * Usage: OperationsBenchmark [threadCounts] [secondsPerRun]
+ */
+public class OperationsBenchmark {
+
+    private static final int SEED_ACCOUNTS = 1_000;
+
+    /**
+     * One benchmarked operation, run repeatedly by each thread.
+     */
+    private interface Operation {
+        void run(ThreadLocalRandom random) throws Exception;
+    }
+
+    private static List<Integer> accountIds;
+    private static int customerId;
+
+    public static void main(String[] args) throws Exception {
+        String[] threadCounts = (args.length > 0 ? args[0] : "1,4,16").split(",");
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String csv = System.getProperty("banking.bench.csv");
+
+        if (Boolean.getBoolean("banking.bench.init")) {
+            initSchema();
+        }
+        loadFixtures();
+
+        TransactionManagement transactionManagement = new TransactionManagement();
+        AccountManagement accountManagement = new AccountManagement();
+        Money amount = Money.ofMinor(100);
+
+        Map<String, Operation> operations = new LinkedHashMap<>();
+        operations.put("deposit", random -> transactionManagement.postDeposit(anyAccount(random), amount));
+        operations.put("withdraw", random -> transactionManagement.postWithdrawal(anyAccount(random), amount));
+        operations.put("transferFunds", random -> {
+            int from = anyAccount(random);
+            int to = anyAccount(random);
+            if (from != to) {
+                transactionManagement.postTransfer(from, to, amount);
+            }
+        });
+        operations.put("viewTransactionHistory", random -> {
+            HistoryQuery query = new HistoryQuery(anyAccount(random));
+            query.setLimit(20);
+            try (Stream<Transaction> history = transactionManagement.streamTransactionHistory(query)) {
+                history.forEach(transaction -> { });
+            }
+        });
+        operations.put("addAccount", random -> accountManagement.addAccount(customerId, "Savings", Money.ZERO));
+        operations.put("viewAccountDetails", random -> accountManagement.viewAccountDetails(anyAccount(random)));
+
+        PrintStream console = System.out;
+        console.printf("%-24s %7s %12s %10s %10s %10s %10s %10s%n",
+                "operation", "threads", "ops/s", "p50(us)", "p90(us)", "p99(us)", "p999(us)", "max(us)");
+        for (Map.Entry<String, Operation> operation : operations.entrySet()) {
+            for (String threadCount : threadCounts) {
+                int threads = Integer.parseInt(threadCount.trim());
+                // The management classes report on System.out; keep that out of the measurement
+                System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+                LatencyHistogram histogram;
+                long operationsRun;
+                try {
+                    run(operation.getValue(), threads, Math.max(1, seconds / 3), null);
+                    histogram = new LatencyHistogram();
+                    operationsRun = run(operation.getValue(), threads, seconds, histogram);
+                } finally {
+                    System.setOut(console);
+                }
+                String line = String.format("%-24s %7d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f",
+                        operation.getKey(), threads, operationsRun / (double) seconds,
+                        histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(90) / 1e3,
+                        histogram.getValueAtPercentile(99) / 1e3, histogram.getValueAtPercentile(99.9) / 1e3,
+                        histogram.getMaxNanos() / 1e3);
+                console.println(line);
+                if (csv != null) {
+                    appendCsv(csv, operation.getKey(), threads, operationsRun / (double) seconds, histogram);
+                }
+            }
+        }
+        console.println(DatabaseConnection.getPool());
+        // Where the time went across all runs: waiting for a connection versus inside the database
+        console.println("connection acquire: " + BankingMetrics.CONNECTION_ACQUIRE);
+        console.println("sql execute:        " + BankingMetrics.SQL_EXECUTE);
+        console.println("commit:             " + BankingMetrics.COMMIT);
+    }
+
+    /**
+     * Runs an operation on the given number of threads for a fixed time.
+     *
+     * @return the number of operations completed
+     */
+    private static long run(Operation operation, int threads, int seconds, LatencyHistogram histogram)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long[] completed = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int slot = t;
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long done = 0;
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    try {
+                        operation.run(random);
+                    } catch (Exception e) {
+                        System.err.println("Benchmark operation failed: " + e.getMessage());
+                    }
+                    if (histogram != null) {
+                        histogram.record(System.nanoTime() - now);
+                    }
+                    done++;
+                }
+                completed[slot] = done;
+            }, "bench-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers.get(t).join();
+            total += completed[t];
+        }
+        return total;
+    }
+
+    private static int anyAccount(ThreadLocalRandom random) {
+        return accountIds.get(random.nextInt(accountIds.size()));
+    }
+
+    private static void appendCsv(String file, String operation, int threads, double opsPerSecond,
+                                  LatencyHistogram histogram) throws IOException {
+        try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+            out.printf("%s,%d,%.0f,%d,%d,%d,%d,%d%n", operation, threads, opsPerSecond,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxNanos());
+        }
+    }
+
+    /**
+     * Creates the tables with portable DDL and seeds one customer and a set of funded accounts.
+     */
+    static void initSchema() throws SQLException {
+        try (Connection connection = DatabaseConnection.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS Customer ("
+                    + "customer_id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) NOT NULL)");
+            statement.execute("CREATE TABLE IF NOT EXISTS Account ("
+                    + "account_id INT AUTO_INCREMENT PRIMARY KEY, customer_id INT NOT NULL,"
+                    + " account_type VARCHAR(20) NOT NULL, balance DECIMAL(15, 2) NOT NULL DEFAULT 0,"
+                    + " last_sequence BIGINT NOT NULL DEFAULT 0)");
+            statement.execute("CREATE TABLE IF NOT EXISTS Transaction ("
+                    + "transaction_id INT AUTO_INCREMENT PRIMARY KEY, account_id INT NOT NULL,"
+                    + " transaction_type TINYINT NOT NULL, amount DECIMAL(15, 2) NOT NULL,"
+                    + " transaction_date TIMESTAMP(6) NOT NULL DEFAULT CURRENT_TIMESTAMP(6),"
+                    + " idempotency_key VARCHAR(64) NULL UNIQUE, balance_after DECIMAL(15, 2) NULL,"
+                    + " sequence_no BIGINT NULL, bucket_no INT NULL)");
+            statement.execute("CREATE INDEX IF NOT EXISTS idx_transaction_account_date"
+                    + " ON Transaction (account_id, transaction_date, transaction_id)");
+            statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS uq_transaction_account_sequence"
+                    + " ON Transaction (account_id, sequence_no)");
+            statement.execute("CREATE TABLE IF NOT EXISTS Account_Bucket ("
+                    + "account_id INT NOT NULL, bucket_no INT NOT NULL, amount DECIMAL(15, 2) NOT NULL DEFAULT 0,"
+                    + " postings INT NOT NULL DEFAULT 0, PRIMARY KEY (account_id, bucket_no))");
+            statement.execute("INSERT INTO Customer (name) VALUES ('Benchmark')");
+        }
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO Account (customer_id, account_type, balance) VALUES ("
+                     + "(SELECT MAX(customer_id) FROM Customer), 'Checking', ?)")) {
+            for (int i = 0; i < SEED_ACCOUNTS; i++) {
+                Money.bind(insert, 1, Money.ofMinor(1_000_000_00L));
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static void loadFixtures() throws SQLException {
+        accountIds = new ArrayList<>();
+        try (Connection connection = DatabaseConnection.getConnection();
+             PreparedStatement accounts = connection.prepareStatement("SELECT account_id FROM Account");
+             PreparedStatement customers = connection.prepareStatement("SELECT MIN(customer_id) FROM Customer")) {
+            accounts.setMaxRows(SEED_ACCOUNTS);
+            ResultSet rs = accounts.executeQuery();
+            while (rs.next()) {
+                accountIds.add(rs.getInt(1));
+            }
+            rs = customers.executeQuery();
+            if (rs.next()) {
+                customerId = rs.getInt(1);
+            }
+        }
+        if (accountIds.isEmpty()) {
+            throw new IllegalStateException("No accounts to benchmark; run with -Dbanking.bench.init=true");
+        }
+    }
+}
@@ -1,3 +1,6 @@
 module MyProject {
     requires java.sql;
+    requires jdk.httpserver;
+    requires java.net.http;
+    requires java.management;
 }